@@ -0,0 +1,175 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Cost of the work done for touch events of an overlay, without the window manager IPC: the
+ * gesture state machine, velocity tracking, touch prediction, drag position math and drop zone
+ * lookup. Every benchmark should report 0 bytes allocated per operation with the GC profiler. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DragBenchmark {
+
+    private static final int TOUCH_SLOP = 24;
+    private static final int MOVES_PER_DRAG = 60;
+    private static final int OVERLAY_SIZE = 144;
+
+    private OverlayGestureDetector mDetector;
+    private final VelocityEstimator mVelocityEstimator = new VelocityEstimator();
+    private final TouchPredictor mTouchPredictor = new TouchPredictor(144);
+    private final DropZoneIndex mDropZoneIndex = new DropZoneIndex();
+    private GestureMetricsRecorder mMetricsRecorder;
+    private int mCallbackCount;
+
+    private long mTime;
+    private float mTouchX;
+    private int mDropZone = DropZoneIndex.NO_ZONE;
+
+    @Setup
+    public void setUp() {
+        mDetector = new OverlayGestureDetector(TOUCH_SLOP, 100, 500, 300, 50, 8000,
+                new OverlayGestureDetector.Callback() {
+                    @Override
+                    public void onDragStart() {
+                        mCallbackCount++;
+                    }
+
+                    @Override
+                    public boolean onLongPress() {
+                        mCallbackCount++;
+                        return false;
+                    }
+
+                    @Override
+                    public void onClick() {
+                        mCallbackCount++;
+                    }
+
+                    @Override
+                    public void onDoubleTap() {
+                        mCallbackCount++;
+                    }
+
+                    @Override
+                    public void onDragEnd(float velocityX, float velocityY) {
+                        mCallbackCount++;
+                    }
+
+                    @Override
+                    public void onFling(float velocityX, float velocityY) {
+                        mCallbackCount++;
+                    }
+                });
+        mMetricsRecorder = new GestureMetricsRecorder(this, new GestureMetricsRecorder.Reporter() {
+            @Override
+            public void onGestureMetrics(GestureMetricsRecorder recorder, GestureMetrics metrics) {
+                mCallbackCount++;
+            }
+        });
+        // The remove view at the bottom of a phone screen.
+        mDropZoneIndex.addZone(468, 1700, 612, 1844);
+        mDropZoneIndex.build();
+
+        // Leave the detector in the middle of a drag for the per-move benchmarks.
+        mDetector.onDown(0, 960, 0);
+        mDetector.onMove(TOUCH_SLOP * 2, 960, 8);
+    }
+
+    /** What the touch listener does for one move of an ongoing drag, minus the layout update. */
+    @Benchmark
+    public int dragMove() {
+        mTime += 8;
+        mTouchX = (mTouchX + 7) % 1080;
+        mDetector.onMove(mTouchX, 960, mTime);
+        int x = DragMath.dragPosition(100, 0, mTouchX);
+        int y = DragMath.dragPosition(0, 960, 960);
+        mDropZone = mDropZoneIndex.query(DragMath.centerOf(x, 0, OVERLAY_SIZE),
+                DragMath.centerOf(y, 960, OVERLAY_SIZE), mDropZone, DropZoneIndex.NO_ZONE);
+        return x + y + mDropZone;
+    }
+
+    /** {@link #dragMove()} with touch prediction, for a move event carrying three samples. */
+    @Benchmark
+    public int predictedDragMove() {
+        long time = mTime;
+        mTouchPredictor.addSample(mTouchX + 2, 960, time + 2);
+        mTouchPredictor.addSample(mTouchX + 4, 960, time + 4);
+        mTouchPredictor.addSample(mTouchX + 7, 960, time + 8);
+        mTouchPredictor.predict(time + 16);
+        int result = dragMove();
+        return result + (int) mTouchPredictor.getPredictedX();
+    }
+
+    /** {@link #dragMove()} with gesture metrics enabled. */
+    @Benchmark
+    public int dragMoveWithMetrics() {
+        mMetricsRecorder.onMove();
+        mMetricsRecorder.onLayoutRequested(mTime * 1000000);
+        int result = dragMove();
+        mMetricsRecorder.onLayoutUpdated(mTime * 1000000 + 500000);
+        mMetricsRecorder.onTouchHandled(1000, false, 0);
+        return result;
+    }
+
+    /** A whole drag from down to a fling, including the velocity estimate at the end. */
+    @Benchmark
+    public int dragGesture() {
+        long time = mTime;
+        mDetector.onDown(0, 960, time);
+        for (int i = 1; i <= MOVES_PER_DRAG; i++) {
+            mDetector.onMove(i * 12, 960, time + i * 8);
+        }
+        mDetector.onUp(MOVES_PER_DRAG * 12, 960, time + MOVES_PER_DRAG * 8);
+        mTime = time + 1000;
+        return mCallbackCount;
+    }
+
+    /** A single tap, with double taps disabled. */
+    @Benchmark
+    public int tapGesture() {
+        long time = mTime;
+        mDetector.onDown(10, 10, time);
+        mDetector.onMove(12, 11, time + 16);
+        mDetector.onUp(12, 11, time + 80);
+        mTime = time + 1000;
+        return mCallbackCount;
+    }
+
+    /** A whole gesture with metrics, including sorting the latencies for the percentiles. */
+    @Benchmark
+    public int dragGestureWithMetrics() {
+        long time = mTime;
+        mMetricsRecorder.onGestureStart();
+        for (int i = 1; i <= MOVES_PER_DRAG; i++) {
+            long nanos = (time + i * 8) * 1000000;
+            mMetricsRecorder.onMove();
+            mMetricsRecorder.onLayoutRequested(nanos);
+            mMetricsRecorder.onLayoutUpdated(nanos + (i * 7919) % 4000000);
+            mMetricsRecorder.onTouchHandled(20000, false, 0);
+        }
+        mMetricsRecorder.onTouchHandled(20000, true, 0);
+        mTime = time + 1000;
+        return mCallbackCount;
+    }
+
+    @Benchmark
+    public float velocityEstimate() {
+        long time = mTime;
+        mVelocityEstimator.clear();
+        for (int i = 0; i < 10; i++) {
+            mVelocityEstimator.addSample(i * 15, i * 3, time + i * 8);
+        }
+        mVelocityEstimator.computeVelocity();
+        mTime = time + 1000;
+        return mVelocityEstimator.getVelocityX() + mVelocityEstimator.getVelocityY();
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Cost of finding the drop zone under a dragged overlay, which happens on every move of a drag.
+ * Compares the grid index with a linear scan over every zone, like the original `isPointInArea()`
+ * did, which also needed a `getLocationOnScreen()` per zone and move on a device. Both use the
+ * same circular capture and release test, so only the data structure differs. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DropZoneBenchmark {
+
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int ZONE_SIZE = 144;
+    private static final int POINT_COUNT = 1024;
+
+    @Param({"1", "4", "16", "64"})
+    public int zoneCount;
+
+    private final DropZoneIndex mIndex = new DropZoneIndex();
+    private int[] mZoneX;
+    private int[] mZoneY;
+    private final int[] mPointX = new int[POINT_COUNT];
+    private final int[] mPointY = new int[POINT_COUNT];
+    private int mNextPoint;
+    private int mCurrentZone = DropZoneIndex.NO_ZONE;
+    private int mScanCurrentZone = DropZoneIndex.NO_ZONE;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mZoneX = new int[zoneCount];
+        mZoneY = new int[zoneCount];
+        mIndex.clear();
+        for (int i = 0; i < zoneCount; i++) {
+            mZoneX[i] = random.nextInt(SCREEN_WIDTH - ZONE_SIZE);
+            mZoneY[i] = random.nextInt(SCREEN_HEIGHT - ZONE_SIZE);
+            mIndex.addZone(mZoneX[i], mZoneY[i], mZoneX[i] + ZONE_SIZE, mZoneY[i] + ZONE_SIZE);
+        }
+        mIndex.build();
+        for (int i = 0; i < POINT_COUNT; i++) {
+            mPointX[i] = random.nextInt(SCREEN_WIDTH);
+            mPointY[i] = random.nextInt(SCREEN_HEIGHT);
+        }
+    }
+
+    @Benchmark
+    public int gridIndexQuery() {
+        int point = nextPoint();
+        mCurrentZone = mIndex.query(mPointX[point], mPointY[point], mCurrentZone, DropZoneIndex.NO_ZONE);
+        return mCurrentZone;
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int point = nextPoint();
+        mScanCurrentZone = scan(mPointX[point], mPointY[point], mScanCurrentZone);
+        return mScanCurrentZone;
+    }
+
+    /** Rebuilding happens after a drop zone was laid out again, not per move. */
+    @Benchmark
+    public int rebuildIndex() {
+        mIndex.clear();
+        for (int i = 0; i < zoneCount; i++) {
+            mIndex.addZone(mZoneX[i], mZoneY[i], mZoneX[i] + ZONE_SIZE, mZoneY[i] + ZONE_SIZE);
+        }
+        mIndex.build();
+        return mIndex.getZoneCount();
+    }
+
+    private int nextPoint() {
+        mNextPoint = (mNextPoint + 1) & (POINT_COUNT - 1);
+        return mNextPoint;
+    }
+
+    /** The same query as {@link DropZoneIndex#query(int, int, int, int)}, checking every zone.
+     * Zones are squares, so their capture radius is their size, measured from the center. */
+    private int scan(int x, int y, int currentZone) {
+        if (currentZone != DropZoneIndex.NO_ZONE && isWithinRadius(x, y, currentZone, ZONE_SIZE * 5 / 4)) {
+            return currentZone;
+        }
+        for (int i = 0; i < zoneCount; i++) {
+            if (isWithinRadius(x, y, i, ZONE_SIZE)) {
+                return i;
+            }
+        }
+        return DropZoneIndex.NO_ZONE;
+    }
+
+    private boolean isWithinRadius(int x, int y, int zone, int radius) {
+        long dx = x - (mZoneX[zone] + ZONE_SIZE / 2);
+        long dy = y - (mZoneY[zone] + ZONE_SIZE / 2);
+        return dx * dx + dy * dy <= (long) radius * radius;
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Cost of one animation frame of the snap-to-edge springs, for a number of overlays animating
+ * at the same time. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MotionBenchmark {
+
+    private static final long FRAME_NANOS = 16666667;
+
+    @Param({"1", "8", "32"})
+    public int motionCount;
+
+    private OverlayMotionEngine mEngine;
+    private SpringMotion[] mMotions;
+    private long mFrameTimeNanos;
+    private int mUpdateSum;
+
+    @Setup
+    public void setUp() {
+        mEngine = new OverlayMotionEngine(new OverlayMotionEngine.Listener() {
+            @Override
+            public void onMotionUpdate(SpringMotion motion, int x, int y) {
+                mUpdateSum += x + y;
+            }
+
+            @Override
+            public void onMotionEnd(SpringMotion motion) {
+                mUpdateSum++;
+            }
+        });
+        mMotions = new SpringMotion[motionCount];
+        for (int i = 0; i < motionCount; i++) {
+            mMotions[i] = new SpringMotion(null);
+        }
+    }
+
+    /** One frame of all motions, restarting them whenever they have settled so every frame does
+     * the same amount of work. */
+    @Benchmark
+    public int frame() {
+        mFrameTimeNanos += FRAME_NANOS;
+        if (!mEngine.isRunning()) {
+            for (int i = 0; i < motionCount; i++) {
+                mMotions[i].startSnapToEdge(500 + i, i * 10, 2000, -500, 0, 936, -888, 888, mFrameTimeNanos);
+                mEngine.add(mMotions[i]);
+            }
+        }
+        mEngine.doFrame(mFrameTimeNanos);
+        return mUpdateSum;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Cost of placing a released overlay with overlap avoidance, for growing numbers of overlays
+ * already docked on the screen. This only runs when a drag ends, dragging itself costs nothing.
+ * It grows with how full the edge columns are, since a full column sends the overlay inwards. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OverlapBenchmark {
+
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int OVERLAY_SIZE = 48;
+    private static final int RELEASE_COUNT = 1024;
+
+    @Param({"16", "128", "512"})
+    public int overlayCount;
+
+    private final OverlapSolver mSolver = new OverlapSolver();
+    private int[] mIds;
+    private final int[] mReleaseX = new int[RELEASE_COUNT];
+    private final int[] mReleaseY = new int[RELEASE_COUNT];
+    private int mNextRelease;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mSolver.setBounds(SCREEN_WIDTH, SCREEN_HEIGHT);
+        mSolver.setReservedArea(468, 1700, 612, 1844);
+        mIds = new int[overlayCount];
+        for (int i = 0; i < overlayCount; i++) {
+            mIds[i] = mSolver.add(random.nextInt(SCREEN_WIDTH), random.nextInt(SCREEN_HEIGHT), OVERLAY_SIZE, OVERLAY_SIZE);
+            release(mIds[i], random.nextInt(SCREEN_WIDTH), random.nextInt(SCREEN_HEIGHT));
+        }
+        for (int i = 0; i < RELEASE_COUNT; i++) {
+            mReleaseX[i] = random.nextInt(SCREEN_WIDTH);
+            mReleaseY[i] = random.nextInt(SCREEN_HEIGHT);
+        }
+    }
+
+    /** What happens when a drag ends: solve the released overlay and claim its new place. */
+    @Benchmark
+    public int releaseOverlay() {
+        int release = mNextRelease;
+        mNextRelease = (release + 1) % RELEASE_COUNT;
+        int id = mIds[release % overlayCount];
+        release(id, mReleaseX[release], mReleaseY[release]);
+        return mSolver.getSolvedLeft() + mSolver.getSolvedTop();
+    }
+
+    private void release(int id, int x, int y) {
+        mSolver.solve(id, x, y);
+        mSolver.update(id, mSolver.getSolvedLeft(), mSolver.getSolvedTop(), OVERLAY_SIZE, OVERLAY_SIZE);
+    }
+
+}
@@ -34,8 +34,8 @@ public class SimpleOverlayService extends Service {
         }, new View.OnLongClickListener() {
             @Override
             public boolean onLongClick(View v) {
-                toast("onLongClick not implemented yet");
-                return false;
+                toast("onLongClick");
+                return true;
             }
         }, new GlobalOverlay.OnRemoveOverlayListener() {
             @Override
@@ -26,8 +26,8 @@ public class SimpleOverlayServiceOld extends GlobalOverlayService {
         }, new View.OnLongClickListener() {
             @Override
             public boolean onLongClick(View v) {
-                toast("onLongClick not implemented yet");
-                return false;
+                toast("onLongClick");
+                return true;
             }
         }, new OnRemoveOverlayListener() {
             @Override
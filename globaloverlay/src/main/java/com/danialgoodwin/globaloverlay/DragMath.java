@@ -0,0 +1,46 @@
+package com.danialgoodwin.globaloverlay;
+
+/** The position math of dragging an overlay, run for every move event of a drag. */
+final class DragMath {
+
+    private DragMath() {}
+
+    /** Return the position of the overlay for the current touch, keeping it at the same offset
+     * from the touch as when the gesture started. */
+    static int dragPosition(int initialPosition, float initialTouch, float touch) {
+        return initialPosition + (int) (touch - initialTouch);
+    }
+
+    /** Return the on-screen center of an overlay along one axis.
+     * @param position the layout params position
+     * @param screenOffset difference between the on-screen location and the layout params
+     * @param size the width or height of the overlay */
+    static int centerOf(int position, int screenOffset, int size) {
+        return position + screenOffset + size / 2;
+    }
+
+    /** Return the layout params position that puts the on-screen center of the overlay at this
+     * point along one axis. The inverse of {@link #centerOf(int, int, int)}. */
+    static int positionForCenter(int center, int screenOffset, int size) {
+        return center - screenOffset - size / 2;
+    }
+
+    /** Return the position along one axis that puts an overlay at the same relative place on a
+     * display that changed size, e.g. after a rotation. Overlays against an edge, or past it, end
+     * up against the same edge, others keep their center at the same fraction of the display.
+     * @param position the distance from the start of the display to the start of the overlay
+     * @param size the width or height of the overlay */
+    static int reprojectPosition(int position, int size, int oldLength, int newLength) {
+        int newMaxPosition = Math.max(0, newLength - size);
+        if (position <= 0 || oldLength <= 0) {
+            return Math.max(0, Math.min(newMaxPosition, position));
+        }
+        if (position >= oldLength - size) {
+            return newMaxPosition;
+        }
+        long center = position + size / 2;
+        int newPosition = (int) (center * newLength / oldLength) - size / 2;
+        return Math.max(0, Math.min(newMaxPosition, newPosition));
+    }
+
+}
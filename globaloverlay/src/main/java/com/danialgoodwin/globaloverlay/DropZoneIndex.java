@@ -0,0 +1,188 @@
+package com.danialgoodwin.globaloverlay;
+
+/** A small uniform-grid spatial index over the areas an overlay can be dropped onto, such as the
+ * remove view. It is only rebuilt when a drop zone moves or changes size, and each query is a
+ * single grid cell lookup plus a check of the few zones in that cell, no matter how many zones or
+ * overlays there are. Queries only use integer math and don't allocate.
+ *
+ * Each zone is a circle around the center of its view. A point is captured once it is within
+ * the capture radius, and is only released again once it leaves the slightly larger release
+ * radius, so an overlay held near the edge doesn't flicker in and out of the zone. */
+final class DropZoneIndex {
+
+    /** Returned by {@link #query(int, int, int, int)} when the point isn't in any zone. */
+    static final int NO_ZONE = -1;
+
+    /** The release radius is this many quarters of the capture radius. */
+    private static final int RELEASE_RADIUS_QUARTERS = 5;
+
+    private static final int GRID_CELLS_PER_SIDE = 8;
+    private static final int GRID_CELL_COUNT = GRID_CELLS_PER_SIDE * GRID_CELLS_PER_SIDE;
+
+    private int mZoneCount;
+    private int[] mCenterX = new int[4];
+    private int[] mCenterY = new int[4];
+    private int[] mCaptureRadius = new int[4];
+    private int[] mReleaseRadius = new int[4];
+
+    // Bounds of the grid, which is the bounding box of all zones.
+    private int mGridLeft;
+    private int mGridTop;
+    private int mCellWidth;
+    private int mCellHeight;
+
+    private final int[][] mCellZones = new int[GRID_CELL_COUNT][];
+    private final int[] mCellZoneCounts = new int[GRID_CELL_COUNT];
+
+    /** Remove all zones. Call {@link #addZone(int, int, int, int)} and then {@link #build()} to
+     * fill the index again. */
+    void clear() {
+        mZoneCount = 0;
+        for (int i = 0; i < GRID_CELL_COUNT; i++) {
+            mCellZoneCounts[i] = 0;
+        }
+    }
+
+    /** Add a zone for a view with these bounds, in screen coordinates, and return its index. The
+     * capture radius is the larger side of the bounds, measured from the center. The index isn't
+     * queryable until {@link #build()} is called. */
+    int addZone(int left, int top, int right, int bottom) {
+        if (mZoneCount == mCenterX.length) {
+            int newLength = mCenterX.length * 2;
+            mCenterX = copyOf(mCenterX, newLength);
+            mCenterY = copyOf(mCenterY, newLength);
+            mCaptureRadius = copyOf(mCaptureRadius, newLength);
+            mReleaseRadius = copyOf(mReleaseRadius, newLength);
+        }
+        int captureRadius = Math.max(right - left, bottom - top);
+        mCenterX[mZoneCount] = (left + right) / 2;
+        mCenterY[mZoneCount] = (top + bottom) / 2;
+        mCaptureRadius[mZoneCount] = captureRadius;
+        mReleaseRadius[mZoneCount] = captureRadius * RELEASE_RADIUS_QUARTERS / 4;
+        return mZoneCount++;
+    }
+
+    int getZoneCount() {
+        return mZoneCount;
+    }
+
+    /** Bucket all added zones into the grid. */
+    void build() {
+        for (int i = 0; i < GRID_CELL_COUNT; i++) {
+            mCellZoneCounts[i] = 0;
+        }
+        if (mZoneCount == 0) {
+            return;
+        }
+
+        int gridLeft = Integer.MAX_VALUE;
+        int gridTop = Integer.MAX_VALUE;
+        int gridRight = Integer.MIN_VALUE;
+        int gridBottom = Integer.MIN_VALUE;
+        for (int i = 0; i < mZoneCount; i++) {
+            gridLeft = Math.min(gridLeft, mCenterX[i] - mCaptureRadius[i]);
+            gridTop = Math.min(gridTop, mCenterY[i] - mCaptureRadius[i]);
+            gridRight = Math.max(gridRight, mCenterX[i] + mCaptureRadius[i] + 1);
+            gridBottom = Math.max(gridBottom, mCenterY[i] + mCaptureRadius[i] + 1);
+        }
+        mGridLeft = gridLeft;
+        mGridTop = gridTop;
+        mCellWidth = Math.max(1, (gridRight - gridLeft + GRID_CELLS_PER_SIDE - 1) / GRID_CELLS_PER_SIDE);
+        mCellHeight = Math.max(1, (gridBottom - gridTop + GRID_CELLS_PER_SIDE - 1) / GRID_CELLS_PER_SIDE);
+
+        for (int zone = 0; zone < mZoneCount; zone++) {
+            int firstColumn = columnOf(mCenterX[zone] - mCaptureRadius[zone]);
+            int lastColumn = columnOf(mCenterX[zone] + mCaptureRadius[zone]);
+            int firstRow = rowOf(mCenterY[zone] - mCaptureRadius[zone]);
+            int lastRow = rowOf(mCenterY[zone] + mCaptureRadius[zone]);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    addToCell(row * GRID_CELLS_PER_SIDE + column, zone);
+                }
+            }
+        }
+    }
+
+    /** Return the index of the zone that point (x,y) is in, otherwise {@link #NO_ZONE}.
+     *
+     * @param currentZone the zone the point was in for the previous query, this one is kept as
+     *                    long as the point is within its release radius
+     * @param ignoredZone a zone that never matches, e.g. the one for the view being dragged
+     */
+    int query(int x, int y, int currentZone, int ignoredZone) {
+        if (currentZone >= 0 && currentZone < mZoneCount
+                && isWithinRadius(currentZone, x, y, mReleaseRadius[currentZone])) {
+            return currentZone;
+        }
+        if (mZoneCount == 0) {
+            return NO_ZONE;
+        }
+        int column = x - mGridLeft;
+        int row = y - mGridTop;
+        if (column < 0 || row < 0) {
+            return NO_ZONE;
+        }
+        column /= mCellWidth;
+        row /= mCellHeight;
+        if (column >= GRID_CELLS_PER_SIDE || row >= GRID_CELLS_PER_SIDE) {
+            return NO_ZONE;
+        }
+
+        int cell = row * GRID_CELLS_PER_SIDE + column;
+        int[] zones = mCellZones[cell];
+        for (int i = 0, count = mCellZoneCounts[cell]; i < count; i++) {
+            int zone = zones[i];
+            if (zone != ignoredZone && isWithinRadius(zone, x, y, mCaptureRadius[zone])) {
+                return zone;
+            }
+        }
+        return NO_ZONE;
+    }
+
+    /** Return the x position of the center of this zone, in screen coordinates. */
+    int getCenterX(int zone) {
+        return mCenterX[zone];
+    }
+
+    /** Return the y position of the center of this zone, in screen coordinates. */
+    int getCenterY(int zone) {
+        return mCenterY[zone];
+    }
+
+    private boolean isWithinRadius(int zone, int x, int y, int radius) {
+        long dx = x - mCenterX[zone];
+        long dy = y - mCenterY[zone];
+        return dx * dx + dy * dy <= (long) radius * radius;
+    }
+
+    private int columnOf(int x) {
+        return clampToGrid((x - mGridLeft) / mCellWidth);
+    }
+
+    private int rowOf(int y) {
+        return clampToGrid((y - mGridTop) / mCellHeight);
+    }
+
+    private static int clampToGrid(int cell) {
+        return Math.max(0, Math.min(GRID_CELLS_PER_SIDE - 1, cell));
+    }
+
+    private void addToCell(int cell, int zone) {
+        int[] zones = mCellZones[cell];
+        int count = mCellZoneCounts[cell];
+        if (zones == null) {
+            zones = mCellZones[cell] = new int[4];
+        } else if (count == zones.length) {
+            zones = mCellZones[cell] = copyOf(zones, count * 2);
+        }
+        zones[count] = zone;
+        mCellZoneCounts[cell] = count + 1;
+    }
+
+    private static int[] copyOf(int[] array, int newLength) {
+        int[] copy = new int[newLength];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, newLength));
+        return copy;
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/** Runs callbacks once on the next display frame. All callbacks posted before a frame share a
+ * single `Choreographer` frame callback, so many overlays wanting a frame cost the same as one.
+ *
+ * `Choreographer` is only available since API 16, on older devices frames are approximated by
+ * posting to the main thread every {@link #FALLBACK_FRAME_DELAY_MILLIS}. */
+final class FrameScheduler {
+
+    private static final long FALLBACK_FRAME_DELAY_MILLIS = 16;
+
+    /** Interface definition for something that wants to run on the next frame. */
+    interface Callback {
+        /** Called once per post, on the main thread.
+         * @param frameTimeNanos the time the frame started, in the `System.nanoTime()` time base */
+        void doFrame(long frameTimeNanos);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final FrameSource mFrameSource;
+
+    private ArrayList<Callback> mPendingCallbacks = new ArrayList<Callback>();
+    private ArrayList<Callback> mRunningCallbacks = new ArrayList<Callback>();
+    private boolean mIsFrameScheduled;
+    private long mLastFrameTimeNanos;
+
+    FrameScheduler() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFrameSource = new ChoreographerFrameSource(this);
+        } else {
+            mFrameSource = new HandlerFrameSource(this, mHandler);
+        }
+    }
+
+    /** Run the callback on the next frame. Posting the same callback again before the frame
+     * runs has no effect. Must be called on the main thread. */
+    void postFrameCallback(Callback callback) {
+        if (!mPendingCallbacks.contains(callback)) {
+            mPendingCallbacks.add(callback);
+        }
+        if (!mIsFrameScheduled) {
+            mIsFrameScheduled = true;
+            mFrameSource.scheduleFrame();
+        }
+    }
+
+    /** Don't run the callback on the next frame, if it was posted. Called from another callback,
+     * it also keeps the callback from running later in the current frame. */
+    void removeFrameCallback(Callback callback) {
+        mPendingCallbacks.remove(callback);
+        int index = mRunningCallbacks.indexOf(callback);
+        if (index >= 0) {
+            // Only cleared, the running frame is still iterating over the list.
+            mRunningCallbacks.set(index, null);
+        }
+    }
+
+    /** Return the estimated start of the first frame after this time, assuming frames have kept
+     * coming every frame interval since the last one that ran here. Without a frame yet, it is one
+     * interval after this time.
+     * @param timeNanos a time in the `System.nanoTime()` time base */
+    long getNextFrameTimeNanos(long timeNanos, long frameIntervalNanos) {
+        if (mLastFrameTimeNanos == 0 || frameIntervalNanos <= 0) {
+            return timeNanos + frameIntervalNanos;
+        }
+        long elapsedFrames = Math.max(0, timeNanos - mLastFrameTimeNanos) / frameIntervalNanos;
+        return mLastFrameTimeNanos + (elapsedFrames + 1) * frameIntervalNanos;
+    }
+
+    /** Return the handler for the main thread, for work that isn't tied to frames. */
+    Handler getHandler() {
+        return mHandler;
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        mIsFrameScheduled = false;
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        // Swap the lists so that callbacks can post themselves again for the following frame.
+        ArrayList<Callback> callbacks = mPendingCallbacks;
+        mPendingCallbacks = mRunningCallbacks;
+        mRunningCallbacks = callbacks;
+        for (int i = 0, size = callbacks.size(); i < size; i++) {
+            Callback callback = callbacks.get(i);
+            if (callback != null) {
+                callback.doFrame(frameTimeNanos);
+            }
+        }
+        callbacks.clear();
+    }
+
+    private interface FrameSource {
+        void scheduleFrame();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class ChoreographerFrameSource implements FrameSource, Choreographer.FrameCallback {
+        private final FrameScheduler mScheduler;
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        ChoreographerFrameSource(FrameScheduler scheduler) {
+            mScheduler = scheduler;
+        }
+
+        @Override
+        public void scheduleFrame() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduler.doFrame(frameTimeNanos);
+        }
+    }
+
+    private static final class HandlerFrameSource implements FrameSource, Runnable {
+        private final FrameScheduler mScheduler;
+        private final Handler mHandler;
+
+        HandlerFrameSource(FrameScheduler scheduler, Handler handler) {
+            mScheduler = scheduler;
+            mHandler = handler;
+        }
+
+        @Override
+        public void scheduleFrame() {
+            mHandler.postDelayed(this, FALLBACK_FRAME_DELAY_MILLIS);
+        }
+
+        @Override
+        public void run() {
+            mScheduler.doFrame(System.nanoTime());
+        }
+    }
+
+}
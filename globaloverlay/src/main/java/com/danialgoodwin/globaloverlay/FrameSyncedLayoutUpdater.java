@@ -0,0 +1,83 @@
+package com.danialgoodwin.globaloverlay;
+
+import java.util.ArrayList;
+
+/** Sends overlay layout params to the window manager at most once per display frame for each
+ * overlay. Every `updateViewLayout()` is an IPC to the window server, and touch panels often
+ * report several moves per frame, so only the latest position of a frame is worth sending. */
+final class FrameSyncedLayoutUpdater implements FrameScheduler.Callback {
+
+    private final WindowSink mWindowSink;
+    private final FrameScheduler mFrameScheduler;
+    private final ArrayList<OverlayRecord> mPendingRecords = new ArrayList<OverlayRecord>();
+    private long mCoalescedMoveCount;
+
+    FrameSyncedLayoutUpdater(WindowSink windowSink, FrameScheduler frameScheduler) {
+        mWindowSink = windowSink;
+        mFrameScheduler = frameScheduler;
+    }
+
+    /** Send the current layout params of this overlay on the next frame. If an update is
+     * already pending, the two are merged. */
+    void requestUpdate(OverlayRecord record) {
+        if (record.isLayoutUpdatePending) {
+            return;
+        }
+        record.isLayoutUpdatePending = true;
+        mPendingRecords.add(record);
+        mFrameScheduler.postFrameCallback(this);
+    }
+
+    /** Like {@link #requestUpdate(OverlayRecord)}, for the position of a touch move. A move
+     * merged into a pending update is counted, other updates such as animations aren't. */
+    void requestMoveUpdate(OverlayRecord record) {
+        if (record.isLayoutUpdatePending) {
+            record.coalescedMoveCount++;
+            mCoalescedMoveCount++;
+            return;
+        }
+        requestUpdate(record);
+    }
+
+    /** Drop any pending update for this overlay, e.g. because it is being removed. */
+    void cancelUpdate(OverlayRecord record) {
+        if (record.isLayoutUpdatePending) {
+            record.isLayoutUpdatePending = false;
+            mPendingRecords.remove(record);
+        }
+    }
+
+    /** Send the current layout params of this overlay right away, replacing any pending update.
+     * For callers that already run once per frame, such as animations. */
+    void updateNow(OverlayRecord record) {
+        cancelUpdate(record);
+        updateViewLayout(record);
+    }
+
+    /** Return the total number of touch moves that were merged into another update. */
+    long getCoalescedMoveCount() {
+        return mCoalescedMoveCount;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        for (int i = 0, size = mPendingRecords.size(); i < size; i++) {
+            OverlayRecord record = mPendingRecords.get(i);
+            record.isLayoutUpdatePending = false;
+            updateViewLayout(record);
+        }
+        mPendingRecords.clear();
+    }
+
+    private void updateViewLayout(OverlayRecord record) {
+        if (record.metrics == null) {
+            mWindowSink.updateViewLayout(record.windowView, record.getWindowLayoutParams());
+            return;
+        }
+        OverlayTrace.beginSection(OverlayTrace.SECTION_UPDATE_LAYOUT);
+        mWindowSink.updateViewLayout(record.windowView, record.getWindowLayoutParams());
+        OverlayTrace.endSection();
+        record.metrics.onLayoutUpdated(System.nanoTime());
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.danialgoodwin.globaloverlay;
+
+/** Numbers about a single touch gesture on an overlay, from the down event until its last layout
+ * update was sent. See {@link GlobalOverlay#setOnGestureMetricsListener(GlobalOverlay.OnGestureMetricsListener)}.
+ *
+ * The same instance is reused for every gesture of an overlay, so copy out any values you want to
+ * keep after the listener returns. */
+public final class GestureMetrics {
+
+    int mMoveCount;
+    int mLayoutUpdateCount;
+    int mCoalescedMoveCount;
+    int mThrottledMoveCount;
+    long mMaxMoveUpdateIntervalNanos;
+    int mLatencySampleCount;
+    long mLatencyP50Nanos;
+    long mLatencyP99Nanos;
+    long mMaxLatencyNanos;
+    long mTouchTimeNanos;
+
+    GestureMetrics() {}
+
+    /** Return the number of move events received, including the ones within the touch slop. */
+    public int getMoveCount() {
+        return mMoveCount;
+    }
+
+    /** Return the number of layout updates sent for this gesture, i.e. `updateViewLayout()` calls,
+     * or view property updates in compositor mode. */
+    public int getLayoutUpdateCount() {
+        return mLayoutUpdateCount;
+    }
+
+    /** Return the number of moves that were merged into a later layout update, see
+     * `setDragCoalescingEnabled()`. */
+    public int getCoalescedMoveCount() {
+        return mCoalescedMoveCount;
+    }
+
+    /** Return the number of moves that were skipped because the main thread was too busy, for
+     * overlays with the adaptive move rate policy. Only the newest position is sent. See
+     * `setOverlayMoveRatePolicy()`. */
+    public int getThrottledMoveCount() {
+        return mThrottledMoveCount;
+    }
+
+    /** Return the longest time the adaptive move rate policy kept between two layout updates
+     * during this gesture, in nanoseconds, or 0 if it stayed at the full rate. */
+    public long getMaxMoveUpdateIntervalNanos() {
+        return mMaxMoveUpdateIntervalNanos;
+    }
+
+    /** Return the number of latencies the percentiles were computed from. Only the most recent
+     * ones are kept for long gestures. */
+    public int getLatencySampleCount() {
+        return mLatencySampleCount;
+    }
+
+    /** Return the median time from a touch event until the layout update with its position was
+     * sent, in nanoseconds. */
+    public long getLatencyP50Nanos() {
+        return mLatencyP50Nanos;
+    }
+
+    /** Return the 99th percentile of the time from a touch event until the layout update with its
+     * position was sent, in nanoseconds. */
+    public long getLatencyP99Nanos() {
+        return mLatencyP99Nanos;
+    }
+
+    /** Return the longest time from a touch event until the layout update with its position was
+     * sent, in nanoseconds. */
+    public long getMaxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    /** Return the total time spent handling the touch events of this gesture, in nanoseconds. */
+    public long getTouchTimeNanos() {
+        return mTouchTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "GestureMetrics{moves=" + mMoveCount
+                + ", layoutUpdates=" + mLayoutUpdateCount
+                + ", coalescedMoves=" + mCoalescedMoveCount
+                + ", throttledMoves=" + mThrottledMoveCount
+                + ", maxMoveUpdateInterval=" + mMaxMoveUpdateIntervalNanos / 1000 + "us"
+                + ", latencyP50=" + mLatencyP50Nanos / 1000 + "us"
+                + ", latencyP99=" + mLatencyP99Nanos / 1000 + "us"
+                + ", latencyMax=" + mMaxLatencyNanos / 1000 + "us"
+                + ", touchTime=" + mTouchTimeNanos / 1000 + "us}";
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.danialgoodwin.globaloverlay;
+
+import java.util.Arrays;
+
+/** Collects the {@link GestureMetrics} of one overlay. Latencies go into a fixed size ring buffer
+ * and the metrics object is reused, so recording never allocates. Only exists for an overlay
+ * while metrics are enabled, so callers skip all of this with a single null check.
+ *
+ * A gesture is reported once its last touch event was handled and its last requested layout
+ * update was sent, so coalesced updates on the frame after the up event are still counted.
+ *
+ * All times are in nanoseconds in the `System.nanoTime()` time base. */
+final class GestureMetricsRecorder {
+
+    /** Interface definition for receiving the metrics of finished gestures. */
+    interface Reporter {
+        void onGestureMetrics(GestureMetricsRecorder recorder, GestureMetrics metrics);
+    }
+
+    static final int MAX_LATENCY_SAMPLES = 128;
+
+    /** Whatever the metrics belong to, e.g. an overlay. */
+    final Object tag;
+
+    private final Reporter mReporter;
+    private final GestureMetrics mMetrics = new GestureMetrics();
+    private final long[] mLatencies = new long[MAX_LATENCY_SAMPLES];
+    private final long[] mSortedLatencies = new long[MAX_LATENCY_SAMPLES];
+    private int mNewestLatency = -1;
+    private int mLatencyCount;
+
+    private boolean mIsActive;
+    private boolean mIsEnded;
+    private boolean mHasPendingTouch;
+    private long mPendingTouchTimeNanos;
+    private int mMoveCount;
+    private int mLayoutUpdateCount;
+    private int mCoalescedMoveCount;
+    private int mThrottledMoveCount;
+    private long mMaxMoveUpdateIntervalNanos;
+    private long mTouchTimeNanos;
+
+    GestureMetricsRecorder(Object tag, Reporter reporter) {
+        this.tag = tag;
+        mReporter = reporter;
+    }
+
+    /** A down event starts a new gesture, dropping any unfinished one. */
+    void onGestureStart() {
+        mIsActive = true;
+        mIsEnded = false;
+        mHasPendingTouch = false;
+        mNewestLatency = -1;
+        mLatencyCount = 0;
+        mMoveCount = 0;
+        mLayoutUpdateCount = 0;
+        mCoalescedMoveCount = 0;
+        mThrottledMoveCount = 0;
+        mMaxMoveUpdateIntervalNanos = 0;
+        mTouchTimeNanos = 0;
+    }
+
+    void onMove() {
+        if (mIsActive) {
+            mMoveCount++;
+        }
+    }
+
+    /** A move was skipped by the adaptive move rate, which currently keeps at least this long
+     * between layout updates. */
+    void onMoveThrottled(long updateIntervalNanos) {
+        if (mIsActive) {
+            mThrottledMoveCount++;
+            mMaxMoveUpdateIntervalNanos = Math.max(mMaxMoveUpdateIntervalNanos, updateIntervalNanos);
+        }
+    }
+
+    /** A layout update was requested for a touch event. If an update is already pending, the
+     * latency is measured from the older touch, which is the one that waited the longest. */
+    void onLayoutRequested(long touchTimeNanos) {
+        if (mIsActive && !mHasPendingTouch) {
+            mHasPendingTouch = true;
+            mPendingTouchTimeNanos = touchTimeNanos;
+        }
+    }
+
+    /** A layout update was sent. Updates that weren't requested by a touch, e.g. of an animation,
+     * are ignored. */
+    void onLayoutUpdated(long nowNanos) {
+        if (!mIsActive || !mHasPendingTouch) {
+            return;
+        }
+        mHasPendingTouch = false;
+        mLayoutUpdateCount++;
+        mNewestLatency = (mNewestLatency + 1) % MAX_LATENCY_SAMPLES;
+        mLatencies[mNewestLatency] = nowNanos - mPendingTouchTimeNanos;
+        if (mLatencyCount < MAX_LATENCY_SAMPLES) {
+            mLatencyCount++;
+        }
+        reportIfDone();
+    }
+
+    /** The pending layout update won't be sent, e.g. the overlay was removed. */
+    void onLayoutCancelled() {
+        if (mIsActive && mHasPendingTouch) {
+            mHasPendingTouch = false;
+            reportIfDone();
+        }
+    }
+
+    /** A touch event was handled.
+     * @param durationNanos time spent handling it
+     * @param isLastEvent true for the up or cancel event of the gesture
+     * @param coalescedMoveCount moves of the gesture that were merged so far */
+    void onTouchHandled(long durationNanos, boolean isLastEvent, int coalescedMoveCount) {
+        if (!mIsActive) {
+            return;
+        }
+        mTouchTimeNanos += durationNanos;
+        mCoalescedMoveCount = coalescedMoveCount;
+        if (isLastEvent) {
+            mIsEnded = true;
+            reportIfDone();
+        }
+    }
+
+    private void reportIfDone() {
+        if (!mIsEnded || mHasPendingTouch) {
+            return;
+        }
+        mIsActive = false;
+
+        GestureMetrics metrics = mMetrics;
+        metrics.mMoveCount = mMoveCount;
+        metrics.mLayoutUpdateCount = mLayoutUpdateCount;
+        metrics.mCoalescedMoveCount = mCoalescedMoveCount;
+        metrics.mThrottledMoveCount = mThrottledMoveCount;
+        metrics.mMaxMoveUpdateIntervalNanos = mMaxMoveUpdateIntervalNanos;
+        metrics.mTouchTimeNanos = mTouchTimeNanos;
+        metrics.mLatencySampleCount = mLatencyCount;
+        if (mLatencyCount == 0) {
+            metrics.mLatencyP50Nanos = 0;
+            metrics.mLatencyP99Nanos = 0;
+            metrics.mMaxLatencyNanos = 0;
+        } else {
+            System.arraycopy(mLatencies, 0, mSortedLatencies, 0, mLatencyCount);
+            Arrays.sort(mSortedLatencies, 0, mLatencyCount);
+            metrics.mLatencyP50Nanos = percentile(mSortedLatencies, mLatencyCount, 50);
+            metrics.mLatencyP99Nanos = percentile(mSortedLatencies, mLatencyCount, 99);
+            metrics.mMaxLatencyNanos = mSortedLatencies[mLatencyCount - 1];
+        }
+        mReporter.onGestureMetrics(this, metrics);
+    }
+
+    /** Nearest rank percentile of the first count sorted values. */
+    private static long percentile(long[] sorted, int count, int percent) {
+        int rank = (percent * count + 99) / 100;
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+}
@@ -6,41 +6,112 @@ package com.danialgoodwin.globaloverlay;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.graphics.PixelFormat;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.LayoutInflater;
-import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewConfiguration;
-import android.view.WindowManager;
+
+import java.util.Collection;
 
 public class GlobalOverlay {
     private static final String LOGCAT_TAG = "GlobalOverlay";
+
     private static void log(String message) {
         Log.d(LOGCAT_TAG, message);
     }
 
-    private Context mContext;
-    private WindowManager mWindowManager;
-    private View mRemoveView;
-    private View mOverlayView;
+    /** Drag mode where the overlay view is moved as it is. */
+    public static final int DRAG_MODE_LIVE = 0;
+    /** Drag mode where the overlay view is rendered into a hardware layer for the length of a drag. */
+    public static final int DRAG_MODE_HARDWARE_LAYER = 1;
+    /** Drag mode where a snapshot of the overlay view is moved in its place for the length of a
+     * drag, and the live view is put back where it was dropped. The snapshot is drawn in software,
+     * so content that only exists on the GPU or in its own surface, e.g. a `SurfaceView`,
+     * `TextureView` or hardware bitmap, is blank in it. Use {@link #DRAG_MODE_HARDWARE_LAYER} for
+     * such overlays. */
+    public static final int DRAG_MODE_SNAPSHOT = 2;
+
+    /** Idle flag that scales the overlay down, see {@link #setOverlayIdlePolicy(View, int, long)}. */
+    public static final int IDLE_FLAG_SHRINK = 1;
+    /** Idle flag that makes the overlay mostly transparent. */
+    public static final int IDLE_FLAG_DIM = 2;
+    /** Idle flag that moves the overlay half behind the nearest left or right screen edge. */
+    public static final int IDLE_FLAG_TUCK = 4;
+    /** Idle flag that replaces the overlay with a bitmap of itself, so it isn't redrawn. */
+    public static final int IDLE_FLAG_SNAPSHOT = 8;
+
+    /** Move rate policy where a dragged overlay is moved on every move event, see
+     * {@link #setOverlayMoveRatePolicy(View, int)}. */
+    public static final int MOVE_RATE_FULL = 0;
+    /** Move rate policy where a dragged overlay is moved less often while the main thread can't
+     * keep up with the display. */
+    public static final int MOVE_RATE_ADAPTIVE = 1;
+
+    /** Shared by all instances in the process, through a single {@link OverlayPositionStore}. */
+    private static final String POSITION_FILE_NAME = "globaloverlay_positions";
 
-    private View.OnTouchListener mOnTouchListener;
-    private View.OnClickListener mOnClickListener;
-    private View.OnLongClickListener mOnLongClickListener;
-    private OnRemoveOverlayListener mOnRemoveOverlayListener;
-    private WindowManager.LayoutParams mOverlayLayoutParams;
+    private final OverlayEngine mEngine;
 
     public GlobalOverlay(Context context) {
-        this(context, newRemoveView(context));
+        this(context, null, false);
     }
 
     public GlobalOverlay(Context context, View removeView) {
-        mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
-        mContext = context;
-        mRemoveView = removeView;
-        setupRemoveView(mRemoveView);
+        this(context, removeView, false);
+    }
+
+    /** @param context the context to create and attach views with
+     * @param removeView the view that overlays are dragged onto to remove them, or null for the default one
+     * @param isRemoveViewLazy true to only create and attach the remove view once the user starts
+     *                         dragging an overlay, and to detach it again when it hasn't been
+     *                         needed for a while. This makes adding the first overlay faster
+     *                         and saves a window while the overlays are just sitting there.
+     */
+    public GlobalOverlay(Context context, View removeView, boolean isRemoveViewLazy) {
+        this(context, removeView, isRemoveViewLazy, false);
+    }
+
+    /** @param context the context to create and attach views with
+     * @param removeView the view that overlays are dragged onto to remove them, or null for the default one
+     * @param isRemoveViewLazy see {@link #GlobalOverlay(Context, View, boolean)}
+     * @param isRemoveViewCreatedInBackground true to inflate the default remove view on a
+     *                                        background thread, so that it doesn't block the
+     *                                        caller. It's attached as soon as it's ready. Has no
+     *                                        effect when a remove view is given.
+     */
+    public GlobalOverlay(Context context, View removeView, boolean isRemoveViewLazy, boolean isRemoveViewCreatedInBackground) {
+        this(context, removeView, isRemoveViewLazy, isRemoveViewCreatedInBackground, null);
+    }
+
+    /** @param windowSink where to send the window manager calls, or null for the real window
+     *                   manager. Tests use this to record the calls. */
+    GlobalOverlay(final Context context, final View removeView, boolean isRemoveViewLazy,
+            final boolean isRemoveViewCreatedInBackground, WindowSink windowSink) {
+        this(context, windowSink, isRemoveViewLazy, new OverlayEngine.Host() {
+            @Override
+            public View onCreateRemoveView() {
+                return removeView != null ? removeView : newRemoveView(context);
+            }
+
+            @Override
+            public boolean canCreateRemoveViewInBackground() {
+                // Only the default one needs creating, and inflating it is safe off the main thread.
+                return isRemoveViewCreatedInBackground && removeView == null;
+            }
+
+            @Override
+            public void onLastOverlayRemovedByUser() {}
+
+            @Override
+            public String getPositionFileName() {
+                return POSITION_FILE_NAME;
+            }
+        });
+    }
+
+    /** For {@link GlobalOverlayService}, which handles the remove view and the last removed
+     * overlay itself. */
+    GlobalOverlay(Context context, WindowSink windowSink, boolean isRemoveViewLazy, OverlayEngine.Host host) {
+        mEngine = new OverlayEngine(context, windowSink, isRemoveViewLazy, host);
     }
 
     /** Return the view to use for the "remove view" that appears at the bottom of the screen.
@@ -51,161 +122,343 @@ public class GlobalOverlay {
         return LayoutInflater.from(context).inflate(R.layout.overlay_remove_view, null);
     }
 
-    /** Sets this view to the bottom of the screen and only visible when user is dragging an
-     * overlay view. This modifies the instance passed in. */
-    private void setupRemoveView(View removeView) {
-        removeView.setVisibility(View.GONE);
-        mWindowManager.addView(removeView, newWindowManagerLayoutParamsForRemoveView());
-    }
-
     /** Add a global floating view.
      *
      * @param view the view to overlay across all apps and activities
      * @param onClickListener get notified of a click, set null to ignore
      */
     public final void addOverlayView(View view, View.OnClickListener onClickListener) {
-        addOverlayView(view, onClickListener, null, null);
+        mEngine.addOverlayView(view, onClickListener, null, null);
     }
 
-    /** Add a global floating view.
+    /** Add a global floating view. Any number of overlays can be added, each one is tracked
+     * separately and identified by its view.
      *
      * @param view the view to overlay across all apps and activities
      * @param onClickListener get notified of a click, set null to ignore
-     * @param onLongClickListener not implemented yet, just set as null
-     * @param onRemoveOverlayListener get notified when overlay is removed (not from a destroyed service though)
+     * @param onLongClickListener get notified of a long press, set null to ignore
+     * @param onRemoveOverlayListener get notified when overlay is removed
      */
     public final void addOverlayView(View view, View.OnClickListener onClickListener,
                                      View.OnLongClickListener onLongClickListener, OnRemoveOverlayListener onRemoveOverlayListener) {
-        mOverlayView = view;
-        mOnClickListener = onClickListener;
-        mOnLongClickListener = onLongClickListener;
-        mOnRemoveOverlayListener = onRemoveOverlayListener;
-        mOverlayLayoutParams = newWindowManagerLayoutParams();
+        mEngine.addOverlayView(view, onClickListener, onLongClickListener, onRemoveOverlayListener);
+    }
 
-        mOnTouchListener = newSimpleOnTouchListener();
-        mOverlayView.setOnTouchListener(mOnTouchListener);
+    /** Add a global floating view, inflating its layout on a background thread. Use this to
+     * keep the main thread free while adding rich overlays, e.g. several at startup. The view is
+     * measured in the background too, and attached on the next frame after it's ready.
+     *
+     * @param layoutResId the layout of the view to overlay across all apps and activities
+     * @param onClickListener get notified of a click, set null to ignore
+     * @param onLongClickListener get notified of a long press, set null to ignore
+     * @param onRemoveOverlayListener get notified when overlay is removed
+     * @param onOverlayAddedListener get notified with the view once the overlay is shown, set null to ignore
+     */
+    public final void addOverlayViewAsync(int layoutResId, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, OnRemoveOverlayListener onRemoveOverlayListener,
+            OnOverlayAddedListener onOverlayAddedListener) {
+        mEngine.addOverlayViewAsync(layoutResId, null, onClickListener, onLongClickListener,
+                onRemoveOverlayListener, onOverlayAddedListener);
+    }
 
-        mWindowManager.addView(mOverlayView, newWindowManagerLayoutParams());
+    /** Add a global floating view, creating it with the factory on a background thread. The
+     * factory must only build the view there, not touch views that are already shown.
+     *
+     * @param factory creates the view to overlay across all apps and activities
+     * @param onClickListener get notified of a click, set null to ignore
+     * @param onLongClickListener get notified of a long press, set null to ignore
+     * @param onRemoveOverlayListener get notified when overlay is removed
+     * @param onOverlayAddedListener get notified with the view once the overlay is shown, set null to ignore
+     */
+    public final void addOverlayViewAsync(ViewFactory factory, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, OnRemoveOverlayListener onRemoveOverlayListener,
+            OnOverlayAddedListener onOverlayAddedListener) {
+        mEngine.addOverlayViewAsync(0, factory, onClickListener, onLongClickListener,
+                onRemoveOverlayListener, onOverlayAddedListener);
+    }
+
+    /** Add several global floating views at once, sharing the same listeners. The listeners are
+     * told which view they are called for.
+     *
+     * @param views the views to overlay across all apps and activities
+     * @param onClickListener get notified of a click, set null to ignore
+     * @param onLongClickListener get notified of a long press, set null to ignore
+     * @param onRemoveOverlayListener get notified when each overlay is removed
+     */
+    public final void addOverlayViews(Collection<View> views, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, OnRemoveOverlayListener onRemoveOverlayListener) {
+        mEngine.addOverlayViews(views, onClickListener, onLongClickListener, onRemoveOverlayListener);
     }
 
     /** Manually remove an overlay without destroying the service. */
     public final void removeOverlayView(View view) {
-        removeOverlayView(view, false);
+        mEngine.removeOverlayView(view, false);
     }
 
     /** Remove a overlay without destroying the service. */
     public final void removeOverlayView(View view, boolean isRemovedByUser) {
-        if (view != null) {
-            if (mOnRemoveOverlayListener != null) {
-                mOnRemoveOverlayListener.onRemoveOverlay(view, isRemovedByUser);
-            }
-            mWindowManager.removeView(view);
-        }
+        mEngine.removeOverlayView(view, isRemovedByUser);
     }
 
-    /** Remove all views. This instance becomes unusable after calling this. */
-//    public void destroy() {
-//        // TODO: Remove all views, when it's possible to have multiple overlays.
-//    }
-
-    /** Provides the drag ability for the overlay view. This touch listener
-     * allows user to drag the view anywhere on screen. */
-    private View.OnTouchListener newSimpleOnTouchListener() {
-        return new View.OnTouchListener() {
-            //            private long timeStart; // Maybe use in the future, with ViewConfiguration's getLongClickTime or whatever it is called.
-            private int initialX;
-            private int initialY;
-            private float initialTouchX;
-            private float initialTouchY;
-            private int[] overlayViewLocation = {0,0};
-
-            private boolean isOverRemoveView;
-            private int[] removeViewLocation = {0,0};
-
-            private final int touchSlop = ViewConfiguration.get(mContext).getScaledTouchSlop();
+    /** Remove several overlays at once. They all disappear in the same frame, and their remove
+     * listeners are called once all of them are gone. */
+    public final void removeOverlayViews(Collection<View> views) {
+        mEngine.removeOverlayViews(views, false);
+    }
 
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-//                        timeStart = System.currentTimeMillis();
-                        initialX = mOverlayLayoutParams.x;
-                        initialY = mOverlayLayoutParams.y;
-                        initialTouchX = event.getRawX();
-                        initialTouchY = event.getRawY();
-
-                        mRemoveView.setVisibility(View.VISIBLE);
-                        return true;
-                    case MotionEvent.ACTION_MOVE:
-                        mOverlayLayoutParams.x = initialX + (int) (event.getRawX() - initialTouchX);
-                        mOverlayLayoutParams.y = initialY + (int) (event.getRawY() - initialTouchY);
-                        mWindowManager.updateViewLayout(mOverlayView, mOverlayLayoutParams);
-
-                        mOverlayView.getLocationOnScreen(overlayViewLocation);
-                        mRemoveView.getLocationOnScreen(removeViewLocation);
-                        isOverRemoveView = isPointInArea(overlayViewLocation[0], overlayViewLocation[1],
-                                removeViewLocation[0], removeViewLocation[1], mRemoveView.getWidth());
-                        if (isOverRemoveView) {
-                            // TODO: Maybe, make it look like the overlay view is perfectly on the remove view.
-                        }
-
-                        return true;
-                    case MotionEvent.ACTION_UP:
-                        if (isOverRemoveView) {
-                            removeOverlayView(v, true);
-                            // Not sure if setting to null is the best way to handle this. Though,
-                            // currently it's needed to prevent a `IllegalArgumentException ... not attached to window manager`
-//                            v = null;
-//                            destroy();
-                        } else {
-                            if (mOnClickListener != null && Math.abs(initialTouchY - event.getRawY()) <= touchSlop) {
-                                mOnClickListener.onClick(v);
-                            }
-                        }
-
-                        mRemoveView.setVisibility(View.GONE);
-                        return true;
-                    case MotionEvent.ACTION_CANCEL:
-                        mRemoveView.setVisibility(View.GONE);
-                        return true;
-                }
-                return false;
-            }
-        };
-    }
-
-    /** Return true if point (x1,y1) is in the square defined by (x2,y2) with radius, otherwise false.  */
-    private boolean isPointInArea(int x1, int y1, int x2, int y2, int radius) {
-//        log("isPointInArea(). x1=" + x1 + ",y1=" + y1);
-//        log("isPointInArea(). x2=" + x2 + ",y2=" + y2 + ",radius=" + radius);
-        return x1 >= x2 - radius && x1 <= x2 + radius && y1 >= y2 - radius && y1 <=  y2 + radius;
-    }
-
-    /** Returns the default layout params for the overlay views. */
-    private static WindowManager.LayoutParams newWindowManagerLayoutParams() {
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.TYPE_PHONE,
-//                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL,
-                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
-                PixelFormat.TRANSLUCENT);
-        params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.START;
-        return params;
-    }
-
-    private static WindowManager.LayoutParams newWindowManagerLayoutParamsForRemoveView() {
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.TYPE_PHONE,
-                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
-                        WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH |
-                        WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
-                PixelFormat.TRANSLUCENT);
-        params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.BOTTOM;
-        params.y = 56;
-        return params;
+    /** Keep a removed overlay view for reuse, e.g. from `OnRemoveOverlayListener`. Apps that add
+     * and remove similar overlays all the time can take it back with
+     * {@link #getRecycledOverlayView(int)} instead of inflating a new one. The library reuses its
+     * own per overlay objects, like the layout params and touch handlers, either way.
+     *
+     * @param view an overlay view that has been removed
+     * @param viewType any number the app uses to tell different kinds of overlay views apart
+     */
+    public final void recycleOverlayView(View view, int viewType) {
+        mEngine.recycleOverlayView(view, viewType);
+    }
+
+    /** Return the most recently recycled overlay view of this type, or null if there is none. */
+    public final View getRecycledOverlayView(int viewType) {
+        return mEngine.getRecycledOverlayView(viewType);
+    }
+
+    /** Set how many recycled overlay views of this type are kept, 5 by default. When more are
+     * recycled, the oldest ones are dropped. */
+    public final void setMaxRecycledOverlayViews(int viewType, int maxCount) {
+        mEngine.setMaxRecycledOverlayViews(viewType, maxCount);
+    }
+
+    /** Move an overlay, stopping any snap-to-edge animation of it.
+     *
+     * @param view an overlay view that was added with `addOverlayView()`
+     * @param x pixels from the left edge of the screen
+     * @param y pixels from the vertical center of the screen
+     */
+    public final void moveOverlayView(View view, int x, int y) {
+        mEngine.moveOverlayView(view, x, y);
+    }
+
+    /** Like {@link #addOverlayView(View, View.OnClickListener, View.OnLongClickListener, OnRemoveOverlayListener)},
+     * but can be called on any thread. The overlay is added on the next frame. All the `post`
+     * methods go through one queue, which is applied once per frame, after merging what cancels
+     * out: an add followed by a remove of the same view in the same frame does nothing. */
+    public final void postAddOverlayView(View view, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, OnRemoveOverlayListener onRemoveOverlayListener) {
+        mEngine.postAddOverlayView(view, onClickListener, onLongClickListener, onRemoveOverlayListener);
+    }
+
+    /** Like {@link #moveOverlayView(View, int, int)}, but can be called on any thread. Only the
+     * last move of an overlay in each frame is applied. */
+    public final void postMoveOverlayView(View view, int x, int y) {
+        mEngine.postMoveOverlayView(view, x, y);
+    }
+
+    /** Like {@link #removeOverlayView(View)}, but can be called on any thread. The overlay is
+     * removed on the next frame. */
+    public final void postRemoveOverlayView(View view) {
+        mEngine.postRemoveOverlayView(view);
+    }
+
+    /** Set whether overlays added after this call share a single window. Each overlay normally
+     * gets its own window, so adding, moving and removing it costs a window manager IPC and
+     * it has its own surface. In compositor mode, overlays are children of one full screen host
+     * window and are moved with view translation instead. The host window only takes touches
+     * on top of its overlays, so apps underneath keep working. This is worth it when showing
+     * many overlays at once.
+     *
+     * This has to be set before any overlay is added.
+     *
+     * @return false if compositor mode isn't supported on this device, overlays then keep
+     * getting their own windows */
+    public final boolean setCompositorModeEnabled(boolean isEnabled) {
+        return mEngine.setCompositorModeEnabled(isEnabled);
+    }
+
+    /** Set whether drags should send at most one layout update per display frame. When enabled,
+     * only the latest position of each frame is applied, and the merged moves are counted in
+     * {@link #getCoalescedMoveCount()}. This saves a window manager IPC for every extra move
+     * event on high-rate touch screens. Disabled by default. */
+    public final void setDragCoalescingEnabled(boolean isEnabled) {
+        mEngine.setDragCoalescingEnabled(isEnabled);
+    }
+
+    /** Return the total number of drag moves that were merged into a later layout update. */
+    public final long getCoalescedMoveCount() {
+        return mEngine.getCoalescedMoveCount();
+    }
+
+    /** Get notified of double taps and flings on this overlay, in addition to the click and
+     * long click listeners given to `addOverlayView()`. Setting a listener delays single clicks
+     * by the double tap timeout, to tell them apart from double taps.
+     *
+     * @param view an overlay view that was added with `addOverlayView()`
+     * @param onOverlayGestureListener the listener, set null to ignore double taps and flings
+     */
+    public final void setOnOverlayGestureListener(View view, OnOverlayGestureListener onOverlayGestureListener) {
+        mEngine.setOnOverlayGestureListener(view, onOverlayGestureListener);
+    }
+
+    /** Set a listener for the metrics of every touch gesture on the overlays: touch to layout
+     * update latencies, layout updates sent, coalesced moves and time spent handling touches.
+     * While set, the touch handling and layout updates also show up as `android.os.Trace`
+     * sections in systrace on API 18+. Metrics cost nothing while no listener is set.
+     *
+     * @param onGestureMetricsListener the listener, set null to stop collecting metrics
+     */
+    public final void setOnGestureMetricsListener(OnGestureMetricsListener onGestureMetricsListener) {
+        mEngine.setOnGestureMetricsListener(onGestureMetricsListener);
+    }
+
+    /** Give an overlay a fixed size, for overlays whose content changes often, like counters,
+     * timers or small graphs. The window then keeps its size whatever the content does, so
+     * content changes never cost a window relayout through the window manager.
+     *
+     * @param view an overlay view that was added with `addOverlayView()`
+     * @param width in pixels
+     * @param height in pixels
+     */
+    public final void setOverlayContentSize(View view, int width, int height) {
+        mEngine.setOverlayContentSize(view, width, height);
+    }
+
+    /** Set the listener that updates the content of this overlay, called on the frame after
+     * {@link #invalidateOverlayContent(View)}.
+     *
+     * @param view an overlay view that was added with `addOverlayView()`
+     * @param onUpdateOverlayContentListener the listener, set null to only redraw on invalidation
+     */
+    public final void setOnUpdateOverlayContentListener(View view,
+            OnUpdateOverlayContentListener onUpdateOverlayContentListener) {
+        mEngine.setOnUpdateOverlayContentListener(view, onUpdateOverlayContentListener);
+    }
+
+    /** Let the content of this overlay update and redraw on the next frame. Call this as often as
+     * the data changes, all calls before the next frame are merged into a single update and
+     * `invalidate()`, so the overlay redraws at most at the display refresh rate. Must be called
+     * on the main thread. */
+    public final void invalidateOverlayContent(View view) {
+        mEngine.invalidateOverlayContent(view);
+    }
+
+    /** Remember the position and size of this overlay across restarts, e.g. when the system kills
+     * and restarts the service. If they were saved under this id before, the overlay is moved
+     * back there. They are saved whenever the overlay settles after a drag or move, in a small
+     * file written in the background.
+     *
+     * Call this before `addOverlayView()` to add the overlay at its saved position right away.
+     * All instances of this class in the app save to the same place, so they need different ids
+     * for different overlays. Each {@link GlobalOverlayService} saves to a place of its own.
+     *
+     * @param view an overlay view, added or about to be added
+     * @param persistentId an id for this overlay that stays the same across restarts
+     */
+    public final void setOverlayPersistentId(View view, String persistentId) {
+        mEngine.setOverlayPersistentId(view, persistentId);
+    }
+
+    /** Set how overlays are drawn while they are dragged. Overlays with heavy content, like web
+     * views, video or deep hierarchies, can redraw on every frame of a drag. A hardware layer
+     * keeps the rendered view while it's moved, a snapshot also freezes content that would
+     * change. Applies to drags that start after this call.
+     *
+     * @param dragMode one of {@link #DRAG_MODE_LIVE} (the default),
+     *                 {@link #DRAG_MODE_HARDWARE_LAYER} or {@link #DRAG_MODE_SNAPSHOT}
+     */
+    public final void setDragMode(int dragMode) {
+        mEngine.setDragMode(dragMode);
+    }
+
+    /** Set whether dragged overlays should be placed where the finger is predicted to be at the
+     * next display frame, rather than where it was at the last touch event, so they trail less
+     * behind the finger. The prediction uses all touch samples of a move, never runs ahead of a
+     * finger that is slowing down, and the overlay lands exactly under the finger when it's
+     * released. Applies to drags that start after this call. Disabled by default. */
+    public final void setTouchPredictionEnabled(boolean isEnabled) {
+        mEngine.setTouchPredictionEnabled(isEnabled);
+    }
+
+    /** Make this overlay cheaper to keep on screen after a while without being touched, e.g. for
+     * a bubble that's mostly left alone. It's restored as soon as it's touched or moved. The idle
+     * timers of all overlays share one timer on the main thread, which is only running while an
+     * overlay is waiting to go idle.
+     *
+     * @param view an overlay view that has been added
+     * @param idleFlags any combination of {@link #IDLE_FLAG_SHRINK}, {@link #IDLE_FLAG_DIM},
+     *                  {@link #IDLE_FLAG_TUCK} and {@link #IDLE_FLAG_SNAPSHOT}, or 0 to keep
+     *                  the overlay as it is
+     * @param idleTimeoutMillis how long after the last touch the overlay goes idle
+     */
+    public final void setOverlayIdlePolicy(View view, int idleFlags, long idleTimeoutMillis) {
+        mEngine.setOverlayIdlePolicy(view, idleFlags, idleTimeoutMillis);
+    }
+
+    /** Set how often this overlay is moved while it's dragged. By default it follows every move
+     * event. With {@link #MOVE_RATE_ADAPTIVE}, the time between display frames is measured
+     * during the drag, and while the main thread is too busy to keep up, the overlay is moved
+     * about every other frame, straight to the newest position, instead of falling behind and
+     * then jumping. It goes back to every move once frames are on time again. How many moves were
+     * skipped shows up in {@link GestureMetrics#getThrottledMoveCount()}.
+     *
+     * @param view an overlay view that has been added
+     * @param moveRatePolicy {@link #MOVE_RATE_FULL} or {@link #MOVE_RATE_ADAPTIVE}
+     */
+    public final void setOverlayMoveRatePolicy(View view, int moveRatePolicy) {
+        mEngine.setOverlayMoveRatePolicy(view, moveRatePolicy);
+    }
+
+    /** Return an estimate of the memory this overlay holds, in bytes, e.g. to decide which
+     * overlays to remove when memory runs low. It counts the buffers of its window surface, its
+     * hardware layer and any snapshot bitmap standing in for it, not the view hierarchy itself.
+     * Returns 0 if the view isn't an overlay.
+     *
+     * Overlays release what they can rebuild later by themselves when the system asks to trim
+     * memory. When memory is low, overlays with an idle policy go idle right away. */
+    public final long getOverlayMemoryEstimate(View view) {
+        return mEngine.getOverlayMemoryEstimate(view);
+    }
+
+    /** Set whether overlays should be flung with the velocity of the gesture when a drag ends,
+     * and then settle against the nearest left or right edge of the screen with a spring.
+     * Disabled by default. */
+    public final void setSnapToEdgeEnabled(boolean isEnabled) {
+        mEngine.setSnapToEdgeEnabled(isEnabled);
+    }
+
+    /** Set whether overlays should keep from stacking on top of each other and on the area of the
+     * remove view. When enabled, an overlay released after a drag moves to the nearest free
+     * place docked along the left or right edge of the screen, or further inwards once the edges
+     * are full. This replaces {@link #setSnapToEdgeEnabled(boolean)} while enabled. Only the
+     * overlays near the released one are looked at, so this stays cheap with hundreds of
+     * overlays. Disabled by default. */
+    public final void setOverlapAvoidanceEnabled(boolean isEnabled) {
+        mEngine.setOverlapAvoidanceEnabled(isEnabled);
+    }
+
+    /** Return the number of overlays currently shown. */
+    public final int getOverlayCount() {
+        return mEngine.getOverlayCount();
+    }
+
+    /** Let overlays be dropped onto this view, for example another overlay acting as a folder.
+     * The target view must already be attached to a window. Dropping onto the remove view is
+     * always handled, there's no need to add it here.
+     *
+     * @param target the view that overlays can be dropped onto
+     * @param onDropOverlayListener get notified when an overlay is released over the target
+     */
+    public final void addDropZone(View target, OnDropOverlayListener onDropOverlayListener) {
+        mEngine.addDropZone(target, onDropOverlayListener);
+    }
+
+    /** Stop treating this view as a drop zone. */
+    public final void removeDropZone(View target) {
+        mEngine.removeDropZone(target);
+    }
+
+    /** Remove all views. This instance becomes unusable after calling this. */
+    public void destroy() {
+        mEngine.destroy();
     }
 
     /** Interface definition for when an overlay view has been removed. */
@@ -216,4 +469,55 @@ public class GlobalOverlay {
         public void onRemoveOverlay(View v, boolean isRemovedByUser);
     }
 
+    /** Interface definition for the gestures on an overlay view beyond clicks and long clicks. */
+    public static interface OnOverlayGestureListener {
+        /** This overlay has been tapped twice in quick succession.
+         * @param v the tapped view */
+        public void onDoubleTap(View v);
+
+        /** This overlay has been dragged and released while still moving quickly.
+         * @param v the flung view
+         * @param velocityX in pixels per second
+         * @param velocityY in pixels per second */
+        public void onFling(View v, float velocityX, float velocityY);
+    }
+
+    /** Interface definition for receiving the metrics of touch gestures on overlays. */
+    public static interface OnGestureMetricsListener {
+        /** A touch gesture on this overlay has finished and its last layout update was sent.
+         * @param v the touched view
+         * @param metrics the numbers of the gesture, only valid until this returns */
+        public void onGestureMetrics(View v, GestureMetrics metrics);
+    }
+
+    /** Interface definition for updating the content of an overlay once per frame. */
+    public static interface OnUpdateOverlayContentListener {
+        /** Bring the content of this overlay up to date, it's redrawn right after. Only change
+         * what is drawn here, like the state a custom view draws from, not what is laid out.
+         * @param v the invalidated view */
+        public void onUpdateOverlayContent(View v);
+    }
+
+    /** Interface definition for creating an overlay view on a background thread. */
+    public static interface ViewFactory {
+        /** Return a new view to overlay. Called on a background thread.
+         * @param context the context to create the view with */
+        public View onCreateView(Context context);
+    }
+
+    /** Interface definition for when an overlay view added asynchronously is shown. */
+    public static interface OnOverlayAddedListener {
+        /** This overlay has been attached and is shown now.
+         * @param v the added view */
+        public void onOverlayAdded(View v);
+    }
+
+    /** Interface definition for when an overlay view has been dropped onto a drop zone. */
+    public static interface OnDropOverlayListener {
+        /** This overlay has been released over the drop zone.
+         * @param overlay the dropped overlay view
+         * @param target the drop zone view it was released over */
+        public void onDropOverlay(View overlay, View target);
+    }
+
 }
@@ -26,54 +26,60 @@ package com.danialgoodwin.globaloverlay;
 import android.annotation.SuppressLint;
 import android.app.Service;
 import android.content.Intent;
-import android.graphics.PixelFormat;
 import android.os.IBinder;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.LayoutInflater;
-import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewConfiguration;
-import android.view.WindowManager;
 
 /** All the boilerplate for setting up a nice floating overlay that stays above all apps and
  * Activities. Overlays can be removed by the user dragging it down to the remove view at the
  * bottom, or by stopping the service.
  *
- * Currently, only supports one overlay view. And, when the user removes the view,
- * the service will be destroyed.
+ * Any number of overlay views can be added. When the user removes the last one, the service
+ * will be destroyed.
  *
- * Note: Currently, the `mOnLongClickListener` is not implemented. It might be in the future
- * though. Feel free to send a pull request. */
+ * The overlays are held by a {@link GlobalOverlay}, see {@link #getGlobalOverlay()}, which has
+ * all the other options, e.g. drag modes, drop zones and idle policies.
+ */
 public abstract class GlobalOverlayService extends Service {
     private static final String LOGCAT_TAG = "GlobalOverlayService";
+
     private static void log(String message) {
         Log.d(LOGCAT_TAG, message);
     }
 
-    private WindowManager mWindowManager;
-    private View mRemoveView;
-    private View mOverlayView;
-    @SuppressWarnings("FieldCanBeLocal")
-    private View.OnTouchListener mOnTouchListener;
-    private View.OnClickListener mOnClickListener;
-    private View.OnLongClickListener mOnLongClickListener;
-    private OnRemoveOverlayListener mOnRemoveOverlayListener;
-    private WindowManager.LayoutParams mOverlayLayoutParams;
+    private GlobalOverlay mGlobalOverlay;
 
     @Override
     public void onCreate() {
         super.onCreate();
-        mWindowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
-        mRemoveView = onGetRemoveView();
-        setupRemoveView(mRemoveView);
+        mGlobalOverlay = new GlobalOverlay(this, newWindowSink(), isRemoveViewLazy(), new OverlayEngine.Host() {
+            @Override
+            public View onCreateRemoveView() {
+                return onGetRemoveView();
+            }
+
+            @Override
+            public boolean canCreateRemoveViewInBackground() {
+                return isRemoveViewCreatedInBackground();
+            }
+
+            @Override
+            public void onLastOverlayRemovedByUser() {
+                stopSelf();
+            }
+
+            @Override
+            public String getPositionFileName() {
+                // One file per service, so services don't mix up their overlays.
+                return "globaloverlay_positions_" + getClass().getName();
+            }
+        });
     }
 
     @Override
     public void onDestroy() {
-        // Views are automatically removed once service is through.
-//        removeOverlayView(mOverlayView);
-//        if (mRemoveView != null) { mWindowManager.removeView(mRemoveView); }
+        mGlobalOverlay.destroy();
         super.onDestroy();
     }
 
@@ -91,164 +97,57 @@ public abstract class GlobalOverlayService extends Service {
         return LayoutInflater.from(this).inflate(R.layout.overlay_remove_view, null);
     }
 
-    /** Sets this view to the bottom of the screen and only visible when user is dragging an
-     * overlay view. This modifies the instance passed in. */
-    private void setupRemoveView(View removeView) {
-        removeView.setVisibility(View.GONE);
-        mWindowManager.addView(removeView, newWindowManagerLayoutParamsForRemoveView());
+    /** Return true to only create and attach the remove view once the user starts dragging an
+     * overlay, and to detach it again when it hasn't been needed for a while. This makes service
+     * startup faster and saves a window while the overlays are just sitting there. Override this
+     * to enable, the default is false. */
+    protected boolean isRemoveViewLazy() {
+        return false;
     }
 
-    /** Add a global floating view.
-     *
-     * @param view the view to overlay across all apps and activities
-     * @param onClickListener get notified of a click, set null to ignore
-     */
-    public final void addOverlayView(View view, View.OnClickListener onClickListener) {
-        addOverlayView(view, onClickListener, null, null);
+    /** Return true if {@link #onGetRemoveView()} can be called on a background thread, so that
+     * inflating the remove view doesn't block service startup. It's attached as soon as it's
+     * ready. The default implementation is safe to call there. Override this to enable, the
+     * default is false. */
+    protected boolean isRemoveViewCreatedInBackground() {
+        return false;
     }
 
-    /** Add a global floating view.
-     *
-     * @param view the view to overlay across all apps and activities
-     * @param onClickListener get notified of a click, set null to ignore
-     * @param onLongClickListener not implemented yet, just set as null
-     * @param onRemoveOverlayListener get notified when overlay is removed (not from a destroyed service though)
-     */
-    public final void addOverlayView(View view, View.OnClickListener onClickListener,
-            View.OnLongClickListener onLongClickListener, OnRemoveOverlayListener onRemoveOverlayListener) {
-        mOverlayView = view;
-        mOnClickListener = onClickListener;
-        mOnLongClickListener = onLongClickListener;
-        mOnRemoveOverlayListener = onRemoveOverlayListener;
-        mOverlayLayoutParams = newWindowManagerLayoutParams();
-
-        mOnTouchListener = newSimpleOnTouchListener();
-        mOverlayView.setOnTouchListener(mOnTouchListener);
-
-        mWindowManager.addView(mOverlayView, newWindowManagerLayoutParams());
+    /** Return where to send the window manager calls, or null for the real window manager. Tests
+     * override this to record the calls. */
+    WindowSink newWindowSink() {
+        return null;
     }
 
-    /** Manually remove an overlay without destroying the service. */
-    public final void removeOverlayView(View view) {
-        removeOverlayView(view, false);
+    /** Return the overlays of this service, for everything beyond adding and removing them.
+     * Created in {@link #onCreate()} and destroyed in {@link #onDestroy()}, don't call
+     * {@link GlobalOverlay#destroy()} on it. */
+    public final GlobalOverlay getGlobalOverlay() {
+        return mGlobalOverlay;
     }
 
-    /** Remove a overlay without destroying the service. */
-    public final void removeOverlayView(View view, boolean isRemovedByUser) {
-        if (view != null) {
-            if (mOnRemoveOverlayListener != null) {
-                mOnRemoveOverlayListener.onRemoveOverlay(view, isRemovedByUser);
-            }
-            mWindowManager.removeView(view);
-        }
-    }
-
-    /** Provides the drag ability for the overlay view. This touch listener
-     * allows user to drag the view anywhere on screen. */
-    private View.OnTouchListener newSimpleOnTouchListener() {
-        return new View.OnTouchListener() {
-//            private long timeStart; // Maybe use in the future, with ViewConfiguration's getLongClickTime or whatever it is called.
-            private int initialX;
-            private int initialY;
-            private float initialTouchX;
-            private float initialTouchY;
-            private int[] overlayViewLocation = {0,0};
-
-            private boolean isOverRemoveView;
-            private int[] removeViewLocation = {0,0};
-
-            private final int touchSlop = ViewConfiguration.get(getBaseContext()).getScaledTouchSlop();
-
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-//                        timeStart = System.currentTimeMillis();
-                        initialX = mOverlayLayoutParams.x;
-                        initialY = mOverlayLayoutParams.y;
-                        initialTouchX = event.getRawX();
-                        initialTouchY = event.getRawY();
-
-                        mRemoveView.setVisibility(View.VISIBLE);
-                        return true;
-                    case MotionEvent.ACTION_MOVE:
-                        mOverlayLayoutParams.x = initialX + (int) (event.getRawX() - initialTouchX);
-                        mOverlayLayoutParams.y = initialY + (int) (event.getRawY() - initialTouchY);
-                        mWindowManager.updateViewLayout(mOverlayView, mOverlayLayoutParams);
-
-                        mOverlayView.getLocationOnScreen(overlayViewLocation);
-                        mRemoveView.getLocationOnScreen(removeViewLocation);
-                        isOverRemoveView = isPointInArea(overlayViewLocation[0], overlayViewLocation[1],
-                                removeViewLocation[0], removeViewLocation[1], mRemoveView.getWidth());
-                        if (isOverRemoveView) {
-                            // TODO: Maybe, make it look like the overlay view is perfectly on the remove view.
-                        }
-
-                        return true;
-                    case MotionEvent.ACTION_UP:
-                        if (isOverRemoveView) {
-                            removeOverlayView(v, true);
-                            // Not sure if setting to null is the best way to handle this. Though,
-                            // currently it's needed to prevent a `IllegalArgumentException ... not attached to window manager`
-//                            v = null;
-                            stopSelf();
-                        } else {
-                            if (mOnClickListener != null && Math.abs(initialTouchY - event.getRawY()) <= touchSlop) {
-                                mOnClickListener.onClick(v);
-                            }
-                        }
-
-                        mRemoveView.setVisibility(View.GONE);
-                        return true;
-                    case MotionEvent.ACTION_CANCEL:
-                        mRemoveView.setVisibility(View.GONE);
-                        return true;
-                }
-                return false;
-            }
-        };
+    /** See {@link GlobalOverlay#addOverlayView(View, View.OnClickListener)}. */
+    public final void addOverlayView(View view, View.OnClickListener onClickListener) {
+        mGlobalOverlay.addOverlayView(view, onClickListener);
     }
 
-    /** Return true if point (x1,y1) is in the square defined by (x2,y2) with radius, otherwise false.  */
-    private boolean isPointInArea(int x1, int y1, int x2, int y2, int radius) {
-//        log("isPointInArea(). x1=" + x1 + ",y1=" + y1);
-//        log("isPointInArea(). x2=" + x2 + ",y2=" + y2 + ",radius=" + radius);
-        return x1 >= x2 - radius && x1 <= x2 + radius && y1 >= y2 - radius && y1 <=  y2 + radius;
+    /** See {@link GlobalOverlay#addOverlayView(View, View.OnClickListener, View.OnLongClickListener, GlobalOverlay.OnRemoveOverlayListener)}. */
+    public final void addOverlayView(View view, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, OnRemoveOverlayListener onRemoveOverlayListener) {
+        mGlobalOverlay.addOverlayView(view, onClickListener, onLongClickListener, onRemoveOverlayListener);
     }
 
-    /** Returns the default layout params for the overlay views. */
-    private static WindowManager.LayoutParams newWindowManagerLayoutParams() {
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.TYPE_PHONE,
-//                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL,
-                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
-                PixelFormat.TRANSLUCENT);
-        params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.START;
-        return params;
+    /** See {@link GlobalOverlay#removeOverlayView(View)}. */
+    public final void removeOverlayView(View view) {
+        mGlobalOverlay.removeOverlayView(view);
     }
 
-    private static WindowManager.LayoutParams newWindowManagerLayoutParamsForRemoveView() {
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.TYPE_PHONE,
-                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
-                        WindowManager.LayoutParams.FLAG_WATCH_OUTSIDE_TOUCH |
-                        WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
-                PixelFormat.TRANSLUCENT);
-        params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.BOTTOM;
-        params.y = 56;
-        return params;
+    /** See {@link GlobalOverlay#removeOverlayView(View, boolean)}. */
+    public final void removeOverlayView(View view, boolean isRemovedByUser) {
+        mGlobalOverlay.removeOverlayView(view, isRemovedByUser);
     }
 
-    /** Interface definition for when an overlay view has been removed. */
-    public static interface OnRemoveOverlayListener {
-        /** This overlay has been removed.
-         * @param v the removed view
-         * @param isRemovedByUser true if user manually removed view, false if removed another way */
-        public void onRemoveOverlay(View v, boolean isRemovedByUser);
-    }
+    /** Same as {@link GlobalOverlay.OnRemoveOverlayListener}, kept for services that already use it. */
+    public static interface OnRemoveOverlayListener extends GlobalOverlay.OnRemoveOverlayListener {}
 
 }
@@ -0,0 +1,69 @@
+package com.danialgoodwin.globaloverlay;
+
+/** Decides how often a dragged overlay may be moved, from how long the main thread takes per
+ * display frame. The time between frames is smoothed over the last few frames, and while it stays
+ * well above the display's frame interval, the main thread is too busy to keep up with an update
+ * per frame. Layout updates are then spread out to one every {@link #FRAMES_PER_UPDATE} of those
+ * slow frames, but never less than one per {@link #MAX_UPDATE_INTERVAL_MILLIS}. Once frames are
+ * close to the frame interval again, updates go back to the full rate.
+ *
+ * Entering and leaving the throttled state use different thresholds, so a frame time near one of
+ * them doesn't flip the rate every frame.
+ *
+ * All times are in nanoseconds. */
+final class MoveRateGovernor {
+
+    /** Weight of the newest frame in the smoothed frame time. */
+    private static final float SMOOTHING = 0.3f;
+    /** Throttle once frames take this many frame intervals on average. */
+    static final float THROTTLE_LOAD = 1.5f;
+    /** Go back to the full rate once frames take fewer frame intervals than this on average. */
+    static final float RECOVER_LOAD = 1.2f;
+    /** While throttled, one layout update is sent for this many frames. */
+    static final int FRAMES_PER_UPDATE = 2;
+    static final long MAX_UPDATE_INTERVAL_MILLIS = 100;
+
+    private static final long MAX_UPDATE_INTERVAL_NANOS = MAX_UPDATE_INTERVAL_MILLIS * 1000000;
+
+    private long mFrameIntervalNanos;
+    private long mLastFrameTimeNanos;
+    /** Smoothed time between frames, in frame intervals. */
+    private float mLoad;
+    private long mUpdateIntervalNanos;
+
+    /** Start measuring anew, at the full rate.
+     * @param frameIntervalNanos the frame interval of the display */
+    void reset(long frameIntervalNanos) {
+        mFrameIntervalNanos = frameIntervalNanos;
+        mLastFrameTimeNanos = 0;
+        mLoad = 1;
+        mUpdateIntervalNanos = 0;
+    }
+
+    /** Take the start time of a frame into account. Must be called for every frame while
+     * measuring, a missed frame counts as load. */
+    void onFrame(long frameTimeNanos) {
+        if (mLastFrameTimeNanos != 0 && mFrameIntervalNanos > 0) {
+            float frames = (float) (frameTimeNanos - mLastFrameTimeNanos) / mFrameIntervalNanos;
+            mLoad += SMOOTHING * (frames - mLoad);
+            boolean isThrottled = mUpdateIntervalNanos > 0
+                    ? mLoad >= RECOVER_LOAD : mLoad >= THROTTLE_LOAD;
+            mUpdateIntervalNanos = isThrottled ? Math.min(MAX_UPDATE_INTERVAL_NANOS,
+                    (long) (mLoad * mFrameIntervalNanos * FRAMES_PER_UPDATE)) : 0;
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+    }
+
+    /** Return the minimum time between two layout updates of a dragged overlay, or 0 for an update
+     * on every move. */
+    long getUpdateIntervalNanos() {
+        return mUpdateIntervalNanos;
+    }
+
+    /** Return true if an overlay last updated at this frame time may be updated at this one. Half
+     * a frame interval of slack keeps frame time jitter from costing a whole frame. */
+    boolean isUpdateDue(long lastUpdateFrameTimeNanos, long frameTimeNanos) {
+        return frameTimeNanos - lastUpdateFrameTimeNanos >= mUpdateIntervalNanos - mFrameIntervalNanos / 2;
+    }
+
+}
@@ -0,0 +1,261 @@
+package com.danialgoodwin.globaloverlay;
+
+/** Finds places for overlays where they don't overlap each other or a reserved area, such as the
+ * remove view, docked along the left and right edges of the screen.
+ *
+ * Boxes are kept sorted by their left edge (sweep and prune on the x axis). Moving a box only
+ * swaps it past the boxes it overtook, which is usually none or one, and solving a box only looks
+ * at the boxes whose x range overlaps the column it's tried in, found with a binary search. So
+ * the cost depends on how many overlays share a column and how many columns are full, not on the
+ * total number of overlays.
+ *
+ * A box is first tried in the column at the nearest edge, at the height it was released at. If
+ * that is taken, it goes to the closest free height in that column, then to the column at the
+ * other edge, and then to columns further inwards, alternating between both sides.
+ *
+ * All coordinates are in screen pixels. Nothing allocates after the arrays have grown to fit. */
+final class OverlapSolver {
+
+    private int mBoundsWidth;
+    private int mBoundsHeight;
+
+    private boolean mHasReservedArea;
+    private int mReservedLeft;
+    private int mReservedTop;
+    private int mReservedRight;
+    private int mReservedBottom;
+
+    // Per box, indexed by box id. Ids of removed boxes are reused.
+    private int[] mLeft = new int[8];
+    private int[] mTop = new int[8];
+    private int[] mWidth = new int[8];
+    private int[] mHeight = new int[8];
+    /** Position of each box in {@link #mOrder}, or -1 for unused ids. */
+    private int[] mRank = new int[8];
+    private int mIdCount;
+    private int[] mFreeIds = new int[8];
+    private int mFreeIdCount;
+
+    /** Box ids sorted by their left edge. */
+    private int[] mOrder = new int[8];
+    private int mBoxCount;
+    /** At least the widest box, used to bound the sweep. Not lowered when boxes shrink. */
+    private int mMaxWidth;
+
+    /** Occupied vertical intervals of the column being searched, sorted by top. */
+    private int[] mIntervalTops = new int[16];
+    private int[] mIntervalBottoms = new int[16];
+    private int mIntervalCount;
+
+    private int mSolvedLeft;
+    private int mSolvedTop;
+    private int mFoundTop;
+
+    /** Set the area boxes have to stay in, usually the screen. */
+    void setBounds(int width, int height) {
+        mBoundsWidth = width;
+        mBoundsHeight = height;
+    }
+
+    /** Keep boxes out of this area, e.g. where the remove view shows up. */
+    void setReservedArea(int left, int top, int right, int bottom) {
+        mHasReservedArea = true;
+        mReservedLeft = left;
+        mReservedTop = top;
+        mReservedRight = right;
+        mReservedBottom = bottom;
+    }
+
+    void clearReservedArea() {
+        mHasReservedArea = false;
+    }
+
+    /** Add a box and return its id. */
+    int add(int left, int top, int width, int height) {
+        int id;
+        if (mFreeIdCount > 0) {
+            id = mFreeIds[--mFreeIdCount];
+        } else {
+            if (mIdCount == mLeft.length) {
+                int newLength = mIdCount * 2;
+                mLeft = copyOf(mLeft, newLength);
+                mTop = copyOf(mTop, newLength);
+                mWidth = copyOf(mWidth, newLength);
+                mHeight = copyOf(mHeight, newLength);
+                mRank = copyOf(mRank, newLength);
+                mOrder = copyOf(mOrder, newLength);
+                mFreeIds = copyOf(mFreeIds, newLength);
+            }
+            id = mIdCount++;
+        }
+        mOrder[mBoxCount] = id;
+        mRank[id] = mBoxCount;
+        mBoxCount++;
+        update(id, left, top, width, height);
+        return id;
+    }
+
+    /** Remove the box with this id. Its id may be returned by a later {@link #add(int, int, int, int)}. */
+    void remove(int id) {
+        for (int rank = mRank[id]; rank < mBoxCount - 1; rank++) {
+            mOrder[rank] = mOrder[rank + 1];
+            mRank[mOrder[rank]] = rank;
+        }
+        mBoxCount--;
+        mRank[id] = -1;
+        mFreeIds[mFreeIdCount++] = id;
+    }
+
+    /** Move and resize a box. */
+    void update(int id, int left, int top, int width, int height) {
+        mLeft[id] = left;
+        mTop[id] = top;
+        mWidth[id] = width;
+        mHeight[id] = height;
+        mMaxWidth = Math.max(mMaxWidth, width);
+
+        // Insertion sort of this one box, it's usually still in place or one step off.
+        int rank = mRank[id];
+        while (rank > 0 && mLeft[mOrder[rank - 1]] > left) {
+            mOrder[rank] = mOrder[rank - 1];
+            mRank[mOrder[rank]] = rank;
+            rank--;
+        }
+        while (rank < mBoxCount - 1 && mLeft[mOrder[rank + 1]] < left) {
+            mOrder[rank] = mOrder[rank + 1];
+            mRank[mOrder[rank]] = rank;
+            rank++;
+        }
+        mOrder[rank] = id;
+        mRank[id] = rank;
+    }
+
+    int getBoxCount() {
+        return mBoxCount;
+    }
+
+    /** Find the place for this box closest to where it was released, see the class comment. The
+     * box itself isn't moved, read the result with {@link #getSolvedLeft()} and
+     * {@link #getSolvedTop()}.
+     *
+     * @return false if there is no free place anywhere, in which case the result is the released
+     * position, docked to the nearest edge */
+    boolean solve(int id, int releasedLeft, int releasedTop) {
+        int width = mWidth[id];
+        int maxLeft = Math.max(0, mBoundsWidth - width);
+        int preferredTop = clamp(releasedTop, 0, Math.max(0, mBoundsHeight - mHeight[id]));
+        boolean isLeftPreferred = releasedLeft + width / 2 < mBoundsWidth / 2;
+        int columnWidth = Math.max(1, width);
+
+        for (int column = 0; column * columnWidth <= maxLeft / 2; column++) {
+            int nearLeft = isLeftPreferred ? column * columnWidth : maxLeft - column * columnWidth;
+            int farLeft = isLeftPreferred ? maxLeft - column * columnWidth : column * columnWidth;
+            if (findFreeTop(id, nearLeft, preferredTop)) {
+                mSolvedLeft = nearLeft;
+                mSolvedTop = mFoundTop;
+                return true;
+            }
+            if (farLeft != nearLeft && findFreeTop(id, farLeft, preferredTop)) {
+                mSolvedLeft = farLeft;
+                mSolvedTop = mFoundTop;
+                return true;
+            }
+        }
+        mSolvedLeft = isLeftPreferred ? 0 : maxLeft;
+        mSolvedTop = preferredTop;
+        return false;
+    }
+
+    int getSolvedLeft() {
+        return mSolvedLeft;
+    }
+
+    int getSolvedTop() {
+        return mSolvedTop;
+    }
+
+    /** Find the free top closest to the preferred one for this box in the column at this left
+     * edge, and store it in {@link #mFoundTop}. The boxes in the column are sorted by top, and the
+     * gaps between them that are tall enough are the free places. */
+    private boolean findFreeTop(int id, int left, int preferredTop) {
+        int right = left + mWidth[id];
+        int height = mHeight[id];
+        int maxTop = Math.max(0, mBoundsHeight - height);
+
+        // Only boxes starting in this range can overlap the column.
+        mIntervalCount = 0;
+        for (int rank = lowerBound(left - mMaxWidth), end = lowerBound(right); rank < end; rank++) {
+            int other = mOrder[rank];
+            if (other != id && mLeft[other] + mWidth[other] > left) {
+                addInterval(mTop[other], mTop[other] + mHeight[other]);
+            }
+        }
+        if (mHasReservedArea && mReservedLeft < right && mReservedRight > left) {
+            addInterval(mReservedTop, mReservedBottom);
+        }
+
+        int bestTop = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        int gapTop = 0;
+        for (int i = 0; i <= mIntervalCount; i++) {
+            int gapBottom = i < mIntervalCount ? mIntervalTops[i] : maxTop + height;
+            int lastTop = Math.min(gapBottom - height, maxTop);
+            if (lastTop >= gapTop) {
+                int candidate = clamp(preferredTop, gapTop, lastTop);
+                int distance = Math.abs(candidate - preferredTop);
+                if (distance < bestDistance) {
+                    bestTop = candidate;
+                    bestDistance = distance;
+                }
+            }
+            if (i < mIntervalCount) {
+                gapTop = Math.max(gapTop, mIntervalBottoms[i]);
+            }
+        }
+        mFoundTop = bestTop;
+        return bestTop >= 0;
+    }
+
+    /** Insert an occupied vertical interval, keeping them sorted by top. Columns hold few boxes,
+     * and they are mostly added in order already, so insertion sort is enough. */
+    private void addInterval(int top, int bottom) {
+        if (mIntervalCount == mIntervalTops.length) {
+            mIntervalTops = copyOf(mIntervalTops, mIntervalCount * 2);
+            mIntervalBottoms = copyOf(mIntervalBottoms, mIntervalCount * 2);
+        }
+        int i = mIntervalCount++;
+        while (i > 0 && mIntervalTops[i - 1] > top) {
+            mIntervalTops[i] = mIntervalTops[i - 1];
+            mIntervalBottoms[i] = mIntervalBottoms[i - 1];
+            i--;
+        }
+        mIntervalTops[i] = top;
+        mIntervalBottoms[i] = bottom;
+    }
+
+    /** Return the rank of the first box whose left edge is at least this. */
+    private int lowerBound(int left) {
+        int low = 0;
+        int high = mBoxCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mLeft[mOrder[middle]] < left) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int[] copyOf(int[] array, int newLength) {
+        int[] copy = new int[newLength];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Lets any thread add, move and remove overlays. Commands go into a lock-free queue and are
+ * applied on the main thread once per frame. Before anything reaches the window manager,
+ * redundant commands are merged per view: only the last move of a frame is applied, and an add
+ * followed by a remove cancels out.
+ *
+ * Commands for different views keep the order in which each view first showed up in the frame. */
+final class OverlayCommandQueue {
+
+    private static final int ADD = 1;
+    private static final int MOVE = 2;
+    private static final int REMOVE = 3;
+
+    private final OverlayEngine mEngine;
+    private final FrameScheduler mFrameScheduler;
+    private final ConcurrentLinkedQueue<Command> mQueue = new ConcurrentLinkedQueue<Command>();
+    private final AtomicBoolean mIsDrainScheduled = new AtomicBoolean();
+    private volatile boolean mIsQuit;
+    private final Runnable mScheduleDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFrameScheduler.postFrameCallback(mDrainFrameCallback);
+        }
+    };
+    private final FrameScheduler.Callback mDrainFrameCallback = new FrameScheduler.Callback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            drain();
+        }
+    };
+
+    // Only used on the main thread, while draining.
+    private final HashMap<View, MergedCommand> mMergedByView = new HashMap<View, MergedCommand>();
+    private final ArrayList<MergedCommand> mMerged = new ArrayList<MergedCommand>();
+    private final ArrayList<MergedCommand> mMergedPool = new ArrayList<MergedCommand>();
+
+    OverlayCommandQueue(OverlayEngine engine, FrameScheduler frameScheduler) {
+        mEngine = engine;
+        mFrameScheduler = frameScheduler;
+    }
+
+    /** Add this overlay on the next frame. Can be called on any thread. */
+    void postAdd(View view, View.OnClickListener onClickListener, View.OnLongClickListener onLongClickListener,
+            GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener) {
+        Command command = new Command(ADD, view);
+        command.onClickListener = onClickListener;
+        command.onLongClickListener = onLongClickListener;
+        command.onRemoveOverlayListener = onRemoveOverlayListener;
+        enqueue(command);
+    }
+
+    /** Move this overlay on the next frame. Can be called on any thread. */
+    void postMove(View view, int x, int y) {
+        Command command = new Command(MOVE, view);
+        command.x = x;
+        command.y = y;
+        enqueue(command);
+    }
+
+    /** Remove this overlay on the next frame. Can be called on any thread. */
+    void postRemove(View view) {
+        enqueue(new Command(REMOVE, view));
+    }
+
+    /** Drop all pending commands and ignore any posted later. Must be called on the main thread. */
+    void quit() {
+        mIsQuit = true;
+        mQueue.clear();
+        mFrameScheduler.getHandler().removeCallbacks(mScheduleDrainRunnable);
+        mFrameScheduler.removeFrameCallback(mDrainFrameCallback);
+    }
+
+    private void enqueue(Command command) {
+        if (mIsQuit) {
+            return;
+        }
+        mQueue.offer(command);
+        // Only the first command since the last drain needs to ask for a frame.
+        if (mIsDrainScheduled.compareAndSet(false, true)) {
+            mFrameScheduler.getHandler().post(mScheduleDrainRunnable);
+        }
+    }
+
+    private void drain() {
+        // Cleared before polling, so a command offered during the drain schedules another one
+        // rather than getting stuck. At worst that drain finds nothing.
+        mIsDrainScheduled.set(false);
+        Command command;
+        while ((command = mQueue.poll()) != null) {
+            merge(command);
+        }
+
+        for (int i = 0, size = mMerged.size(); i < size; i++) {
+            MergedCommand merged = mMerged.get(i);
+            if (merged.isRemoved) {
+                mEngine.removeOverlayView(merged.view, false);
+            }
+            if (merged.add != null) {
+                Command add = merged.add;
+                mEngine.addOverlayView(add.view, add.onClickListener, add.onLongClickListener, add.onRemoveOverlayListener);
+            }
+            if (merged.isMoved) {
+                mEngine.moveOverlayView(merged.view, merged.x, merged.y);
+            }
+            merged.clear();
+            mMergedPool.add(merged);
+        }
+        mMerged.clear();
+        mMergedByView.clear();
+    }
+
+    private void merge(Command command) {
+        MergedCommand merged = mMergedByView.get(command.view);
+        if (merged == null) {
+            int poolSize = mMergedPool.size();
+            merged = poolSize > 0 ? mMergedPool.remove(poolSize - 1) : new MergedCommand();
+            merged.view = command.view;
+            mMergedByView.put(command.view, merged);
+            mMerged.add(merged);
+        }
+
+        switch (command.type) {
+            case ADD:
+                merged.add = command;
+                merged.isMoved = false;
+                break;
+            case MOVE:
+                merged.isMoved = true;
+                merged.x = command.x;
+                merged.y = command.y;
+                break;
+            case REMOVE:
+                if (merged.add != null) {
+                    // Added in this frame, so it was never shown.
+                    merged.add = null;
+                } else {
+                    merged.isRemoved = true;
+                }
+                merged.isMoved = false;
+                break;
+        }
+    }
+
+    private static final class Command {
+        final int type;
+        final View view;
+        int x;
+        int y;
+        View.OnClickListener onClickListener;
+        View.OnLongClickListener onLongClickListener;
+        GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener;
+
+        Command(int type, View view) {
+            this.type = type;
+            this.view = view;
+        }
+    }
+
+    /** What's left to do for one view after merging its commands of a frame, applied in the order
+     * remove, add, move. */
+    private static final class MergedCommand {
+        View view;
+        boolean isRemoved;
+        Command add;
+        boolean isMoved;
+        int x;
+        int y;
+
+        void clear() {
+            view = null;
+            isRemoved = false;
+            add = null;
+            isMoved = false;
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.graphics.Region;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/** Hosts many overlays as children of a single full screen window, instead of one window each.
+ * Overlays are positioned with view translation, which is drawn by the host window and doesn't
+ * need a window manager IPC, and all of them share one surface.
+ *
+ * So that apps underneath still get touches, the host window reports a touchable region that
+ * only covers its children. There's no public API for that, so this uses the hidden
+ * `ViewTreeObserver.OnComputeInternalInsetsListener` through reflection, the same one the system
+ * uses for its own floating windows. If that isn't available on a device, {@link #attach()}
+ * returns false and overlays should get their own windows instead.
+ *
+ * The host window is laid out in screen coordinates, so its origin is the top left corner of the
+ * screen and the touchable region is in screen coordinates too. It asks for the insets of the
+ * status and navigation bars and pads itself by them, which leaves its children the same area
+ * that windows without `FLAG_LAYOUT_IN_SCREEN` are laid out in. So an overlay lands on the same
+ * screen position whether it's composited or has its own window. */
+final class OverlayCompositor {
+    private static final String LOGCAT_TAG = "OverlayCompositor";
+
+    private final WindowSink mWindowSink;
+    private final FrameLayout mHostView;
+    private boolean mIsAttached;
+
+    OverlayCompositor(Context context, WindowSink windowSink) {
+        mWindowSink = windowSink;
+        mHostView = new FrameLayout(context);
+        mHostView.setFitsSystemWindows(true);
+    }
+
+    /** Attach the host window, if it isn't already. Return false if the touchable region can't
+     * be controlled on this device, in which case nothing is attached. */
+    boolean attach() {
+        if (mIsAttached) {
+            return true;
+        }
+        if (!TouchableRegionReflection.addListener(mHostView.getViewTreeObserver(), this)) {
+            return false;
+        }
+        mWindowSink.addView(mHostView, newWindowManagerLayoutParamsForHostView());
+        mIsAttached = true;
+        return true;
+    }
+
+    /** Detach the host window and all overlays in it. */
+    void detach() {
+        if (mIsAttached) {
+            mIsAttached = false;
+            mHostView.removeAllViews();
+            mWindowSink.removeView(mHostView);
+        }
+    }
+
+    int getOverlayCount() {
+        return mHostView.getChildCount();
+    }
+
+    /** Return the view of the host window, whose children are the composited overlays. */
+    View getHostView() {
+        return mHostView;
+    }
+
+    /** Add the overlay as a child of the host window, at the position in its layout params. The
+     * child is placed like its own window would be, i.e. x from the left and y from the vertical
+     * center of the area inside the system bars, so the same layout params work in both modes. */
+    void addOverlay(OverlayRecord record) {
+        mHostView.addView(record.view, new FrameLayout.LayoutParams(
+                record.layoutParams.width,
+                record.layoutParams.height,
+                Gravity.LEFT | Gravity.CENTER_VERTICAL));
+        updateOverlay(record);
+    }
+
+    /** Move the overlay to the position in its layout params. */
+    void updateOverlay(OverlayRecord record) {
+        record.view.setTranslationX(record.layoutParams.x);
+        record.view.setTranslationY(record.layoutParams.y);
+        if (record.metrics != null) {
+            record.metrics.onLayoutUpdated(System.nanoTime());
+        }
+    }
+
+    /** Resize the overlay to the width and height in its layout params. Only the host window is
+     * laid out again, its size doesn't change. */
+    void updateOverlaySize(OverlayRecord record) {
+        ViewGroup.LayoutParams childParams = record.view.getLayoutParams();
+        childParams.width = record.layoutParams.width;
+        childParams.height = record.layoutParams.height;
+        record.view.setLayoutParams(childParams);
+    }
+
+    void removeOverlay(OverlayRecord record) {
+        mHostView.removeView(record.view);
+    }
+
+    /** Set the touchable region to the union of the visible overlays. Called by the host window
+     * whenever it computes its insets, which it does after children move. */
+    private void computeTouchableRegion(Region touchableRegion) {
+        touchableRegion.setEmpty();
+        for (int i = 0, count = mHostView.getChildCount(); i < count; i++) {
+            View child = mHostView.getChildAt(i);
+            if (child.getVisibility() != View.VISIBLE) {
+                continue;
+            }
+            int left = child.getLeft() + (int) child.getTranslationX();
+            int top = child.getTop() + (int) child.getTranslationY();
+            touchableRegion.op(left, top, left + child.getWidth(), top + child.getHeight(), Region.Op.UNION);
+        }
+    }
+
+    private static WindowManager.LayoutParams newWindowManagerLayoutParamsForHostView() {
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.TYPE_PHONE,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                        WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL |
+                        WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN |
+                        WindowManager.LayoutParams.FLAG_LAYOUT_INSET_DECOR,
+                PixelFormat.TRANSLUCENT);
+        params.gravity = Gravity.TOP | Gravity.START;
+        return params;
+    }
+
+    /** Access to the hidden touchable region API, looked up once. */
+    private static final class TouchableRegionReflection {
+        private static boolean sIsLookedUp;
+        private static Class<?> sListenerClass;
+        private static Method sAddListenerMethod;
+        private static Method sSetTouchableInsetsMethod;
+        private static Field sTouchableRegionField;
+        private static int sTouchableInsetsRegion;
+
+        private static boolean lookUp() {
+            if (sIsLookedUp) {
+                return sAddListenerMethod != null;
+            }
+            sIsLookedUp = true;
+            try {
+                sListenerClass = Class.forName("android.view.ViewTreeObserver$OnComputeInternalInsetsListener");
+                Class<?> infoClass = Class.forName("android.view.ViewTreeObserver$InternalInsetsInfo");
+                sSetTouchableInsetsMethod = infoClass.getMethod("setTouchableInsets", int.class);
+                sTouchableRegionField = infoClass.getField("touchableRegion");
+                sTouchableInsetsRegion = infoClass.getField("TOUCHABLE_INSETS_REGION").getInt(null);
+                sAddListenerMethod = ViewTreeObserver.class.getMethod("addOnComputeInternalInsetsListener", sListenerClass);
+                return true;
+            } catch (Exception e) {
+                Log.w(LOGCAT_TAG, "Touchable region isn't available, compositor mode can't be used.", e);
+                sAddListenerMethod = null;
+                return false;
+            }
+        }
+
+        static boolean addListener(ViewTreeObserver observer, final OverlayCompositor compositor) {
+            if (!lookUp()) {
+                return false;
+            }
+            Object listener = Proxy.newProxyInstance(sListenerClass.getClassLoader(),
+                    new Class<?>[] { sListenerClass }, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            String name = method.getName();
+                            if ("onComputeInternalInsets".equals(name)) {
+                                Object insetsInfo = args[0];
+                                sSetTouchableInsetsMethod.invoke(insetsInfo, sTouchableInsetsRegion);
+                                compositor.computeTouchableRegion((Region) sTouchableRegionField.get(insetsInfo));
+                                return null;
+                            } else if ("equals".equals(name)) {
+                                return proxy == args[0];
+                            } else if ("hashCode".equals(name)) {
+                                return System.identityHashCode(proxy);
+                            } else if ("toString".equals(name)) {
+                                return "OverlayCompositor$TouchableRegionListener";
+                            }
+                            return null;
+                        }
+                    });
+            try {
+                sAddListenerMethod.invoke(observer, listener);
+                return true;
+            } catch (Exception e) {
+                Log.w(LOGCAT_TAG, "Couldn't add touchable region listener.", e);
+                return false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.danialgoodwin.globaloverlay;
+
+import java.util.ArrayList;
+
+/** Redraws overlays whose content changed, at most once per display frame. Any number of
+ * invalidations of an overlay between two frames are merged into one call to its
+ * {@link GlobalOverlay.OnUpdateOverlayContentListener} followed by one `invalidate()`, which
+ * redraws the overlay without a layout pass or a window manager call. */
+final class OverlayContentUpdater implements FrameScheduler.Callback {
+
+    private final FrameScheduler mFrameScheduler;
+    private ArrayList<OverlayRecord> mPendingRecords = new ArrayList<OverlayRecord>();
+    private ArrayList<OverlayRecord> mRunningRecords = new ArrayList<OverlayRecord>();
+
+    OverlayContentUpdater(FrameScheduler frameScheduler) {
+        mFrameScheduler = frameScheduler;
+    }
+
+    /** Update and redraw the content of this overlay on the next frame. */
+    void invalidate(OverlayRecord record) {
+        if (record.isContentUpdatePending) {
+            return;
+        }
+        record.isContentUpdatePending = true;
+        mPendingRecords.add(record);
+        mFrameScheduler.postFrameCallback(this);
+    }
+
+    /** Forget a pending update of this overlay, e.g. because it's being removed. The record is
+     * taken out of the list, so a recycled record that is invalidated again before the frame is
+     * only in it once. */
+    void cancel(OverlayRecord record) {
+        if (!record.isContentUpdatePending) {
+            return;
+        }
+        record.isContentUpdatePending = false;
+        mPendingRecords.remove(record);
+        int index = mRunningRecords.indexOf(record);
+        if (index >= 0) {
+            // Only cleared, the running frame is still iterating over the list.
+            mRunningRecords.set(index, null);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // Swap the lists so that listeners can invalidate again for the following frame.
+        ArrayList<OverlayRecord> records = mPendingRecords;
+        mPendingRecords = mRunningRecords;
+        mRunningRecords = records;
+        for (int i = 0, size = records.size(); i < size; i++) {
+            OverlayRecord record = records.get(i);
+            if (record == null) {
+                continue;
+            }
+            record.isContentUpdatePending = false;
+            if (record.onUpdateOverlayContentListener != null) {
+                record.onUpdateOverlayContentListener.onUpdateOverlayContent(record.view);
+            }
+            record.view.invalidate();
+        }
+        records.clear();
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.ImageView;
+
+/** Keeps heavy overlay views from redrawing while they are dragged, see
+ * {@link GlobalOverlay#setDragMode(int)}.
+ *
+ * In hardware layer mode, the overlay view is rendered into a layer for the length of the drag,
+ * so moving it only composites the layer. In snapshot mode, the overlay is drawn into a pooled
+ * bitmap once, and a proxy window showing that bitmap is moved in its place. The live view stays
+ * where the drag started, transparent, and still receives the touches of the gesture. Only one
+ * overlay at a time can be dragged as a snapshot, others and composited overlays fall back to a
+ * hardware layer. The proxy window has its own layout params, which only take the position of the
+ * overlay's, so the two windows never share a mutable params object.
+ *
+ * The proxy window is added on the first snapshot drag and then stays attached, invisible and
+ * 0 by 0, between drags, so later drags only update its layout instead of adding and removing a
+ * window and its surface every time. It keeps the stacking order of its first drag. It doesn't
+ * take touches, which stay with the live view. */
+final class OverlayDragLayer {
+
+    private final Context mContext;
+    private final WindowSink mWindowSink;
+    private final SnapshotBitmapPool mBitmapPool;
+    private final Canvas mCanvas = new Canvas();
+    private int mDragMode = GlobalOverlay.DRAG_MODE_LIVE;
+
+    private ImageView mProxyView;
+    private WindowManager.LayoutParams mProxyLayoutParams;
+    private boolean mIsProxyAttached;
+    private OverlayRecord mSnapshotRecord;
+    private Bitmap mSnapshotBitmap;
+
+    OverlayDragLayer(Context context, WindowSink windowSink, SnapshotBitmapPool bitmapPool) {
+        mContext = context;
+        mWindowSink = windowSink;
+        mBitmapPool = bitmapPool;
+    }
+
+    /** Set the mode for drags that start after this call. */
+    void setDragMode(int dragMode) {
+        mDragMode = dragMode;
+    }
+
+    /** Switch this overlay to the drag mode, called once its drag has started. */
+    void begin(OverlayRecord record) {
+        View view = record.view;
+        int dragMode = mDragMode;
+        if (dragMode == GlobalOverlay.DRAG_MODE_SNAPSHOT && (record.isComposited || mSnapshotRecord != null
+                || view.getWidth() == 0 || view.getHeight() == 0)) {
+            dragMode = GlobalOverlay.DRAG_MODE_HARDWARE_LAYER;
+        }
+        record.activeDragMode = dragMode;
+
+        if (dragMode == GlobalOverlay.DRAG_MODE_HARDWARE_LAYER) {
+            record.layerTypeBeforeDrag = view.getLayerType();
+            if (record.layerTypeBeforeDrag != View.LAYER_TYPE_HARDWARE) {
+                view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+            }
+        } else if (dragMode == GlobalOverlay.DRAG_MODE_SNAPSHOT) {
+            mSnapshotBitmap = mBitmapPool.acquire(view.getWidth(), view.getHeight());
+            mCanvas.setBitmap(mSnapshotBitmap);
+            view.draw(mCanvas);
+            mCanvas.setBitmap(null);
+            if (mProxyView == null) {
+                mProxyView = new ImageView(mContext);
+            }
+            if (mProxyLayoutParams == null) {
+                mProxyLayoutParams = new WindowManager.LayoutParams();
+            }
+            mProxyView.setImageBitmap(mSnapshotBitmap);
+            mProxyLayoutParams.copyFrom(record.layoutParams);
+            mProxyLayoutParams.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+            if (mIsProxyAttached) {
+                mProxyView.setVisibility(View.VISIBLE);
+                mWindowSink.updateViewLayout(mProxyView, mProxyLayoutParams);
+            } else {
+                mWindowSink.addView(mProxyView, mProxyLayoutParams);
+                mIsProxyAttached = true;
+            }
+            record.alphaBeforeDrag = view.getAlpha();
+            view.setAlpha(0);
+            record.windowView = mProxyView;
+            record.windowLayoutParams = mProxyLayoutParams;
+            mSnapshotRecord = record;
+        }
+    }
+
+    /** Switch this overlay back to its live view, called when its drag ends or it's removed.
+     * @return true if a snapshot was moved instead of the overlay, so its window still needs
+     * the latest layout params */
+    boolean end(OverlayRecord record) {
+        int dragMode = record.activeDragMode;
+        record.activeDragMode = GlobalOverlay.DRAG_MODE_LIVE;
+        if (dragMode == GlobalOverlay.DRAG_MODE_HARDWARE_LAYER) {
+            if (record.layerTypeBeforeDrag != View.LAYER_TYPE_HARDWARE) {
+                record.view.setLayerType(record.layerTypeBeforeDrag, null);
+            }
+        } else if (dragMode == GlobalOverlay.DRAG_MODE_SNAPSHOT) {
+            record.windowView = record.view;
+            record.windowLayoutParams = record.layoutParams;
+            record.view.setAlpha(record.alphaBeforeDrag);
+            // Hidden until the next drag. Both changes go to the window server in one relayout.
+            mProxyView.setImageBitmap(null);
+            mProxyView.setVisibility(View.INVISIBLE);
+            mProxyLayoutParams.width = 0;
+            mProxyLayoutParams.height = 0;
+            mWindowSink.updateViewLayout(mProxyView, mProxyLayoutParams);
+            mBitmapPool.release(mSnapshotBitmap);
+            mSnapshotBitmap = null;
+            mSnapshotRecord = null;
+            return true;
+        }
+        return false;
+    }
+
+    /** Detach and drop the proxy window if no snapshot is being dragged. */
+    void trimMemory() {
+        if (mSnapshotRecord == null) {
+            detachProxy();
+            mProxyView = null;
+        }
+    }
+
+    /** End any snapshot drag, which gives its bitmap back to the pool, and detach the proxy
+     * window. */
+    void destroy() {
+        if (mSnapshotRecord != null) {
+            end(mSnapshotRecord);
+        }
+        detachProxy();
+    }
+
+    private void detachProxy() {
+        if (mIsProxyAttached) {
+            mWindowSink.removeView(mProxyView);
+            mIsProxyAttached = false;
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.view.View;
+
+import java.util.ArrayList;
+
+/** The views overlays can be dropped onto: the remove view, while it's attached, plus any added
+ * with {@link GlobalOverlay#addDropZone(View, GlobalOverlay.OnDropOverlayListener)}. Their
+ * on-screen bounds are kept in a {@link DropZoneIndex}, which is only rebuilt after one of them
+ * has been laid out again or moved, so a drag usually queries it without touching any views. */
+final class OverlayDropZones {
+
+    private final ArrayList<View> mTargets = new ArrayList<View>();
+    private final ArrayList<GlobalOverlay.OnDropOverlayListener> mListeners =
+            new ArrayList<GlobalOverlay.OnDropOverlayListener>();
+    private View mRemoveView;
+    private final DropZoneIndex mIndex = new DropZoneIndex();
+    private final ArrayList<View> mIndexedTargets = new ArrayList<View>();
+    private boolean mIsIndexValid;
+    private int mDraggedZone = DropZoneIndex.NO_ZONE;
+    private final View.OnLayoutChangeListener mLayoutChangeListener = new View.OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            mIsIndexValid = false;
+        }
+    };
+    private final int[] mTempLocation = {0,0};
+
+    /** Set the remove view once it's attached, or null once it's detached. */
+    void setRemoveView(View removeView) {
+        if (mRemoveView != null) {
+            mRemoveView.removeOnLayoutChangeListener(mLayoutChangeListener);
+        }
+        mRemoveView = removeView;
+        if (removeView != null) {
+            removeView.addOnLayoutChangeListener(mLayoutChangeListener);
+        }
+        mIsIndexValid = false;
+    }
+
+    /** Let overlays be dropped onto this view, replacing its listener if it's already a drop zone. */
+    void add(View target, GlobalOverlay.OnDropOverlayListener onDropOverlayListener) {
+        remove(target);
+        mTargets.add(target);
+        mListeners.add(onDropOverlayListener);
+        target.addOnLayoutChangeListener(mLayoutChangeListener);
+        mIsIndexValid = false;
+    }
+
+    void remove(View target) {
+        int index = mTargets.indexOf(target);
+        if (index >= 0) {
+            mTargets.remove(index);
+            mListeners.remove(index);
+            target.removeOnLayoutChangeListener(mLayoutChangeListener);
+            mIsIndexValid = false;
+        }
+    }
+
+    /** Rebuild the index before the next query, e.g. because the display changed size. */
+    void invalidate() {
+        mIsIndexValid = false;
+    }
+
+    /** This overlay has moved. If it's a drop zone itself, its bounds have changed. */
+    void onOverlayMoved(View view) {
+        if (mTargets.contains(view)) {
+            mIsIndexValid = false;
+        }
+    }
+
+    /** Makes sure the index is up to date for a drag of this view. The index is only rebuilt after
+     * a drop zone has been laid out again, so usually this costs nothing. Returns false if a drop
+     * zone hasn't been laid out yet, e.g. the remove view was just made visible, in which case try
+     * again on the next move. */
+    boolean prepare(View draggedView) {
+        if (!mIsIndexValid) {
+            mIsIndexValid = rebuildIndex();
+        }
+        int draggedZone = mIndexedTargets.indexOf(draggedView);
+        mDraggedZone = draggedZone >= 0 ? draggedZone : DropZoneIndex.NO_ZONE;
+        return mIsIndexValid;
+    }
+
+    /** Sets the drop zone the center of this dragged overlay is over in its record, and captures
+     * the overlay onto the middle of that zone, so it looks like it's perfectly on it. Leaves the
+     * record as it is while the index can't be prepared. */
+    void updateDropZone(OverlayRecord record) {
+        if (!mIsIndexValid && !prepare(record.view)) {
+            return;
+        }
+        record.dropZone = mIndex.query(record.getScreenCenterX(), record.getScreenCenterY(),
+                record.dropZone, mDraggedZone);
+        if (record.dropZone != DropZoneIndex.NO_ZONE) {
+            record.setScreenCenter(mIndex.getCenterX(record.dropZone), mIndex.getCenterY(record.dropZone));
+        }
+    }
+
+    /** Handles the overlay being released over a drop zone. Returns true if that's the remove
+     * view, which the caller handles, otherwise the zone's listener is told. */
+    boolean drop(OverlayRecord record, int dropZone) {
+        View target = mIndexedTargets.get(dropZone);
+        // The dropped overlay may be a drop zone itself, and has just moved.
+        onOverlayMoved(record.view);
+        if (target == mRemoveView) {
+            return true;
+        }
+        int index = mTargets.indexOf(target);
+        if (index >= 0 && mListeners.get(index) != null) {
+            mListeners.get(index).onDropOverlay(record.view, target);
+        }
+        return false;
+    }
+
+    void destroy() {
+        for (int i = mTargets.size() - 1; i >= 0; i--) {
+            remove(mTargets.get(i));
+        }
+        setRemoveView(null);
+    }
+
+    /** Collects the on-screen bounds of every drop zone into the index. Returns false if the
+     * remove view isn't attached or hasn't been laid out yet. */
+    private boolean rebuildIndex() {
+        mIndex.clear();
+        mIndexedTargets.clear();
+        if (mRemoveView == null || !addToIndex(mRemoveView)) {
+            return false;
+        }
+        for (int i = 0, size = mTargets.size(); i < size; i++) {
+            View target = mTargets.get(i);
+            if (target.isShown()) {
+                addToIndex(target);
+            }
+        }
+        mIndex.build();
+        return true;
+    }
+
+    private boolean addToIndex(View target) {
+        if (target.getWidth() == 0 || target.getHeight() == 0) {
+            return false;
+        }
+        target.getLocationOnScreen(mTempLocation);
+        mIndex.addZone(mTempLocation[0], mTempLocation[1],
+                mTempLocation[0] + target.getWidth(), mTempLocation[1] + target.getHeight());
+        mIndexedTargets.add(target);
+        return true;
+    }
+
+}
@@ -0,0 +1,1254 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.PixelFormat;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.WeakHashMap;
+
+/** Everything behind {@link GlobalOverlay}: the overlays, dragging, gestures, the remove view and
+ * all the modes. {@link GlobalOverlayService} holds a {@link GlobalOverlay} too, so both behave
+ * the same. Only the few things that differ between them go through {@link Host}.
+ *
+ * Where overlays are shown, drop zones, the adaptive move rate and idle overlays each have their
+ * own class: {@link OverlayWindows}, {@link OverlayDropZones}, {@link OverlayMoveThrottle} and
+ * {@link OverlayIdleDemoter}. This class ties them to the touch handling. */
+final class OverlayEngine {
+
+    /** Interface definition for what the entry point owning an engine provides. */
+    interface Host {
+        /** Return the view to use for the remove view. Called once, when it's first needed. */
+        View onCreateRemoveView();
+
+        /** Return true if {@link #onCreateRemoveView()} may be called on a background thread. */
+        boolean canCreateRemoveViewInBackground();
+
+        /** The user has removed the last overlay by dropping it onto the remove view. */
+        void onLastOverlayRemovedByUser();
+
+        /** Return the name of the file in the app's files directory to save overlay positions in. */
+        String getPositionFileName();
+    }
+
+    /** How long a lazily attached remove view stays attached after the last drag. */
+    private static final long REMOVE_VIEW_IDLE_TIMEOUT_MILLIS = 10000;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** Overlay windows are translucent, so their surfaces use 32 bit pixels. */
+    private static final int BYTES_PER_PIXEL = 4;
+    /** Buffers in a window surface, for triple buffering. */
+    private static final int SURFACE_BUFFER_COUNT = 3;
+
+    /** How far ahead of the finger a predicted drag may place an overlay. */
+    private static final float MAX_TOUCH_PREDICTION_DIP = 48;
+
+    /** Tells the remove view apart from overlays when it was created in the background. */
+    private static final Object REMOVE_VIEW_TAG = new Object();
+
+    private final Context mContext;
+    private final Host mHost;
+    private final WindowManager mWindowManager;
+    private final WindowSink mWindowSink;
+    private View mRemoveView;
+    private RemoveViewAnimator mRemoveViewAnimator;
+    private boolean mIsRemoveViewAttached;
+    private boolean mIsRemoveViewLazy;
+    private final Runnable mDetachRemoveViewRunnable = new Runnable() {
+        @Override
+        public void run() {
+            detachRemoveView();
+        }
+    };
+
+    private final OverlayRegistry mOverlays = new OverlayRegistry();
+    private final ArrayList<OverlayRecord> mRemovedRecords = new ArrayList<OverlayRecord>();
+    private final OverlayRecyclePool mRecyclePool = new OverlayRecyclePool();
+    private final ArrayList<OverlayRecord> mRecordsToRecycle = new ArrayList<OverlayRecord>();
+    private final Runnable mRecycleRecordsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            for (int i = 0, size = mRecordsToRecycle.size(); i < size; i++) {
+                mRecyclePool.recycleRecord(mRecordsToRecycle.get(i));
+            }
+            mRecordsToRecycle.clear();
+        }
+    };
+    private final FrameScheduler mFrameScheduler;
+    private final OverlayWindows mWindows;
+    private final OverlayMotionEngine mMotionEngine;
+    private boolean mIsSnapToEdgeEnabled;
+    private boolean mIsTouchPredictionEnabled;
+    /** Display frame interval, read when a predicted or adaptive rate drag or a motion starts. */
+    private long mFrameIntervalNanos;
+    private GlobalOverlay.OnGestureMetricsListener mGestureMetricsListener;
+    private final GestureMetricsRecorder.Reporter mGestureMetricsReporter = new GestureMetricsRecorder.Reporter() {
+        @Override
+        public void onGestureMetrics(GestureMetricsRecorder recorder, GestureMetrics metrics) {
+            if (mGestureMetricsListener != null) {
+                mGestureMetricsListener.onGestureMetrics(((OverlayRecord) recorder.tag).view, metrics);
+            }
+        }
+    };
+    private final DisplayMetrics mDisplayMetrics = new DisplayMetrics();
+    /** The display size overlay positions were last laid out for. */
+    private int mDisplayWidth;
+    private int mDisplayHeight;
+    private final ComponentCallbacks2 mComponentCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            onDisplaySizeChanged();
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(TRIM_MEMORY_COMPLETE);
+        }
+    };
+    private final FrameScheduler.Callback mMotionFrameCallback = new FrameScheduler.Callback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mMotionEngine.doFrame(frameTimeNanos);
+            if (mMotionEngine.isRunning()) {
+                mFrameScheduler.postFrameCallback(this);
+            }
+        }
+    };
+    private final OverlayMoveThrottle mMoveThrottle;
+    private OverlapSolver mOverlapSolver;
+    private final OverlayCommandQueue mCommandQueue;
+    private final OverlayDragLayer mDragLayer;
+    /** Bitmaps for drag snapshots and idle snapshots. */
+    private final SnapshotBitmapPool mSnapshotBitmapPool = new SnapshotBitmapPool();
+    private final OverlayContentUpdater mContentUpdater;
+    /** Only created once an overlay has a persistent id, since it reads its file. */
+    private OverlayPositionStore mPositionStore;
+    private final OverlayIdleDemoter mIdleDemoter;
+    /** Persistent ids set for views before they were added. */
+    private final WeakHashMap<View, String> mPendingPersistentIds = new WeakHashMap<View, String>();
+    private final OverlayDropZones mDropZones = new OverlayDropZones();
+    private final int[] mTempLocation = {0,0};
+
+    // Overlays and the remove view created in the background, see `addOverlayViewAsync()`.
+    private OverlayInflater mInflater;
+    private final ArrayList<PendingOverlay> mInflatedOverlays = new ArrayList<PendingOverlay>();
+    private final OverlayInflater.Callback mInflaterCallback = new OverlayInflater.Callback() {
+        @Override
+        public void onViewCreated(View view, Object tag) {
+            if (tag == REMOVE_VIEW_TAG) {
+                onRemoveViewCreated(view);
+            } else {
+                PendingOverlay pendingOverlay = (PendingOverlay) tag;
+                pendingOverlay.view = view;
+                mInflatedOverlays.add(pendingOverlay);
+                mFrameScheduler.postFrameCallback(mAttachFrameCallback);
+            }
+        }
+    };
+    private final FrameScheduler.Callback mAttachFrameCallback = new FrameScheduler.Callback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            attachInflatedOverlays();
+        }
+    };
+
+    /** @param windowSink where to send the window manager calls, or null for the real window manager
+     * @param isRemoveViewLazy true to only create and attach the remove view once the user starts
+     *                         dragging an overlay, and to detach it again when it hasn't been
+     *                         needed for a while */
+    OverlayEngine(Context context, WindowSink windowSink, boolean isRemoveViewLazy, Host host) {
+        mContext = context;
+        mHost = host;
+        mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mWindowSink = windowSink != null ? windowSink : new WindowManagerSink(mWindowManager);
+        mFrameScheduler = new FrameScheduler();
+        mWindows = new OverlayWindows(context, mWindowSink, mFrameScheduler);
+        mMotionEngine = new OverlayMotionEngine(newMotionListener());
+        mMoveThrottle = new OverlayMoveThrottle(mFrameScheduler, mWindows);
+        mCommandQueue = new OverlayCommandQueue(this, mFrameScheduler);
+        mDragLayer = new OverlayDragLayer(context, mWindowSink, mSnapshotBitmapPool);
+        mContentUpdater = new OverlayContentUpdater(mFrameScheduler);
+        mIdleDemoter = new OverlayIdleDemoter(context, mWindowManager, mWindowSink, mFrameScheduler.getHandler(),
+                mSnapshotBitmapPool, mWindows);
+        mWindowManager.getDefaultDisplay().getMetrics(mDisplayMetrics);
+        mDisplayWidth = mDisplayMetrics.widthPixels;
+        mDisplayHeight = mDisplayMetrics.heightPixels;
+        context.registerComponentCallbacks(mComponentCallbacks);
+        mIsRemoveViewLazy = isRemoveViewLazy;
+        if (!mIsRemoveViewLazy) {
+            if (host.canCreateRemoveViewInBackground()) {
+                getInflater().create(new GlobalOverlay.ViewFactory() {
+                    @Override
+                    public View onCreateView(Context context) {
+                        return mHost.onCreateRemoveView();
+                    }
+                }, REMOVE_VIEW_TAG, mInflaterCallback);
+            } else {
+                ensureRemoveViewAttached();
+            }
+        }
+    }
+
+    private OverlayPositionStore getPositionStore() {
+        if (mPositionStore == null) {
+            mPositionStore = OverlayPositionStore.forFile(new File(mContext.getFilesDir(), mHost.getPositionFileName()),
+                    mFrameScheduler.getHandler());
+        }
+        return mPositionStore;
+    }
+
+    private OverlayInflater getInflater() {
+        if (mInflater == null) {
+            mInflater = new OverlayInflater(mContext, mFrameScheduler.getHandler());
+        }
+        return mInflater;
+    }
+
+    /** Sets this view to the bottom of the screen and only visible when user is dragging an
+     * overlay view. This modifies the instance passed in. It is kept INVISIBLE rather than GONE
+     * while not shown, so that showing it doesn't need a new layout of its window. */
+    private void setupRemoveView(View removeView) {
+        mRemoveViewAnimator.hideNow();
+        mWindowSink.addView(removeView, newWindowManagerLayoutParamsForRemoveView());
+    }
+
+    /** Attaches the remove view if it isn't already, creating it first if needed. */
+    private void ensureRemoveViewAttached() {
+        mFrameScheduler.getHandler().removeCallbacks(mDetachRemoveViewRunnable);
+        if (mRemoveView == null) {
+            initRemoveView(mHost.onCreateRemoveView());
+        }
+        if (!mIsRemoveViewAttached) {
+            setupRemoveView(mRemoveView);
+            mIsRemoveViewAttached = true;
+            mDropZones.setRemoveView(mRemoveView);
+        }
+    }
+
+    private void initRemoveView(View removeView) {
+        mRemoveView = removeView;
+        mRemoveViewAnimator = new RemoveViewAnimator(mRemoveView);
+    }
+
+    /** Attaches the remove view that was created in the background. If a drag needed it sooner,
+     * it was created on the main thread already, and this one is dropped. */
+    private void onRemoveViewCreated(View removeView) {
+        if (mRemoveView == null) {
+            initRemoveView(removeView);
+            ensureRemoveViewAttached();
+        }
+    }
+
+    /** Shows the remove view, called once a touch has moved past the touch slop. */
+    private void showRemoveView() {
+        ensureRemoveViewAttached();
+        mRemoveViewAnimator.show();
+    }
+
+    /** Hides the remove view, called when a drag ends. In lazy mode, the remove view is detached
+     * once no drag has started for {@link #REMOVE_VIEW_IDLE_TIMEOUT_MILLIS}. */
+    private void hideRemoveView() {
+        if (mIsRemoveViewAttached) {
+            mRemoveViewAnimator.hide();
+            if (mIsRemoveViewLazy) {
+                mFrameScheduler.getHandler().postDelayed(mDetachRemoveViewRunnable, REMOVE_VIEW_IDLE_TIMEOUT_MILLIS);
+            }
+        }
+    }
+
+    private void detachRemoveView() {
+        mFrameScheduler.getHandler().removeCallbacks(mDetachRemoveViewRunnable);
+        if (mIsRemoveViewAttached) {
+            mIsRemoveViewAttached = false;
+            mDropZones.setRemoveView(null);
+            mRemoveViewAnimator.hideNow();
+            mWindowSink.removeView(mRemoveView);
+        }
+    }
+
+
+    /** Add a global floating view. Any number of overlays can be added, each one is tracked
+     * separately and identified by its view.
+     *
+     * @param view the view to overlay across all apps and activities
+     * @param onClickListener get notified of a click, set null to ignore
+     * @param onLongClickListener get notified of a long press, set null to ignore
+     * @param onRemoveOverlayListener get notified when overlay is removed
+     */
+    void addOverlayView(View view, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener) {
+        OverlayRecord record = mRecyclePool.obtainRecord();
+        if (record != null) {
+            record.view = view;
+            record.windowView = view;
+        } else {
+            record = new OverlayRecord(view, newWindowManagerLayoutParams());
+            record.gestureDetector = newGestureDetector(record);
+            record.gestureTimeoutRunnable = newGestureTimeoutRunnable(record);
+            record.onTouchListener = newSimpleOnTouchListener(record);
+        }
+        record.onClickListener = onClickListener;
+        record.onLongClickListener = onLongClickListener;
+        record.onRemoveOverlayListener = onRemoveOverlayListener;
+        view.setOnTouchListener(record.onTouchListener);
+        record.persistentId = mPendingPersistentIds.remove(view);
+        if (record.persistentId != null) {
+            restorePosition(record);
+        }
+        if (mGestureMetricsListener != null) {
+            record.metrics = new GestureMetricsRecorder(record, mGestureMetricsReporter);
+        }
+
+        mOverlays.put(record);
+        mWindows.add(record);
+    }
+
+    /** Add a global floating view without blocking the main thread on creating it. The view is
+     * created and measured on a background thread, then attached on the next frame.
+     *
+     * @param layoutResId the layout to inflate, used if factory is null
+     * @param factory creates the view on the background thread, or null to inflate layoutResId
+     * @param onOverlayAddedListener get notified once the overlay is attached, set null to ignore
+     */
+    void addOverlayViewAsync(int layoutResId, GlobalOverlay.ViewFactory factory, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener,
+            GlobalOverlay.OnOverlayAddedListener onOverlayAddedListener) {
+        PendingOverlay pendingOverlay = new PendingOverlay();
+        pendingOverlay.onClickListener = onClickListener;
+        pendingOverlay.onLongClickListener = onLongClickListener;
+        pendingOverlay.onRemoveOverlayListener = onRemoveOverlayListener;
+        pendingOverlay.onOverlayAddedListener = onOverlayAddedListener;
+        if (factory != null) {
+            getInflater().create(factory, pendingOverlay, mInflaterCallback);
+        } else {
+            getInflater().inflate(layoutResId, pendingOverlay, mInflaterCallback);
+        }
+    }
+
+    /** Attaches every overlay that finished creating since the last frame. */
+    private void attachInflatedOverlays() {
+        for (int i = 0, size = mInflatedOverlays.size(); i < size; i++) {
+            PendingOverlay pendingOverlay = mInflatedOverlays.get(i);
+            addOverlayView(pendingOverlay.view, pendingOverlay.onClickListener,
+                    pendingOverlay.onLongClickListener, pendingOverlay.onRemoveOverlayListener);
+        }
+        for (int i = 0, size = mInflatedOverlays.size(); i < size; i++) {
+            PendingOverlay pendingOverlay = mInflatedOverlays.get(i);
+            if (pendingOverlay.onOverlayAddedListener != null) {
+                pendingOverlay.onOverlayAddedListener.onOverlayAdded(pendingOverlay.view);
+            }
+        }
+        mInflatedOverlays.clear();
+    }
+
+    /** Add several overlays at once, sharing the same listeners. Listeners are told which view
+     * they are called for, so one set of them can serve all the overlays. */
+    void addOverlayViews(Collection<View> views, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener) {
+        for (View view : views) {
+            addOverlayView(view, onClickListener, onLongClickListener, onRemoveOverlayListener);
+        }
+    }
+
+    /** Remove a overlay without destroying the service. */
+    void removeOverlayView(View view, boolean isRemovedByUser) {
+        OverlayRecord record = mOverlays.remove(view);
+        if (record != null) {
+            stopOverlay(record);
+            if (record.onRemoveOverlayListener != null) {
+                record.onRemoveOverlayListener.onRemoveOverlay(view, isRemovedByUser);
+            }
+            mWindows.remove(record);
+            recycleRecordLater(record);
+        }
+    }
+
+    /** Remove several overlays at once. All of them are hidden in the same frame before any
+     * window is removed, and the remove listeners are called together once all are detached. */
+    void removeOverlayViews(Collection<View> views, boolean isRemovedByUser) {
+        for (View view : views) {
+            OverlayRecord record = mOverlays.remove(view);
+            if (record != null) {
+                mRemovedRecords.add(record);
+            }
+        }
+        removeOverlays(mRemovedRecords, isRemovedByUser);
+    }
+
+    /** Removes these overlays, which have already been taken out of the registry, and clears the list. */
+    private void removeOverlays(ArrayList<OverlayRecord> records, boolean isRemovedByUser) {
+        int size = records.size();
+        for (int i = 0; i < size; i++) {
+            OverlayRecord record = records.get(i);
+            stopOverlay(record);
+            record.visibilityBeforeRemove = record.view.getVisibility();
+            record.view.setVisibility(View.INVISIBLE);
+        }
+        for (int i = 0; i < size; i++) {
+            OverlayRecord record = records.get(i);
+            mWindows.remove(record);
+            record.view.setVisibility(record.visibilityBeforeRemove);
+        }
+        for (int i = 0; i < size; i++) {
+            OverlayRecord record = records.get(i);
+            if (record.onRemoveOverlayListener != null) {
+                record.onRemoveOverlayListener.onRemoveOverlay(record.view, isRemovedByUser);
+            }
+            recycleRecordLater(record);
+        }
+        records.clear();
+    }
+
+    /** Puts the record of a removed overlay back into the pool once the current main thread
+     * message is done, since the touch handling that removed it may still be using it. */
+    private void recycleRecordLater(OverlayRecord record) {
+        record.view.setOnTouchListener(null);
+        mRecordsToRecycle.add(record);
+        if (mRecordsToRecycle.size() == 1) {
+            mFrameScheduler.getHandler().post(mRecycleRecordsRunnable);
+        }
+    }
+
+    /** Keep a removed overlay view for reuse with {@link #getRecycledOverlayView(int)}. */
+    void recycleOverlayView(View view, int viewType) {
+        if (mOverlays.get(view) != null) {
+            throw new IllegalStateException("Only removed overlay views can be recycled");
+        }
+        mRecyclePool.recycleView(view, viewType);
+    }
+
+    /** Return a view given to {@link #recycleOverlayView(View, int)} with this type, or null. */
+    View getRecycledOverlayView(int viewType) {
+        return mRecyclePool.obtainView(viewType);
+    }
+
+    /** Set how many removed views of this type are kept for reuse. */
+    void setMaxRecycledOverlayViews(int viewType, int maxCount) {
+        mRecyclePool.setMaxRecycledViews(viewType, maxCount);
+    }
+
+    /** Stops everything still pending for an overlay that is being removed. */
+    private void stopOverlay(OverlayRecord record) {
+        if (record.solverId != OverlayRecord.NO_SOLVER_ID) {
+            mOverlapSolver.remove(record.solverId);
+            record.solverId = OverlayRecord.NO_SOLVER_ID;
+        }
+        mContentUpdater.cancel(record);
+        mIdleDemoter.stop(record, false);
+        mDragLayer.end(record);
+        mWindows.cancelUpdate(record);
+        if (record.metrics != null) {
+            record.metrics.onLayoutCancelled();
+        }
+        // Removes can be applied from inside a frame, so also make sure a pending long press or
+        // click can't fire for the removed overlay.
+        record.gestureDetector.onCancel();
+        scheduleGestureTimeout(record);
+        mMoveThrottle.cancel(record);
+        if (record.motion != null) {
+            mMotionEngine.cancel(record.motion);
+        }
+    }
+
+    /** Move an overlay to this position, stopping any animation of it.
+     *
+     * @param x pixels from the left edge of the screen
+     * @param y pixels from the vertical center of the screen
+     */
+    void moveOverlayView(View view, int x, int y) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record != null) {
+            if (record.motion != null) {
+                mMotionEngine.cancel(record.motion);
+            }
+            mIdleDemoter.wake(record);
+            record.layoutParams.x = x;
+            record.layoutParams.y = y;
+            mDropZones.onOverlayMoved(view);
+            mWindows.updateNow(record);
+            onOverlaySettled(record);
+        }
+    }
+
+    /** Add an overlay on the next frame, like `addOverlayView()`. Can be called on any thread. */
+    void postAddOverlayView(View view, View.OnClickListener onClickListener,
+            View.OnLongClickListener onLongClickListener, GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener) {
+        mCommandQueue.postAdd(view, onClickListener, onLongClickListener, onRemoveOverlayListener);
+    }
+
+    /** Move an overlay on the next frame, like `moveOverlayView()`. Can be called on any thread. */
+    void postMoveOverlayView(View view, int x, int y) {
+        mCommandQueue.postMove(view, x, y);
+    }
+
+    /** Remove an overlay on the next frame, like `removeOverlayView()`. Can be called on any thread. */
+    void postRemoveOverlayView(View view) {
+        mCommandQueue.postRemove(view);
+    }
+
+    /** Set whether overlays added after this call share a single window. Each overlay normally
+     * gets its own window, so adding, moving and removing it costs a window manager IPC and
+     * it has its own surface. In compositor mode, overlays are children of one full screen host
+     * window and are moved with view translation instead. The host window only takes touches
+     * on top of its overlays, so apps underneath keep working. This is worth it when showing
+     * many overlays at once.
+     *
+     * This has to be set before any overlay is added.
+     *
+     * @return false if compositor mode isn't supported on this device, overlays then keep
+     * getting their own windows */
+    boolean setCompositorModeEnabled(boolean isEnabled) {
+        if (!mOverlays.isEmpty()) {
+            throw new IllegalStateException("Compositor mode must be set before adding overlays");
+        }
+        return mWindows.setCompositorModeEnabled(isEnabled);
+    }
+
+    /** Set whether drags should send at most one layout update per display frame. When enabled,
+     * only the latest position of each frame is applied, and the merged moves are counted in
+     * {@link #getCoalescedMoveCount()}. This saves a window manager IPC for every extra move
+     * event on high-rate touch screens. Disabled by default. */
+    void setDragCoalescingEnabled(boolean isEnabled) {
+        mWindows.setDragCoalescingEnabled(isEnabled);
+    }
+
+    /** Return the total number of drag moves that were merged into a later layout update. */
+    long getCoalescedMoveCount() {
+        return mWindows.getCoalescedMoveCount();
+    }
+
+    /** Get notified of double taps and flings on this overlay, in addition to the click and
+     * long click listeners given to `addOverlayView()`. Setting a listener delays single clicks
+     * by the double tap timeout, to tell them apart from double taps.
+     *
+     * @param view an overlay view that was added with `addOverlayView()`
+     * @param onOverlayGestureListener the listener, set null to ignore double taps and flings
+     */
+    void setOnOverlayGestureListener(View view, GlobalOverlay.OnOverlayGestureListener onOverlayGestureListener) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record != null) {
+            record.onOverlayGestureListener = onOverlayGestureListener;
+            record.gestureDetector.setDoubleTapEnabled(onOverlayGestureListener != null);
+            scheduleGestureTimeout(record);
+        }
+    }
+
+    /** Set a listener for the metrics of every touch gesture on the overlays: touch to layout
+     * update latencies, layout updates sent, coalesced moves and time spent handling touches.
+     * While set, the touch handling and layout updates also show up as `android.os.Trace`
+     * sections in systrace on API 18+. Metrics cost nothing while no listener is set.
+     *
+     * @param onGestureMetricsListener the listener, set null to stop collecting metrics
+     */
+    void setOnGestureMetricsListener(GlobalOverlay.OnGestureMetricsListener onGestureMetricsListener) {
+        mGestureMetricsListener = onGestureMetricsListener;
+        for (int i = 0, size = mOverlays.size(); i < size; i++) {
+            OverlayRecord record = mOverlays.getAt(i);
+            if (onGestureMetricsListener == null) {
+                record.metrics = null;
+            } else if (record.metrics == null) {
+                record.metrics = new GestureMetricsRecorder(record, mGestureMetricsReporter);
+            }
+        }
+    }
+
+    /** Give an overlay a fixed size in pixels, so that changes to its content never resize its
+     * window. This costs one layout update now, and none for later content changes. */
+    void setOverlayContentSize(View view, int width, int height) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record != null) {
+            record.layoutParams.width = width;
+            record.layoutParams.height = height;
+            mWindows.updateSizeNow(record);
+            onOverlaySettled(record);
+        }
+    }
+
+    /** Set the listener that updates the content of this overlay before it's redrawn after
+     * `invalidateOverlayContent()`. */
+    void setOnUpdateOverlayContentListener(View view,
+            GlobalOverlay.OnUpdateOverlayContentListener onUpdateOverlayContentListener) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record != null) {
+            record.onUpdateOverlayContentListener = onUpdateOverlayContentListener;
+        }
+    }
+
+    /** Update and redraw the content of this overlay on the next frame, merged with any other
+     * invalidation before then. */
+    void invalidateOverlayContent(View view) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record != null) {
+            mContentUpdater.invalidate(record);
+        }
+    }
+
+    /** Set how this overlay is made cheaper after this long without being touched, see
+     * {@link OverlayIdleDemoter}. Flags of 0 turn it off. */
+    void setOverlayIdlePolicy(View view, int idleFlags, long idleTimeoutMillis) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record != null) {
+            mIdleDemoter.setPolicy(record, idleFlags, idleTimeoutMillis);
+        }
+    }
+
+    /** Set whether this overlay is moved on every move event of a drag, or less often while the
+     * main thread is busy, see {@link MoveRateGovernor}. Applies to drags that start after this
+     * call. */
+    void setOverlayMoveRatePolicy(View view, int moveRatePolicy) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record != null) {
+            record.moveRatePolicy = moveRatePolicy;
+        }
+    }
+
+    /** Save the position and size of this overlay under this id, and restore them from a
+     * previous run if there are any. Can be called before the view is added, which saves moving
+     * it after it's added. */
+    void setOverlayPersistentId(View view, String persistentId) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record == null) {
+            mPendingPersistentIds.put(view, persistentId);
+            return;
+        }
+        record.persistentId = persistentId;
+        if (restorePosition(record)) {
+            mWindows.updateSizeNow(record);
+            onOverlaySettled(record);
+        } else {
+            savePosition(record);
+        }
+    }
+
+    /** Sets the saved position and size of this overlay in its layout params, without sending
+     * them. Returns false if nothing was saved for it. */
+    private boolean restorePosition(OverlayRecord record) {
+        OverlayPositionStore.Entry entry = getPositionStore().get(record.persistentId);
+        if (entry == null) {
+            return false;
+        }
+        record.layoutParams.x = entry.x;
+        record.layoutParams.y = entry.y;
+        record.layoutParams.width = entry.width;
+        record.layoutParams.height = entry.height;
+        return true;
+    }
+
+    /** Called whenever an overlay has come to rest at a new position or size, never per move. */
+    private void onOverlaySettled(OverlayRecord record) {
+        savePosition(record);
+        if (mOverlapSolver != null && (record.motion == null || !record.motion.isRunning())) {
+            updateSolverBox(record);
+        }
+    }
+
+    /** Set whether overlays should keep clear of each other and of the remove view. When enabled,
+     * an overlay released after a drag moves to the nearest free place docked along the left or
+     * right edge, see {@link OverlapSolver}. Nothing is solved during the drag itself. */
+    void setOverlapAvoidanceEnabled(boolean isEnabled) {
+        if (!isEnabled) {
+            mOverlapSolver = null;
+            for (int i = 0, size = mOverlays.size(); i < size; i++) {
+                mOverlays.getAt(i).solverId = OverlayRecord.NO_SOLVER_ID;
+            }
+        } else if (mOverlapSolver == null) {
+            mOverlapSolver = new OverlapSolver();
+            mWindowManager.getDefaultDisplay().getMetrics(mDisplayMetrics);
+            for (int i = 0, size = mOverlays.size(); i < size; i++) {
+                updateSolverBox(mOverlays.getAt(i));
+            }
+        }
+    }
+
+    /** Releases what can be rebuilt later, more of it the higher the trim level.
+     *
+     * Any trim drops the snapshot bitmaps and the proxy views, which only save allocations. When
+     * memory is actually running low, the recycled views and records are dropped too, the remove
+     * view is detached until the next drag, and overlays with an idle policy are demoted right
+     * away. Levels that only mean the app's UI was hidden don't count as running low, since
+     * overlays are still on screen then and the app is likely to keep adding them. */
+    void trimMemory(int level) {
+        mSnapshotBitmapPool.clear();
+        mDragLayer.trimMemory();
+        boolean isMemoryLow = level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        mIdleDemoter.trimMemory(mOverlays, isMemoryLow);
+        if (!isMemoryLow) {
+            return;
+        }
+        mRecyclePool.clear();
+        if (mIsRemoveViewAttached && !mRemoveViewAnimator.isShown()) {
+            detachRemoveView();
+        }
+    }
+
+    /** Return an estimate of the memory this overlay holds, in bytes: the buffers of its window
+     * surface, its hardware layer if it has one, and any snapshot bitmap and window standing in
+     * for it. Composited overlays share the surface of the compositor window, so it isn't
+     * counted. Memory of the view hierarchy itself isn't included. Returns 0 for unknown views.
+     */
+    long getOverlayMemoryEstimate(View view) {
+        OverlayRecord record = mOverlays.get(view);
+        if (record == null) {
+            return 0;
+        }
+        long pixelBytes = (long) view.getWidth() * view.getHeight() * BYTES_PER_PIXEL;
+        long bytes = 0;
+        if (!record.isComposited) {
+            bytes += pixelBytes * SURFACE_BUFFER_COUNT;
+        }
+        if (view.getLayerType() != View.LAYER_TYPE_NONE) {
+            bytes += pixelBytes;
+        }
+        if (record.activeDragMode == GlobalOverlay.DRAG_MODE_SNAPSHOT) {
+            bytes += pixelBytes + pixelBytes * SURFACE_BUFFER_COUNT;
+        }
+        if (record.idleState != null && record.idleState.bitmap != null) {
+            bytes += pixelBytes + pixelBytes * SURFACE_BUFFER_COUNT;
+        }
+        return bytes;
+    }
+
+    /** Keeps overlays on screen when the display changes size, e.g. when it's rotated. Every
+     * overlay is moved to the same relative place on the new display, and overlays docked to an
+     * edge stay against it. The windows are only moved, never re-added, and all of them in one
+     * batch on the next frame. */
+    private void onDisplaySizeChanged() {
+        mWindowManager.getDefaultDisplay().getMetrics(mDisplayMetrics);
+        int oldWidth = mDisplayWidth;
+        int oldHeight = mDisplayHeight;
+        int newWidth = mDisplayMetrics.widthPixels;
+        int newHeight = mDisplayMetrics.heightPixels;
+        if (newWidth == oldWidth && newHeight == oldHeight) {
+            return;
+        }
+        mDisplayWidth = newWidth;
+        mDisplayHeight = newHeight;
+
+        // The remove view and other drop zones have moved with the display.
+        mDropZones.invalidate();
+        if (mOverlapSolver != null) {
+            mOverlapSolver.setBounds(newWidth, newHeight);
+        }
+
+        for (int i = 0, size = mOverlays.size(); i < size; i++) {
+            OverlayRecord record = mOverlays.getAt(i);
+            if (record.motion != null) {
+                // Its target is on the old display.
+                mMotionEngine.cancel(record.motion);
+            }
+            mIdleDemoter.wake(record);
+            int width = record.view.getWidth();
+            int height = record.view.getHeight();
+            record.layoutParams.x = DragMath.reprojectPosition(record.layoutParams.x, width, oldWidth, newWidth);
+            // Overlays are centered vertically, so y is relative to the middle of the screen.
+            int top = record.layoutParams.y + (oldHeight - height) / 2;
+            record.layoutParams.y = DragMath.reprojectPosition(top, height, oldHeight, newHeight) - (newHeight - height) / 2;
+            mWindows.updateOnNextFrame(record);
+            if (record.solverId != OverlayRecord.NO_SOLVER_ID) {
+                updateSolverBox(record);
+            }
+            savePosition(record);
+        }
+    }
+
+    /** Keeps the box of this overlay in the solver where the overlay is now. Overlays that haven't
+     * been laid out yet get their box once they have a size. */
+    private void updateSolverBox(OverlayRecord record) {
+        int width = record.view.getWidth();
+        int height = record.view.getHeight();
+        if (width == 0 || height == 0) {
+            return;
+        }
+        // Overlays are centered vertically, so y is relative to the middle of the screen.
+        int top = record.layoutParams.y + (mDisplayMetrics.heightPixels - height) / 2;
+        if (record.solverId == OverlayRecord.NO_SOLVER_ID) {
+            record.solverId = mOverlapSolver.add(record.layoutParams.x, top, width, height);
+        } else {
+            mOverlapSolver.update(record.solverId, record.layoutParams.x, top, width, height);
+        }
+    }
+
+    /** Animates this overlay from where it was released to the nearest free place. */
+    private void startOverlapFreeMotion(OverlayRecord record, float velocityX, float velocityY) {
+        mWindowManager.getDefaultDisplay().getMetrics(mDisplayMetrics);
+        mOverlapSolver.setBounds(mDisplayMetrics.widthPixels, mDisplayMetrics.heightPixels);
+        if (mIsRemoveViewAttached && mRemoveView.getWidth() > 0) {
+            mRemoveView.getLocationOnScreen(mTempLocation);
+            mOverlapSolver.setReservedArea(mTempLocation[0], mTempLocation[1],
+                    mTempLocation[0] + mRemoveView.getWidth(), mTempLocation[1] + mRemoveView.getHeight());
+        }
+        for (int i = 0, size = mOverlays.size(); i < size; i++) {
+            OverlayRecord other = mOverlays.getAt(i);
+            if (other.solverId == OverlayRecord.NO_SOLVER_ID) {
+                updateSolverBox(other);
+            }
+        }
+        updateSolverBox(record);
+        if (record.solverId == OverlayRecord.NO_SOLVER_ID) {
+            return;
+        }
+
+        int height = record.view.getHeight();
+        int centerOffset = (mDisplayMetrics.heightPixels - height) / 2;
+        int releasedX = (int) SpringMotion.projectFling(record.layoutParams.x, velocityX);
+        int releasedY = (int) SpringMotion.projectFling(record.layoutParams.y, velocityY);
+        mOverlapSolver.solve(record.solverId, releasedX, releasedY + centerOffset);
+        int targetX = mOverlapSolver.getSolvedLeft();
+        int targetY = mOverlapSolver.getSolvedTop() - centerOffset;
+        // Claim the place right away, so an overlay released during the animation doesn't take it.
+        mOverlapSolver.update(record.solverId, targetX, mOverlapSolver.getSolvedTop(), record.view.getWidth(), height);
+
+        if (record.motion == null) {
+            record.motion = new SpringMotion(record);
+        }
+        record.motion.start(record.layoutParams.x, record.layoutParams.y, velocityX, velocityY,
+                targetX, targetY, getMotionStartTimeNanos());
+        mMotionEngine.add(record.motion);
+        mFrameScheduler.postFrameCallback(mMotionFrameCallback);
+    }
+
+    /** Saves the position and size of this overlay, if it has a persistent id. Only called once
+     * an overlay has settled, never per move. */
+    private void savePosition(OverlayRecord record) {
+        if (record.persistentId != null) {
+            getPositionStore().put(record.persistentId, record.layoutParams.x, record.layoutParams.y,
+                    record.layoutParams.width, record.layoutParams.height);
+        }
+    }
+
+    /** Set how overlays are drawn while they are dragged, one of
+     * {@link GlobalOverlay#DRAG_MODE_LIVE}, {@link GlobalOverlay#DRAG_MODE_HARDWARE_LAYER} or
+     * {@link GlobalOverlay#DRAG_MODE_SNAPSHOT}. Applies to drags that start after this call. */
+    void setDragMode(int dragMode) {
+        mDragLayer.setDragMode(dragMode);
+    }
+
+    /** Set whether dragged overlays should be placed where the finger is predicted to be at the
+     * next display frame, see {@link TouchPredictor}. Applies to drags that start after this call. */
+    void setTouchPredictionEnabled(boolean isEnabled) {
+        mIsTouchPredictionEnabled = isEnabled;
+    }
+
+    /** Starts predicting the touches of the gesture starting with this down event. */
+    private void startTouchPrediction(OverlayRecord record, MotionEvent event) {
+        if (record.touchPredictor == null) {
+            record.touchPredictor = new TouchPredictor(
+                    MAX_TOUCH_PREDICTION_DIP * mContext.getResources().getDisplayMetrics().density);
+        }
+        record.touchPredictor.clear();
+        record.touchPredictor.addSample(event.getRawX(), event.getRawY(), event.getEventTime());
+        record.isTouchPredicting = true;
+        updateFrameInterval();
+    }
+
+    private void updateFrameInterval() {
+        mFrameIntervalNanos = (long) (1000000000 / mWindowManager.getDefaultDisplay().getRefreshRate());
+    }
+
+    /** Feeds all touch samples of this move event to the predictor, including the ones batched
+     * into it since the previous event. Only the newest sample has raw coordinates, but all
+     * samples of an event are relative to the same window position, so they share its offset. */
+    private static void addTouchSamples(TouchPredictor predictor, MotionEvent event) {
+        float offsetX = event.getRawX() - event.getX();
+        float offsetY = event.getRawY() - event.getY();
+        for (int i = 0, size = event.getHistorySize(); i < size; i++) {
+            predictor.addSample(event.getHistoricalX(i) + offsetX, event.getHistoricalY(i) + offsetY,
+                    event.getHistoricalEventTime(i));
+        }
+        predictor.addSample(event.getRawX(), event.getRawY(), event.getEventTime());
+    }
+
+    /** Back to the live overlay view at the end of a drag, moving its window to where the
+     * snapshot was if there was one. */
+    private void endDragLayer(OverlayRecord record) {
+        if (mDragLayer.end(record)) {
+            mWindows.updateNow(record);
+        }
+    }
+
+    /** Set whether overlays should be flung with the velocity of the gesture when a drag ends,
+     * and then settle against the nearest left or right edge of the screen with a spring.
+     * Disabled by default. */
+    void setSnapToEdgeEnabled(boolean isEnabled) {
+        mIsSnapToEdgeEnabled = isEnabled;
+    }
+
+    /** Starts animating this overlay towards the nearest screen edge. */
+    private void startSnapToEdge(OverlayRecord record, float velocityX, float velocityY) {
+        mWindowManager.getDefaultDisplay().getMetrics(mDisplayMetrics);
+        int maxX = Math.max(0, mDisplayMetrics.widthPixels - record.view.getWidth());
+        // Overlays are centered vertically, so y is relative to the middle of the screen.
+        int maxY = Math.max(0, (mDisplayMetrics.heightPixels - record.view.getHeight()) / 2);
+        if (record.motion == null) {
+            record.motion = new SpringMotion(record);
+        }
+        record.motion.startSnapToEdge(record.layoutParams.x, record.layoutParams.y, velocityX, velocityY,
+                0, maxX, -maxY, maxY, getMotionStartTimeNanos());
+        mMotionEngine.add(record.motion);
+        mFrameScheduler.postFrameCallback(mMotionFrameCallback);
+    }
+
+    /** Return the start of the current display frame, the time base motions are stepped in.
+     * Frame times are vsync times, so the frame that steps a motion first can have an earlier
+     * time than `System.nanoTime()` when the motion was started, and would not move it. */
+    private long getMotionStartTimeNanos() {
+        updateFrameInterval();
+        return mFrameScheduler.getNextFrameTimeNanos(System.nanoTime(), mFrameIntervalNanos) - mFrameIntervalNanos;
+    }
+
+    private OverlayMotionEngine.Listener newMotionListener() {
+        return new OverlayMotionEngine.Listener() {
+            @Override
+            public void onMotionUpdate(SpringMotion motion, int x, int y) {
+                OverlayRecord record = (OverlayRecord) motion.tag;
+                record.layoutParams.x = x;
+                record.layoutParams.y = y;
+                mWindows.updateNow(record);
+            }
+
+            @Override
+            public void onMotionEnd(SpringMotion motion) {
+                OverlayRecord record = (OverlayRecord) motion.tag;
+                mDropZones.onOverlayMoved(record.view);
+                onOverlaySettled(record);
+            }
+        };
+    }
+
+    /** Return the number of overlays currently shown. */
+    int getOverlayCount() {
+        return mOverlays.size();
+    }
+
+    /** Let overlays be dropped onto this view, for example another overlay acting as a folder.
+     * The target view must already be attached to a window. Dropping onto the remove view is
+     * always handled, there's no need to add it here.
+     *
+     * @param target the view that overlays can be dropped onto
+     * @param onDropOverlayListener get notified when an overlay is released over the target
+     */
+    void addDropZone(View target, GlobalOverlay.OnDropOverlayListener onDropOverlayListener) {
+        mDropZones.add(target, onDropOverlayListener);
+    }
+
+    /** Stop treating this view as a drop zone. */
+    void removeDropZone(View target) {
+        mDropZones.remove(target);
+    }
+
+    /** Remove all views. All overlays are removed in one batch, like `removeOverlayViews()`, and
+     * the remove view is detached last. This instance becomes unusable after calling this. */
+    void destroy() {
+        mCommandQueue.quit();
+        if (mInflater != null) {
+            mInflater.quit();
+        }
+        mFrameScheduler.removeFrameCallback(mAttachFrameCallback);
+        mInflatedOverlays.clear();
+        for (int i = 0, size = mOverlays.size(); i < size; i++) {
+            mRemovedRecords.add(mOverlays.getAt(i));
+        }
+        mOverlays.clear();
+        removeOverlays(mRemovedRecords, false);
+        mDragLayer.destroy();
+        mIdleDemoter.destroy();
+        mSnapshotBitmapPool.clear();
+        mContext.unregisterComponentCallbacks(mComponentCallbacks);
+        mFrameScheduler.getHandler().removeCallbacks(mRecycleRecordsRunnable);
+        mRecordsToRecycle.clear();
+        mRecyclePool.clear();
+        if (mPositionStore != null) {
+            mPositionStore.flush();
+        }
+        mFrameScheduler.removeFrameCallback(mMotionFrameCallback);
+        mMoveThrottle.destroy();
+        detachRemoveView();
+        mDropZones.destroy();
+        mWindows.destroy();
+        if (mRemoveView != null) {
+            mRemoveView = null;
+            mRemoveViewAnimator = null;
+        }
+    }
+
+    /** Handles the overlay being released over a drop zone. */
+    private void onDropOverlay(OverlayRecord record, int dropZone) {
+        if (mDropZones.drop(record, dropZone)) {
+            removeOverlayView(record.view, true);
+            if (mOverlays.isEmpty()) {
+                mHost.onLastOverlayRemovedByUser();
+            }
+        }
+    }
+
+    /** Provides the drag ability for the overlay view. This touch listener
+     * allows user to drag the view anywhere on screen. Taps, long presses, double taps and
+     * flings are recognized by the overlay's {@link OverlayGestureDetector}. */
+    private View.OnTouchListener newSimpleOnTouchListener(final OverlayRecord record) {
+        return new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                GestureMetricsRecorder metrics = record.metrics;
+                if (metrics == null) {
+                    return handleTouch(v, event);
+                }
+
+                OverlayTrace.beginSection(OverlayTrace.SECTION_TOUCH);
+                long startNanos = System.nanoTime();
+                int action = event.getAction();
+                if (action == MotionEvent.ACTION_DOWN) {
+                    metrics.onGestureStart();
+                } else if (action == MotionEvent.ACTION_MOVE) {
+                    metrics.onMove();
+                }
+                boolean isHandled = handleTouch(v, event);
+                metrics.onTouchHandled(System.nanoTime() - startNanos,
+                        action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL,
+                        record.coalescedMoveCount);
+                OverlayTrace.endSection();
+                return isHandled;
+            }
+
+            private boolean handleTouch(View v, MotionEvent event) {
+                switch (event.getAction()) {
+                    case MotionEvent.ACTION_DOWN:
+                        if (record.motion != null) {
+                            // Catch the overlay wherever it is in its animation.
+                            mMotionEngine.cancel(record.motion);
+                        }
+                        mIdleDemoter.onTouchStart(record);
+                        record.initialX = record.layoutParams.x;
+                        record.initialY = record.layoutParams.y;
+                        record.initialTouchX = event.getRawX();
+                        record.initialTouchY = event.getRawY();
+                        record.dropZone = DropZoneIndex.NO_ZONE;
+                        record.coalescedMoveCount = 0;
+                        record.isTouchPredicting = false;
+                        record.isPositionPredicted = false;
+                        if (mIsTouchPredictionEnabled) {
+                            startTouchPrediction(record, event);
+                        }
+
+                        // The only view tree query of the gesture, after this the on-screen
+                        // position is derived from the layout params.
+                        v.getLocationOnScreen(mTempLocation);
+                        record.screenOffsetX = mTempLocation[0] - record.initialX;
+                        record.screenOffsetY = mTempLocation[1] - record.initialY;
+                        mDropZones.prepare(v);
+
+                        record.gestureDetector.onDown(event.getRawX(), event.getRawY(), event.getEventTime());
+                        scheduleGestureTimeout(record);
+                        return true;
+                    case MotionEvent.ACTION_MOVE:
+                        if (record.isTouchPredicting) {
+                            addTouchSamples(record.touchPredictor, event);
+                        }
+                        boolean isDragging = record.gestureDetector.onMove(event.getRawX(), event.getRawY(), event.getEventTime());
+                        scheduleGestureTimeout(record);
+                        if (!isDragging) {
+                            // Still within the touch slop, could be a tap or long press.
+                            return true;
+                        }
+                        float touchX = event.getRawX();
+                        float touchY = event.getRawY();
+                        if (record.isTouchPredicting) {
+                            // Event times are in the uptime base, which is the same clock as frame times.
+                            long nextFrameNanos = mFrameScheduler.getNextFrameTimeNanos(
+                                    event.getEventTime() * NANOS_PER_MILLI, mFrameIntervalNanos);
+                            record.touchPredictor.predict(nextFrameNanos / NANOS_PER_MILLI);
+                            touchX = record.touchPredictor.getPredictedX();
+                            touchY = record.touchPredictor.getPredictedY();
+                            record.isPositionPredicted = true;
+                        }
+                        record.layoutParams.x = DragMath.dragPosition(record.initialX, record.initialTouchX, touchX);
+                        record.layoutParams.y = DragMath.dragPosition(record.initialY, record.initialTouchY, touchY);
+                        mDropZones.updateDropZone(record);
+
+                        if (record.metrics != null) {
+                            // Event times are in the uptime base, which is the same clock as `System.nanoTime()`.
+                            record.metrics.onLayoutRequested(event.getEventTime() * NANOS_PER_MILLI);
+                        }
+                        mMoveThrottle.move(record, event.getEventTime() * NANOS_PER_MILLI);
+                        return true;
+                    case MotionEvent.ACTION_UP:
+                        mMoveThrottle.stop(record);
+                        if (record.isPositionPredicted && record.dropZone == DropZoneIndex.NO_ZONE) {
+                            // Land exactly under the finger, not where it was headed.
+                            record.layoutParams.x = DragMath.dragPosition(record.initialX, record.initialTouchX, event.getRawX());
+                            record.layoutParams.y = DragMath.dragPosition(record.initialY, record.initialTouchY, event.getRawY());
+                            mWindows.update(record);
+                        }
+                        record.isTouchPredicting = false;
+                        record.isPositionPredicted = false;
+                        endDragLayer(record);
+                        mIdleDemoter.onTouchEnd(record);
+                        if (record.dropZone != DropZoneIndex.NO_ZONE) {
+                            record.gestureDetector.onCancel();
+                            scheduleGestureTimeout(record);
+                            onDropOverlay(record, record.dropZone);
+                        } else {
+                            record.gestureDetector.onUp(event.getRawX(), event.getRawY(), event.getEventTime());
+                            scheduleGestureTimeout(record);
+                        }
+                        if (mOverlays.get(v) == record) {
+                            onOverlaySettled(record);
+                        }
+
+                        hideRemoveView();
+                        return true;
+                    case MotionEvent.ACTION_CANCEL:
+                        mMoveThrottle.stop(record);
+                        record.isTouchPredicting = false;
+                        record.isPositionPredicted = false;
+                        endDragLayer(record);
+                        mIdleDemoter.onTouchEnd(record);
+                        record.gestureDetector.onCancel();
+                        scheduleGestureTimeout(record);
+                        hideRemoveView();
+                        return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Returns a gesture detector that reports the gestures of this overlay to its listeners. */
+    private OverlayGestureDetector newGestureDetector(final OverlayRecord record) {
+        ViewConfiguration configuration = ViewConfiguration.get(mContext);
+        return new OverlayGestureDetector(configuration.getScaledTouchSlop(),
+                configuration.getScaledDoubleTapSlop(),
+                ViewConfiguration.getLongPressTimeout(),
+                ViewConfiguration.getDoubleTapTimeout(),
+                configuration.getScaledMinimumFlingVelocity(),
+                configuration.getScaledMaximumFlingVelocity(),
+                new OverlayGestureDetector.Callback() {
+                    @Override
+                    public void onDragStart() {
+                        mDragLayer.begin(record);
+                        if (record.moveRatePolicy == GlobalOverlay.MOVE_RATE_ADAPTIVE) {
+                            updateFrameInterval();
+                            mMoveThrottle.start(record, mFrameIntervalNanos);
+                        }
+                        showRemoveView();
+                    }
+
+                    @Override
+                    public boolean onLongPress() {
+                        return record.onLongClickListener != null && record.onLongClickListener.onLongClick(record.view);
+                    }
+
+                    @Override
+                    public void onClick() {
+                        if (record.onClickListener != null) {
+                            record.onClickListener.onClick(record.view);
+                        }
+                    }
+
+                    @Override
+                    public void onDoubleTap() {
+                        if (record.onOverlayGestureListener != null) {
+                            record.onOverlayGestureListener.onDoubleTap(record.view);
+                        }
+                    }
+
+                    @Override
+                    public void onDragEnd(float velocityX, float velocityY) {
+                        if (mOverlapSolver != null) {
+                            startOverlapFreeMotion(record, velocityX, velocityY);
+                        } else if (mIsSnapToEdgeEnabled) {
+                            startSnapToEdge(record, velocityX, velocityY);
+                        }
+                    }
+
+                    @Override
+                    public void onFling(float velocityX, float velocityY) {
+                        if (record.onOverlayGestureListener != null) {
+                            record.onOverlayGestureListener.onFling(record.view, velocityX, velocityY);
+                        }
+                    }
+                });
+    }
+
+    /** Makes sure the timeout runnable of this overlay is posted for exactly the pending decision
+     * of its gesture detector, if any. A long press or double tap only ever needs one message,
+     * since the timeout only moves when an event changes the decision. */
+    private void scheduleGestureTimeout(OverlayRecord record) {
+        long timeoutTime = record.gestureDetector.getTimeoutTime();
+        if (timeoutTime == record.gestureTimeoutTime) {
+            return;
+        }
+        if (record.gestureTimeoutTime != OverlayGestureDetector.NO_TIMEOUT) {
+            mFrameScheduler.getHandler().removeCallbacks(record.gestureTimeoutRunnable);
+        }
+        record.gestureTimeoutTime = timeoutTime;
+        if (timeoutTime != OverlayGestureDetector.NO_TIMEOUT) {
+            // Event times are in the uptime base, which is what the handler schedules in.
+            mFrameScheduler.getHandler().postAtTime(record.gestureTimeoutRunnable, timeoutTime);
+        }
+    }
+
+    private Runnable newGestureTimeoutRunnable(final OverlayRecord record) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                record.gestureTimeoutTime = OverlayGestureDetector.NO_TIMEOUT;
+                record.gestureDetector.onTimeout(SystemClock.uptimeMillis());
+                scheduleGestureTimeout(record);
+            }
+        };
+    }
+
+    /** Returns the default layout params for the overlay views. */
+    static WindowManager.LayoutParams newWindowManagerLayoutParams() {
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.TYPE_PHONE,
+//                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
+                PixelFormat.TRANSLUCENT);
+        params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.START;
+        return params;
+    }
+
+    private static WindowManager.LayoutParams newWindowManagerLayoutParamsForRemoveView() {
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.TYPE_PHONE,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                        WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE |
+                        WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
+                PixelFormat.TRANSLUCENT);
+        params.gravity = Gravity.CENTER_HORIZONTAL | Gravity.BOTTOM;
+        params.y = 56;
+        return params;
+    }
+
+    /** An overlay from `addOverlayViewAsync()` while its view is being created. */
+    private static final class PendingOverlay {
+        View view;
+        View.OnClickListener onClickListener;
+        View.OnLongClickListener onLongClickListener;
+        GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener;
+        GlobalOverlay.OnOverlayAddedListener onOverlayAddedListener;
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.danialgoodwin.globaloverlay;
+
+/** Turns the touch events of an overlay into clicks, long presses, double taps, drags and flings.
+ *
+ * Everything is driven by the event timestamps. While a long press or double tap is still
+ * undecided, {@link #getTimeoutTime()} tells when to call {@link #onTimeout(long)}, so the caller
+ * only has to wake up once per pending decision rather than on every frame. Movement is compared
+ * to the touch slop as a 2D distance, so a horizontal drag is never taken for a click. Nothing is
+ * allocated per event.
+ *
+ * All times are in milliseconds in the same time base as `MotionEvent.getEventTime()`. */
+final class OverlayGestureDetector {
+
+    /** Interface definition for the gestures this detects. */
+    interface Callback {
+        /** The touch has moved past the touch slop, the following moves are a drag. */
+        void onDragStart();
+
+        /** The touch has been held in place for the long press timeout.
+         * @return true if the long press was consumed, in which case there won't be a click */
+        boolean onLongPress();
+
+        /** A single tap. If double taps are enabled, this is only called once the double tap
+         * timeout has passed without a second tap. */
+        void onClick();
+
+        /** A second tap, close enough in time and place to the first one. */
+        void onDoubleTap();
+
+        /** A drag ended, whether or not it was a fling.
+         * @param velocityX in pixels per second
+         * @param velocityY in pixels per second */
+        void onDragEnd(float velocityX, float velocityY);
+
+        /** A drag ended while still moving fast enough to count as a fling. Called after
+         * {@link #onDragEnd(float, float)}.
+         * @param velocityX in pixels per second
+         * @param velocityY in pixels per second */
+        void onFling(float velocityX, float velocityY);
+    }
+
+    /** Returned by {@link #getTimeoutTime()} when nothing is waiting for time to pass. */
+    static final long NO_TIMEOUT = Long.MIN_VALUE;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_PRESSED = 1;
+    private static final int STATE_DRAGGING = 2;
+
+    private final int mTouchSlopSquare;
+    private final int mDoubleTapSlopSquare;
+    private final long mLongPressTimeout;
+    private final long mDoubleTapTimeout;
+    private final int mMinimumFlingVelocity;
+    private final int mMaximumFlingVelocity;
+    private final Callback mCallback;
+    private final VelocityEstimator mVelocityEstimator = new VelocityEstimator();
+
+    private int mState = STATE_IDLE;
+    private float mDownX;
+    private float mDownY;
+    private long mDownTime;
+    private boolean mIsLongPressFired;
+    private boolean mIsLongPressConsumed;
+
+    private boolean mIsDoubleTapEnabled;
+    private boolean mIsSecondTap;
+    private boolean mHasPendingClick;
+    private float mPendingClickX;
+    private float mPendingClickY;
+    private long mPendingClickTime;
+
+    /** @param touchSlop distance in pixels a touch can move before it's a drag
+     * @param doubleTapSlop distance in pixels between the first and second tap of a double tap
+     * @param longPressTimeout time in milliseconds until a held touch is a long press
+     * @param doubleTapTimeout time in milliseconds between the first tap and second touch of a double tap
+     * @param minimumFlingVelocity speed in pixels per second, at the end of a drag, to be a fling
+     * @param maximumFlingVelocity speed in pixels per second that fling velocities are clamped to
+     * @param callback get notified of the detected gestures */
+    OverlayGestureDetector(int touchSlop, int doubleTapSlop, long longPressTimeout, long doubleTapTimeout,
+            int minimumFlingVelocity, int maximumFlingVelocity, Callback callback) {
+        mTouchSlopSquare = touchSlop * touchSlop;
+        mDoubleTapSlopSquare = doubleTapSlop * doubleTapSlop;
+        mLongPressTimeout = longPressTimeout;
+        mDoubleTapTimeout = doubleTapTimeout;
+        mMinimumFlingVelocity = minimumFlingVelocity;
+        mMaximumFlingVelocity = maximumFlingVelocity;
+        mCallback = callback;
+    }
+
+    /** Set whether double taps are detected. When enabled, single clicks are delayed by the double
+     * tap timeout, so only enable this when something listens for double taps. */
+    void setDoubleTapEnabled(boolean isEnabled) {
+        mIsDoubleTapEnabled = isEnabled;
+        if (!isEnabled && mHasPendingClick) {
+            mHasPendingClick = false;
+            mCallback.onClick();
+        }
+    }
+
+    void onDown(float x, float y, long eventTime) {
+        mIsSecondTap = false;
+        if (mHasPendingClick) {
+            mHasPendingClick = false;
+            if (eventTime - mPendingClickTime <= mDoubleTapTimeout
+                    && distanceSquare(x, y, mPendingClickX, mPendingClickY) <= mDoubleTapSlopSquare) {
+                mIsSecondTap = true;
+            } else {
+                mCallback.onClick();
+            }
+        }
+
+        mState = STATE_PRESSED;
+        mDownX = x;
+        mDownY = y;
+        mDownTime = eventTime;
+        mIsLongPressFired = false;
+        mIsLongPressConsumed = false;
+        mVelocityEstimator.clear();
+        mVelocityEstimator.addSample(x, y, eventTime);
+    }
+
+    /** @return true if the touch is being dragged */
+    boolean onMove(float x, float y, long eventTime) {
+        mVelocityEstimator.addSample(x, y, eventTime);
+        if (mState == STATE_PRESSED) {
+            checkLongPress(eventTime);
+            if (distanceSquare(x, y, mDownX, mDownY) > mTouchSlopSquare) {
+                mState = STATE_DRAGGING;
+                mIsSecondTap = false;
+                mCallback.onDragStart();
+            }
+        }
+        return mState == STATE_DRAGGING;
+    }
+
+    void onUp(float x, float y, long eventTime) {
+        mVelocityEstimator.addSample(x, y, eventTime);
+        if (mState == STATE_DRAGGING) {
+            mVelocityEstimator.computeVelocity();
+            float velocityX = mVelocityEstimator.getVelocityX();
+            float velocityY = mVelocityEstimator.getVelocityY();
+            float speed = (float) Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+            if (speed > mMaximumFlingVelocity) {
+                float scale = mMaximumFlingVelocity / speed;
+                velocityX *= scale;
+                velocityY *= scale;
+            }
+            mState = STATE_IDLE;
+            mCallback.onDragEnd(velocityX, velocityY);
+            if (speed >= mMinimumFlingVelocity && speed > 0) {
+                mCallback.onFling(velocityX, velocityY);
+            }
+        } else if (mState == STATE_PRESSED) {
+            checkLongPress(eventTime);
+            if (!mIsLongPressConsumed) {
+                if (mIsSecondTap) {
+                    mIsSecondTap = false;
+                    mCallback.onDoubleTap();
+                } else if (mIsDoubleTapEnabled) {
+                    mHasPendingClick = true;
+                    mPendingClickX = x;
+                    mPendingClickY = y;
+                    mPendingClickTime = eventTime;
+                } else {
+                    mCallback.onClick();
+                }
+            }
+        }
+        mState = STATE_IDLE;
+    }
+
+    /** The gesture was cancelled or handled elsewhere, e.g. the overlay was dropped onto a drop
+     * zone. Nothing more is reported for it. */
+    void onCancel() {
+        mState = STATE_IDLE;
+        mIsSecondTap = false;
+        mHasPendingClick = false;
+    }
+
+    /** Let time pass without a touch event, to detect a long press of a touch held still, or to
+     * confirm a single click once the double tap timeout has passed.
+     * @param timeMillis the current time, at or after {@link #getTimeoutTime()} */
+    void onTimeout(long timeMillis) {
+        if (mState == STATE_PRESSED) {
+            checkLongPress(timeMillis);
+        }
+        if (mHasPendingClick && timeMillis - mPendingClickTime > mDoubleTapTimeout) {
+            mHasPendingClick = false;
+            mCallback.onClick();
+        }
+    }
+
+    /** Return the time at which {@link #onTimeout(long)} should be called if no other event comes
+     * first, or {@link #NO_TIMEOUT} if there is no pending decision. This only changes on events,
+     * so it only needs to be checked after each of them and after a timeout. */
+    long getTimeoutTime() {
+        if (mState == STATE_PRESSED && !mIsLongPressFired) {
+            return mDownTime + mLongPressTimeout;
+        }
+        if (mHasPendingClick) {
+            // The click is only confirmed once the timeout has been exceeded, see onDown().
+            return mPendingClickTime + mDoubleTapTimeout + 1;
+        }
+        return NO_TIMEOUT;
+    }
+
+    boolean isDragging() {
+        return mState == STATE_DRAGGING;
+    }
+
+    private void checkLongPress(long timeMillis) {
+        if (!mIsLongPressFired && timeMillis - mDownTime >= mLongPressTimeout) {
+            mIsLongPressFired = true;
+            mIsLongPressConsumed = mCallback.onLongPress();
+        }
+    }
+
+    private static float distanceSquare(float x1, float y1, float x2, float y2) {
+        float dx = x1 - x2;
+        float dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+
+}
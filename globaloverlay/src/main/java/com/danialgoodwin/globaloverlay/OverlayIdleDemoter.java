@@ -0,0 +1,319 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.ImageView;
+
+/** Makes overlays cheaper while nobody touches them, see
+ * {@link GlobalOverlay#setOverlayIdlePolicy(View, int, long)}. An idle overlay can shrink, dim,
+ * tuck half behind the nearest screen edge, or be replaced by a bitmap of itself, and is restored
+ * as soon as it's touched.
+ *
+ * The idle timers of all overlays share one {@link TimerWheel}, ticked by a single runnable on
+ * the main thread that only runs while a timer is waiting. Touches re-arm an overlay's timer
+ * without posting anything.
+ *
+ * Dimming uses the window alpha, which the system compositor applies for free. The bitmap is
+ * shown in a proxy window that doesn't take touches, while the live view stays in place,
+ * transparent, to receive them. Its bitmap comes from the {@link SnapshotBitmapPool} that drag
+ * snapshots use, and goes back to it when the overlay wakes up or is removed. Composited overlays are dimmed with the view alpha and never
+ * swapped for a bitmap. */
+final class OverlayIdleDemoter implements TimerWheel.Callback {
+
+    private static final long TICK_MILLIS = 500;
+    /** One turn of the wheel is half a minute, longer timeouts take a few turns. */
+    private static final int SLOT_COUNT = 64;
+
+    private static final float IDLE_SCALE = 0.6f;
+    private static final float IDLE_ALPHA = 0.4f;
+
+    /** The idle policy and demotion state of one overlay. */
+    static final class IdleState {
+        final TimerWheel.Timer timer;
+        int flags;
+        long timeoutMillis;
+        boolean isIdle;
+        /** True while the overlay is touched, which keeps it from going idle. */
+        boolean isHeld;
+
+        // What the demotion changed, to be restored.
+        int xBeforeIdle;
+        int windowFlagsBeforeIdle;
+        float alphaBeforeIdle;
+        float scaleXBeforeIdle;
+        float scaleYBeforeIdle;
+        float viewAlphaBeforeSnapshot;
+        ImageView proxyView;
+        WindowManager.LayoutParams proxyLayoutParams;
+        Bitmap bitmap;
+
+        IdleState(OverlayRecord record) {
+            timer = new TimerWheel.Timer(record);
+        }
+    }
+
+    private final Context mContext;
+    private final WindowManager mWindowManager;
+    private final WindowSink mWindowSink;
+    private final Handler mHandler;
+    private final OverlayWindows mWindows;
+    private final SnapshotBitmapPool mBitmapPool;
+    private final TimerWheel mWheel = new TimerWheel(SLOT_COUNT, TICK_MILLIS, this);
+    private boolean mIsTicking;
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mWheel.advance(SystemClock.uptimeMillis());
+            if (mWheel.isEmpty()) {
+                mIsTicking = false;
+            } else {
+                mHandler.postDelayed(this, TICK_MILLIS);
+            }
+        }
+    };
+    private final DisplayMetrics mDisplayMetrics = new DisplayMetrics();
+    private final Canvas mCanvas = new Canvas();
+
+    OverlayIdleDemoter(Context context, WindowManager windowManager, WindowSink windowSink,
+                       Handler handler, SnapshotBitmapPool bitmapPool, OverlayWindows windows) {
+        mContext = context;
+        mWindowManager = windowManager;
+        mWindowSink = windowSink;
+        mHandler = handler;
+        mBitmapPool = bitmapPool;
+        mWindows = windows;
+    }
+
+    /** Set how this overlay is demoted after this long without a touch, or stop demoting it if
+     * the flags are 0. An overlay that's already idle is restored first. */
+    void setPolicy(OverlayRecord record, int flags, long timeoutMillis) {
+        if (flags == 0) {
+            stop(record, true);
+            return;
+        }
+        IdleState state = record.idleState;
+        if (state == null) {
+            state = new IdleState(record);
+            record.idleState = state;
+        } else if (state.isIdle) {
+            restore(record, true);
+        }
+        state.flags = flags;
+        state.timeoutMillis = timeoutMillis;
+        if (!state.isHeld) {
+            schedule(state);
+        }
+    }
+
+    /** A gesture on this overlay started, restore it if it's idle and keep it awake until the
+     * gesture ends. Must come before the gesture reads the layout params. */
+    void onTouchStart(OverlayRecord record) {
+        IdleState state = record.idleState;
+        if (state != null) {
+            state.isHeld = true;
+            if (state.isIdle) {
+                restore(record, true);
+            }
+        }
+    }
+
+    /** A gesture on this overlay ended, start waiting for it to go idle again. */
+    void onTouchEnd(OverlayRecord record) {
+        IdleState state = record.idleState;
+        if (state != null) {
+            state.isHeld = false;
+            schedule(state);
+        }
+    }
+
+    /** Restore this overlay if it's idle, e.g. because the app moves it, and start waiting for
+     * it to go idle again. */
+    void wake(OverlayRecord record) {
+        IdleState state = record.idleState;
+        if (state != null) {
+            if (state.isIdle) {
+                restore(record, true);
+            }
+            if (!state.isHeld) {
+                schedule(state);
+            }
+        }
+    }
+
+    /** Stop demoting this overlay and restore it if it's idle.
+     * @param isLayoutApplied false if the overlay is being removed, so its window doesn't need
+     *                        the restored layout params */
+    void stop(OverlayRecord record, boolean isLayoutApplied) {
+        IdleState state = record.idleState;
+        if (state == null) {
+            return;
+        }
+        mWheel.cancel(state.timer);
+        if (state.isIdle) {
+            restore(record, isLayoutApplied);
+        }
+        record.idleState = null;
+    }
+
+    /** Drop the proxy views of overlays that aren't idle, they're created again when needed.
+     * When memory is low, also demote every overlay with an idle policy right away. */
+    void trimMemory(OverlayRegistry overlays, boolean isMemoryLow) {
+        for (int i = 0, size = overlays.size(); i < size; i++) {
+            IdleState state = overlays.getAt(i).idleState;
+            if (state != null && !state.isIdle) {
+                state.proxyView = null;
+                state.proxyLayoutParams = null;
+            }
+        }
+        if (isMemoryLow) {
+            for (int i = 0, size = overlays.size(); i < size; i++) {
+                demoteNow(overlays.getAt(i));
+            }
+        }
+    }
+
+    /** Demote this overlay right away if it has an idle policy and isn't idle or touched. */
+    private void demoteNow(OverlayRecord record) {
+        IdleState state = record.idleState;
+        if (state == null || state.isIdle || state.isHeld
+                || (record.motion != null && record.motion.isRunning())) {
+            return;
+        }
+        mWheel.cancel(state.timer);
+        demote(record);
+    }
+
+    void destroy() {
+        mHandler.removeCallbacks(mTickRunnable);
+        mIsTicking = false;
+    }
+
+    @Override
+    public void onTimerExpired(TimerWheel.Timer timer) {
+        OverlayRecord record = (OverlayRecord) timer.tag;
+        IdleState state = record.idleState;
+        if (state == null || state.isHeld) {
+            return;
+        }
+        if (record.motion != null && record.motion.isRunning()) {
+            // Still settling after a fling, wait for another timeout.
+            schedule(state);
+            return;
+        }
+        demote(record);
+    }
+
+    private void schedule(IdleState state) {
+        mWheel.schedule(state.timer, SystemClock.uptimeMillis(), state.timeoutMillis);
+        if (!mIsTicking) {
+            mIsTicking = true;
+            mHandler.postDelayed(mTickRunnable, TICK_MILLIS);
+        }
+    }
+
+    private void demote(OverlayRecord record) {
+        IdleState state = record.idleState;
+        View view = record.view;
+        WindowManager.LayoutParams params = record.layoutParams;
+        state.isIdle = true;
+        boolean isLayoutChanged = false;
+
+        if ((state.flags & GlobalOverlay.IDLE_FLAG_TUCK) != 0) {
+            mWindowManager.getDefaultDisplay().getMetrics(mDisplayMetrics);
+            int width = view.getWidth();
+            state.xBeforeIdle = params.x;
+            params.x = params.x + width / 2 < mDisplayMetrics.widthPixels / 2
+                    ? -width / 2 : mDisplayMetrics.widthPixels - width / 2;
+            if (!record.isComposited) {
+                // Windows are kept inside the screen without this flag.
+                state.windowFlagsBeforeIdle = params.flags;
+                params.flags |= WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS;
+            }
+            isLayoutChanged = true;
+        }
+        if ((state.flags & GlobalOverlay.IDLE_FLAG_DIM) != 0) {
+            if (record.isComposited) {
+                state.alphaBeforeIdle = view.getAlpha();
+                view.setAlpha(state.alphaBeforeIdle * IDLE_ALPHA);
+            } else {
+                state.alphaBeforeIdle = params.alpha;
+                params.alpha *= IDLE_ALPHA;
+                isLayoutChanged = true;
+            }
+        }
+        if ((state.flags & GlobalOverlay.IDLE_FLAG_SHRINK) != 0) {
+            state.scaleXBeforeIdle = view.getScaleX();
+            state.scaleYBeforeIdle = view.getScaleY();
+            view.setScaleX(state.scaleXBeforeIdle * IDLE_SCALE);
+            view.setScaleY(state.scaleYBeforeIdle * IDLE_SCALE);
+        }
+        if (isLayoutChanged) {
+            mWindows.updateNow(record);
+        }
+
+        if ((state.flags & GlobalOverlay.IDLE_FLAG_SNAPSHOT) != 0 && !record.isComposited
+                && record.windowView == view && view.getWidth() > 0 && view.getHeight() > 0) {
+            state.bitmap = mBitmapPool.acquire(view.getWidth(), view.getHeight());
+            mCanvas.setBitmap(state.bitmap);
+            view.draw(mCanvas);
+            mCanvas.setBitmap(null);
+            if (state.proxyView == null) {
+                state.proxyView = new ImageView(mContext);
+                state.proxyLayoutParams = new WindowManager.LayoutParams();
+            }
+            state.proxyView.setImageBitmap(state.bitmap);
+            state.proxyView.setScaleX(view.getScaleX());
+            state.proxyView.setScaleY(view.getScaleY());
+            state.proxyLayoutParams.copyFrom(params);
+            state.proxyLayoutParams.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+            mWindowSink.addView(state.proxyView, state.proxyLayoutParams);
+            state.viewAlphaBeforeSnapshot = view.getAlpha();
+            view.setAlpha(0);
+        }
+    }
+
+    private void restore(OverlayRecord record, boolean isLayoutApplied) {
+        IdleState state = record.idleState;
+        View view = record.view;
+        WindowManager.LayoutParams params = record.layoutParams;
+        state.isIdle = false;
+        boolean isLayoutChanged = false;
+
+        if (state.bitmap != null) {
+            view.setAlpha(state.viewAlphaBeforeSnapshot);
+            mWindowSink.removeView(state.proxyView);
+            state.proxyView.setImageBitmap(null);
+            mBitmapPool.release(state.bitmap);
+            state.bitmap = null;
+        }
+        if ((state.flags & GlobalOverlay.IDLE_FLAG_SHRINK) != 0) {
+            view.setScaleX(state.scaleXBeforeIdle);
+            view.setScaleY(state.scaleYBeforeIdle);
+        }
+        if ((state.flags & GlobalOverlay.IDLE_FLAG_DIM) != 0) {
+            if (record.isComposited) {
+                view.setAlpha(state.alphaBeforeIdle);
+            } else {
+                params.alpha = state.alphaBeforeIdle;
+                isLayoutChanged = true;
+            }
+        }
+        if ((state.flags & GlobalOverlay.IDLE_FLAG_TUCK) != 0) {
+            params.x = state.xBeforeIdle;
+            if (!record.isComposited) {
+                params.flags = state.windowFlagsBeforeIdle;
+            }
+            isLayoutChanged = true;
+        }
+        if (isLayoutChanged && isLayoutApplied) {
+            mWindows.updateNow(record);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.LayoutInflater;
+import android.view.View;
+
+/** Creates overlay views on a background thread, so that inflating and measuring rich layouts
+ * doesn't block the main thread. The views are handed back on the main thread, not attached yet.
+ *
+ * The background thread only exists while there are views to create, so an idle inflater holds
+ * no thread. */
+final class OverlayInflater {
+
+    private static final String THREAD_NAME = "GlobalOverlayInflater";
+
+    /** Interface definition for receiving a created view. */
+    interface Callback {
+        /** Called on the main thread, unless the inflater was quit in the meantime.
+         * @param view the created and measured view
+         * @param tag the tag given when the view was requested */
+        void onViewCreated(View view, Object tag);
+    }
+
+    private final Context mContext;
+    private final Handler mMainHandler;
+    private HandlerThread mThread;
+    private Handler mBackgroundHandler;
+    private int mPendingCount;
+    private boolean mIsQuit;
+
+    OverlayInflater(Context context, Handler mainHandler) {
+        mContext = context;
+        mMainHandler = mainHandler;
+    }
+
+    /** Inflate this layout on the background thread. Must be called on the main thread. */
+    void inflate(int layoutResId, Object tag, Callback callback) {
+        create(new LayoutViewFactory(layoutResId), tag, callback);
+    }
+
+    /** Create a view with this factory on the background thread. Must be called on the main thread. */
+    void create(final GlobalOverlay.ViewFactory factory, final Object tag, final Callback callback) {
+        if (mIsQuit) {
+            return;
+        }
+        if (mThread == null) {
+            mThread = new HandlerThread(THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+            mBackgroundHandler = new Handler(mThread.getLooper());
+        }
+        mPendingCount++;
+        mBackgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final View view = factory.onCreateView(mContext);
+                // Overlay windows wrap their content, so this is the same measure pass the window
+                // does first. Text layouts, drawables and the like get loaded here instead of there.
+                int unspecified = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+                view.measure(unspecified, unspecified);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFinished();
+                        if (!mIsQuit) {
+                            callback.onViewCreated(view, tag);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** Stop creating views. Views still being created are dropped without calling back. */
+    void quit() {
+        mIsQuit = true;
+        quitThread();
+    }
+
+    private void onFinished() {
+        mPendingCount--;
+        if (mPendingCount == 0) {
+            quitThread();
+        }
+    }
+
+    private void quitThread() {
+        if (mThread != null) {
+            mThread.quit();
+            mThread = null;
+            mBackgroundHandler = null;
+        }
+    }
+
+    private static final class LayoutViewFactory implements GlobalOverlay.ViewFactory {
+        private final int mLayoutResId;
+
+        LayoutViewFactory(int layoutResId) {
+            mLayoutResId = layoutResId;
+        }
+
+        @SuppressLint("InflateParams")
+        @Override
+        public View onCreateView(Context context) {
+            return LayoutInflater.from(context).inflate(mLayoutResId, null);
+        }
+    }
+
+}
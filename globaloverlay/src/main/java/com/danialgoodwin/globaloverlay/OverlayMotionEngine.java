@@ -0,0 +1,86 @@
+package com.danialgoodwin.globaloverlay;
+
+import java.util.ArrayList;
+
+/** Steps all running {@link SpringMotion}s once per frame and reports each new position at most
+ * once per frame, so an animating overlay never costs more than one layout update per frame.
+ * Frames that don't change the position, e.g. because they started before the motion, aren't
+ * reported at all. Nothing is allocated per frame. */
+final class OverlayMotionEngine {
+
+    /** Interface definition for receiving the animated positions. */
+    interface Listener {
+        /** The motion has a new position for this frame. */
+        void onMotionUpdate(SpringMotion motion, int x, int y);
+
+        /** The motion has settled on its target, after its last update. */
+        void onMotionEnd(SpringMotion motion);
+    }
+
+    private final Listener mListener;
+    private final ArrayList<SpringMotion> mRunningMotions = new ArrayList<SpringMotion>();
+    private boolean mIsInFrame;
+
+    OverlayMotionEngine(Listener listener) {
+        mListener = listener;
+    }
+
+    /** Start stepping this motion on the following frames. It should already be started. A
+     * motion that is still in the list, e.g. cancelled and restarted within a frame, keeps its
+     * entry, which is kept as long as the motion is running once the frame is done. */
+    void add(SpringMotion motion) {
+        if (!motion.isInEngine) {
+            motion.isInEngine = true;
+            mRunningMotions.add(motion);
+        }
+    }
+
+    /** Stop this motion where it is, without reporting its end. */
+    void cancel(SpringMotion motion) {
+        motion.cancel();
+        if (!mIsInFrame && motion.isInEngine) {
+            motion.isInEngine = false;
+            mRunningMotions.remove(motion);
+        }
+    }
+
+    /** Return true if there is a motion to step, i.e. another frame is needed. */
+    boolean isRunning() {
+        return !mRunningMotions.isEmpty();
+    }
+
+    void doFrame(long frameTimeNanos) {
+        // Listeners may cancel or add motions, so removal is done by compacting in place after.
+        mIsInFrame = true;
+        int size = mRunningMotions.size();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            SpringMotion motion = mRunningMotions.get(i);
+            if (motion.isRunning()) {
+                int oldX = motion.getX();
+                int oldY = motion.getY();
+                boolean isRunning = motion.step(frameTimeNanos);
+                if (motion.getX() != oldX || motion.getY() != oldY) {
+                    mListener.onMotionUpdate(motion, motion.getX(), motion.getY());
+                }
+                if (!isRunning) {
+                    mListener.onMotionEnd(motion);
+                }
+            }
+            // Checked after the listeners, which may have cancelled or restarted the motion.
+            if (motion.isRunning()) {
+                mRunningMotions.set(kept++, motion);
+            } else {
+                motion.isInEngine = false;
+            }
+        }
+        for (int i = size, newSize = mRunningMotions.size(); i < newSize; i++) {
+            mRunningMotions.set(kept++, mRunningMotions.get(i));
+        }
+        for (int i = mRunningMotions.size() - 1; i >= kept; i--) {
+            mRunningMotions.remove(i);
+        }
+        mIsInFrame = false;
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.danialgoodwin.globaloverlay;
+
+import java.util.ArrayList;
+
+/** Moves overlays dragged with {@link GlobalOverlay#MOVE_RATE_ADAPTIVE} less often while the main
+ * thread can't keep up with the display. All of them share the frame time measurements of one
+ * {@link MoveRateGovernor} and one frame callback, since they share the thread. */
+final class OverlayMoveThrottle implements FrameScheduler.Callback {
+
+    private final FrameScheduler mFrameScheduler;
+    private final OverlayWindows mWindows;
+    private final MoveRateGovernor mMoveRateGovernor = new MoveRateGovernor();
+    /** Overlays being dragged with the adaptive move rate. */
+    private final ArrayList<OverlayRecord> mDrags = new ArrayList<OverlayRecord>();
+
+    OverlayMoveThrottle(FrameScheduler frameScheduler, OverlayWindows windows) {
+        mFrameScheduler = frameScheduler;
+        mWindows = windows;
+    }
+
+    /** Starts measuring the frame times of the main thread for this drag, if it's the first one. */
+    void start(OverlayRecord record, long frameIntervalNanos) {
+        record.isMoveDeferred = false;
+        record.lastMoveUpdateFrameTimeNanos = 0;
+        if (mDrags.isEmpty()) {
+            mMoveRateGovernor.reset(frameIntervalNanos);
+            mFrameScheduler.postFrameCallback(this);
+        }
+        mDrags.add(record);
+    }
+
+    /** Sends the position held back for this drag, if any, and stops throttling it. */
+    void stop(OverlayRecord record) {
+        if (!mDrags.remove(record)) {
+            return;
+        }
+        if (record.isMoveDeferred) {
+            record.isMoveDeferred = false;
+            mWindows.update(record);
+        }
+        if (mDrags.isEmpty()) {
+            mFrameScheduler.removeFrameCallback(this);
+        }
+    }
+
+    /** Stops throttling this drag without sending anything, e.g. because the overlay is removed. */
+    void cancel(OverlayRecord record) {
+        mDrags.remove(record);
+        record.isMoveDeferred = false;
+    }
+
+    /** Send the position of a dragged overlay, or hold it back for a later frame while it's
+     * throttled and its next update isn't due yet. A held back position is replaced by newer
+     * moves, so only the newest one is sent.
+     * @param eventTimeNanos the time of the move, in the same time base as frame times */
+    void move(OverlayRecord record, long eventTimeNanos) {
+        long updateIntervalNanos = mMoveRateGovernor.getUpdateIntervalNanos();
+        if (!record.isMoveDeferred && (updateIntervalNanos == 0 || !mDrags.contains(record))) {
+            mWindows.updateForMove(record);
+            return;
+        }
+        if (record.isMoveDeferred && record.metrics != null) {
+            record.metrics.onMoveThrottled(updateIntervalNanos);
+        }
+        if (mMoveRateGovernor.isUpdateDue(record.lastMoveUpdateFrameTimeNanos, eventTimeNanos)) {
+            // E.g. the first move after a pause. Waiting for the frame callback would only add latency.
+            record.isMoveDeferred = false;
+            record.lastMoveUpdateFrameTimeNanos = eventTimeNanos;
+            mWindows.updateForMove(record);
+            return;
+        }
+        // Sent by the frame callback once the update is due.
+        record.isMoveDeferred = true;
+    }
+
+    void destroy() {
+        mDrags.clear();
+        mFrameScheduler.removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mMoveRateGovernor.onFrame(frameTimeNanos);
+        for (int i = 0, size = mDrags.size(); i < size; i++) {
+            OverlayRecord record = mDrags.get(i);
+            if (record.isMoveDeferred
+                    && mMoveRateGovernor.isUpdateDue(record.lastMoveUpdateFrameTimeNanos, frameTimeNanos)) {
+                record.isMoveDeferred = false;
+                record.lastMoveUpdateFrameTimeNanos = frameTimeNanos;
+                mWindows.updateNow(record);
+            }
+        }
+        if (!mDrags.isEmpty()) {
+            mFrameScheduler.postFrameCallback(this);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Saves the position and size of overlays in a small binary file, so they come back in the same
+ * place after the service is restarted.
+ *
+ * The file is read once, in one go, when the store is created. Changes are collected on the main
+ * thread and written at most once per {@link #WRITE_DELAY_MILLIS}, on a background thread. Each
+ * write replaces the whole file through a temporary file, so a crash mid-write keeps the old one.
+ *
+ * There is one store per file in the process, shared by everyone using that file, see
+ * {@link #forFile(File, Handler)}. Separate stores would each rewrite the file from their own
+ * entries and drop the other's. All writes go through one background thread, so writes never
+ * race on the temporary file.
+ *
+ * The file is a magic number, a version, the entry count, and then for each entry its id as
+ * modified UTF-8 followed by x, y, width and height as ints. */
+final class OverlayPositionStore {
+    private static final String LOGCAT_TAG = "OverlayPositionStore";
+
+    private static final int MAGIC = 0x474f5650;
+    private static final int VERSION = 1;
+    private static final long WRITE_DELAY_MILLIS = 1000;
+    private static final long WRITE_THREAD_KEEP_ALIVE_SECONDS = 5;
+
+    /** The saved state of one overlay. */
+    static final class Entry {
+        int x;
+        int y;
+        int width;
+        int height;
+    }
+
+    /** The stores of the process by file path. Only used on the main thread. */
+    private static final HashMap<String, OverlayPositionStore> sStores =
+            new HashMap<String, OverlayPositionStore>();
+    /** A single thread for all stores, so writes land in order, which only lives while there are
+     * writes. */
+    private static final ThreadPoolExecutor sWriteExecutor = new ThreadPoolExecutor(0, 1,
+            WRITE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    private final File mFile;
+    private final Handler mMainHandler;
+    private final Executor mWriteExecutor;
+    private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+    private boolean mIsWritePending;
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    /** Use {@link #forFile(File, Handler)} instead, outside of tests.
+     * @param writeExecutor where the file writes run */
+    OverlayPositionStore(File file, Handler mainHandler, Executor writeExecutor) {
+        mFile = file;
+        mMainHandler = mainHandler;
+        mWriteExecutor = writeExecutor;
+        load();
+    }
+
+    /** Return the store of this file, reading the file if it's the first time it's used. Stores
+     * are kept for the life of the process, so a later user sees the latest entries even if they
+     * aren't written yet. Must be called on the main thread.
+     * @param mainHandler the handler of the main thread */
+    static OverlayPositionStore forFile(File file, Handler mainHandler) {
+        String path = file.getAbsolutePath();
+        OverlayPositionStore store = sStores.get(path);
+        if (store == null) {
+            store = new OverlayPositionStore(file, mainHandler, sWriteExecutor);
+            sStores.put(path, store);
+        }
+        return store;
+    }
+
+    /** Return the saved state of the overlay with this id, or null if there is none. */
+    Entry get(String id) {
+        return mEntries.get(id);
+    }
+
+    /** Save the state of the overlay with this id, with the next write. */
+    void put(String id, int x, int y, int width, int height) {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(id, entry);
+        } else if (entry.x == x && entry.y == y && entry.width == width && entry.height == height) {
+            return;
+        }
+        entry.x = x;
+        entry.y = y;
+        entry.width = width;
+        entry.height = height;
+
+        // Every change pushes the write back, so a burst of changes is written once.
+        mMainHandler.removeCallbacks(mWriteRunnable);
+        mMainHandler.postDelayed(mWriteRunnable, WRITE_DELAY_MILLIS);
+        mIsWritePending = true;
+    }
+
+    /** Write any pending changes right away. The background thread stops by itself once it has
+     * nothing left to write. */
+    void flush() {
+        if (mIsWritePending) {
+            mMainHandler.removeCallbacks(mWriteRunnable);
+            write();
+        }
+    }
+
+    private void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+        try {
+            byte[] bytes = readFully(mFile);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            for (int i = 0, count = in.readInt(); i < count; i++) {
+                String id = in.readUTF();
+                Entry entry = new Entry();
+                entry.x = in.readInt();
+                entry.y = in.readInt();
+                entry.width = in.readInt();
+                entry.height = in.readInt();
+                mEntries.put(id, entry);
+            }
+        } catch (IOException e) {
+            Log.w(LOGCAT_TAG, "Ignoring unreadable overlay positions in " + mFile, e);
+            mEntries.clear();
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = in.read(bytes, offset, bytes.length - offset);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                offset += count;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Serializes the entries on the main thread, where they're changed, and hands the bytes to
+     * the background thread for the disk write. */
+    private void write() {
+        mIsWritePending = false;
+        final byte[] bytes;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 + mEntries.size() * 32);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mEntries.size());
+            for (Map.Entry<String, Entry> mapEntry : mEntries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeInt(entry.x);
+                out.writeInt(entry.y);
+                out.writeInt(entry.width);
+                out.writeInt(entry.height);
+            }
+            bytes = buffer.toByteArray();
+        } catch (IOException e) {
+            // Writing to memory doesn't fail.
+            throw new IllegalStateException(e);
+        }
+
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFile(bytes);
+            }
+        });
+    }
+
+    private void writeFile(byte[] bytes) {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(bytes);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(mFile)) {
+                throw new IOException("Could not rename " + tempFile);
+            }
+        } catch (IOException e) {
+            Log.w(LOGCAT_TAG, "Could not save overlay positions to " + mFile, e);
+        }
+    }
+
+}
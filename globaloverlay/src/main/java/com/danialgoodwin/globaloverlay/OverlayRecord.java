@@ -0,0 +1,163 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.view.View;
+import android.view.WindowManager;
+
+/** Everything the library keeps for a single overlay: the view, the exact layout params that were
+ * given to the window manager, the listeners, and the touch state of the current gesture.
+ *
+ * Records are reused for later overlays by {@link OverlayRecyclePool}, so the view is only fixed
+ * while the overlay is attached. */
+final class OverlayRecord {
+
+    static final int NO_SOLVER_ID = -1;
+
+    View view;
+    final WindowManager.LayoutParams layoutParams;
+    /** The view whose window the layout params are sent to: the overlay view, or the snapshot
+     * standing in for it during a snapshot drag. */
+    View windowView;
+    /** The layout params sent with {@link #windowView}: {@link #layoutParams} itself, or the
+     * snapshot's own copy during a snapshot drag. See {@link #getWindowLayoutParams()}. */
+    WindowManager.LayoutParams windowLayoutParams;
+
+    /** True if the overlay is a child of the compositor's host window, rather than its own window. */
+    boolean isComposited;
+    /** The visibility to restore after the overlay was hidden for removal. */
+    int visibilityBeforeRemove;
+
+    View.OnTouchListener onTouchListener;
+    View.OnClickListener onClickListener;
+    View.OnLongClickListener onLongClickListener;
+    GlobalOverlay.OnRemoveOverlayListener onRemoveOverlayListener;
+    GlobalOverlay.OnOverlayGestureListener onOverlayGestureListener;
+    GlobalOverlay.OnUpdateOverlayContentListener onUpdateOverlayContentListener;
+    /** True while the content is waiting for its update on the next frame. */
+    boolean isContentUpdatePending;
+
+    OverlayGestureDetector gestureDetector;
+    /** Posted to the main thread for the pending decision of {@link #gestureDetector}. */
+    Runnable gestureTimeoutRunnable;
+    /** The time {@link #gestureTimeoutRunnable} is posted for, or {@link OverlayGestureDetector#NO_TIMEOUT}. */
+    long gestureTimeoutTime = OverlayGestureDetector.NO_TIMEOUT;
+    /** Created the first time the overlay is animated, then reused. */
+    SpringMotion motion;
+    /** Only set while gesture metrics are enabled. */
+    GestureMetricsRecorder metrics;
+
+    // Touch state for the current gesture.
+    int initialX;
+    int initialY;
+    float initialTouchX;
+    float initialTouchY;
+
+    /** Difference between the on-screen location of the view and its layout params, measured once
+     * per drag so that the on-screen position can be derived from the params afterwards. */
+    int screenOffsetX;
+    int screenOffsetY;
+
+    /** True while the layout params have changes that haven't been sent to the window manager. */
+    boolean isLayoutUpdatePending;
+    /** Number of moves in the current gesture that were merged into another layout update. */
+    int coalescedMoveCount;
+
+    /** Created the first time the overlay is dragged with touch prediction, then reused. */
+    TouchPredictor touchPredictor;
+    /** True while the current gesture is fed to {@link #touchPredictor}. */
+    boolean isTouchPredicting;
+    /** True while the layout params are at a predicted position rather than under the finger. */
+    boolean isPositionPredicted;
+
+    /** The drag mode of the current drag, see {@link OverlayDragLayer}. */
+    int activeDragMode = GlobalOverlay.DRAG_MODE_LIVE;
+    int layerTypeBeforeDrag;
+    float alphaBeforeDrag;
+
+    /** One of {@link GlobalOverlay#MOVE_RATE_FULL} or {@link GlobalOverlay#MOVE_RATE_ADAPTIVE}. */
+    int moveRatePolicy = GlobalOverlay.MOVE_RATE_FULL;
+    /** True while a drag move is held back by the adaptive move rate, see {@link MoveRateGovernor}. */
+    boolean isMoveDeferred;
+    /** Time of the last layout update of the current drag under the adaptive move rate, either a
+     * frame time or the time of the move that was sent right away. */
+    long lastMoveUpdateFrameTimeNanos;
+
+    /** The id of its box in the {@link OverlapSolver}, while overlap avoidance is enabled. */
+    int solverId = NO_SOLVER_ID;
+
+    /** Only set while the overlay has an idle policy. */
+    OverlayIdleDemoter.IdleState idleState;
+
+    /** The id its position is saved under, or null if it isn't saved. */
+    String persistentId;
+
+    /** Index of the drop zone the overlay is currently over, or {@link DropZoneIndex#NO_ZONE}. */
+    int dropZone = DropZoneIndex.NO_ZONE;
+
+    OverlayRecord(View view, WindowManager.LayoutParams layoutParams) {
+        this.view = view;
+        this.layoutParams = layoutParams;
+        this.windowView = view;
+        this.windowLayoutParams = layoutParams;
+    }
+
+    /** Take this record back to the state of a new one, without a view, ready for reuse. The
+     * layout params, touch listener, gesture detector, timeout runnable and motion are kept. */
+    void reset() {
+        view = null;
+        windowView = null;
+        windowLayoutParams = layoutParams;
+        layoutParams.x = 0;
+        layoutParams.y = 0;
+        layoutParams.width = WindowManager.LayoutParams.WRAP_CONTENT;
+        layoutParams.height = WindowManager.LayoutParams.WRAP_CONTENT;
+        isComposited = false;
+        onClickListener = null;
+        onLongClickListener = null;
+        onRemoveOverlayListener = null;
+        onOverlayGestureListener = null;
+        onUpdateOverlayContentListener = null;
+        isContentUpdatePending = false;
+        gestureDetector.onCancel();
+        gestureDetector.setDoubleTapEnabled(false);
+        metrics = null;
+        isLayoutUpdatePending = false;
+        coalescedMoveCount = 0;
+        isTouchPredicting = false;
+        isPositionPredicted = false;
+        activeDragMode = GlobalOverlay.DRAG_MODE_LIVE;
+        moveRatePolicy = GlobalOverlay.MOVE_RATE_FULL;
+        isMoveDeferred = false;
+        dropZone = DropZoneIndex.NO_ZONE;
+        persistentId = null;
+        idleState = null;
+        solverId = NO_SOLVER_ID;
+    }
+
+    /** Return the layout params to send with {@link #windowView}, moved to the position in
+     * {@link #layoutParams} if they are a separate copy. */
+    WindowManager.LayoutParams getWindowLayoutParams() {
+        if (windowLayoutParams != layoutParams) {
+            windowLayoutParams.x = layoutParams.x;
+            windowLayoutParams.y = layoutParams.y;
+        }
+        return windowLayoutParams;
+    }
+
+    /** Return the x position of the center of the overlay on screen. Only valid during a drag. */
+    int getScreenCenterX() {
+        return DragMath.centerOf(layoutParams.x, screenOffsetX, view.getWidth());
+    }
+
+    /** Return the y position of the center of the overlay on screen. Only valid during a drag. */
+    int getScreenCenterY() {
+        return DragMath.centerOf(layoutParams.y, screenOffsetY, view.getHeight());
+    }
+
+    /** Move the layout params so that the center of the overlay is at this point on screen. Only
+     * valid during a drag. */
+    void setScreenCenter(int x, int y) {
+        layoutParams.x = DragMath.positionForCenter(x, screenOffsetX, view.getWidth());
+        layoutParams.y = DragMath.positionForCenter(y, screenOffsetY, view.getHeight());
+    }
+
+}
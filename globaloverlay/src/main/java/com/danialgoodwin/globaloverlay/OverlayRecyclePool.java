@@ -0,0 +1,88 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/** Reuses what adding an overlay allocates, for workloads that add and remove overlays all the
+ * time, e.g. notification bubbles.
+ *
+ * Records are reused with their layout params, touch listener, gesture detector and timeout
+ * runnable, which don't depend on the view. Overlay views are only reused when the app hands
+ * them back, keyed by an app-defined view type. Each type holds at most a maximum number of
+ * views, the oldest view of a type is evicted when a new one doesn't fit. */
+final class OverlayRecyclePool {
+
+    private static final int MAX_RECORDS = 8;
+    private static final int DEFAULT_MAX_VIEWS_PER_TYPE = 5;
+
+    private final ArrayList<OverlayRecord> mRecords = new ArrayList<OverlayRecord>(MAX_RECORDS);
+    private final SparseArray<ViewTypePool> mViewTypePools = new SparseArray<ViewTypePool>();
+
+    /** Return a reset record ready for a new overlay view, or null if there's none to reuse. */
+    OverlayRecord obtainRecord() {
+        int size = mRecords.size();
+        return size > 0 ? mRecords.remove(size - 1) : null;
+    }
+
+    /** Keep the record of a removed overlay for the next overlay, if there's room. */
+    void recycleRecord(OverlayRecord record) {
+        record.reset();
+        if (mRecords.size() < MAX_RECORDS) {
+            mRecords.add(record);
+        }
+    }
+
+    /** Return the most recently recycled view of this type, or null if there is none. */
+    View obtainView(int viewType) {
+        ViewTypePool pool = mViewTypePools.get(viewType);
+        if (pool == null || pool.views.isEmpty()) {
+            return null;
+        }
+        return pool.views.remove(pool.views.size() - 1);
+    }
+
+    void recycleView(View view, int viewType) {
+        ViewTypePool pool = getViewTypePool(viewType);
+        if (pool.maxCount == 0) {
+            return;
+        }
+        if (pool.views.size() >= pool.maxCount) {
+            pool.views.remove(0);
+        }
+        pool.views.add(view);
+    }
+
+    /** Set how many views of this type are kept, evicting the oldest ones if there are more. */
+    void setMaxRecycledViews(int viewType, int maxCount) {
+        ViewTypePool pool = getViewTypePool(viewType);
+        pool.maxCount = maxCount;
+        while (pool.views.size() > maxCount) {
+            pool.views.remove(0);
+        }
+    }
+
+    /** Drop all recycled views and records. The maximum counts set per view type are kept. */
+    void clear() {
+        mRecords.clear();
+        for (int i = 0, size = mViewTypePools.size(); i < size; i++) {
+            mViewTypePools.valueAt(i).views.clear();
+        }
+    }
+
+    private ViewTypePool getViewTypePool(int viewType) {
+        ViewTypePool pool = mViewTypePools.get(viewType);
+        if (pool == null) {
+            pool = new ViewTypePool();
+            mViewTypePools.put(viewType, pool);
+        }
+        return pool;
+    }
+
+    private static final class ViewTypePool {
+        final ArrayList<View> views = new ArrayList<View>();
+        int maxCount = DEFAULT_MAX_VIEWS_PER_TYPE;
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** All the overlays that are currently attached, keyed by their view. The view is the handle that
+ * the public API hands out and takes back, e.g. in `removeOverlayView(View)`. */
+final class OverlayRegistry {
+
+    private final HashMap<View, OverlayRecord> mRecordsByView = new HashMap<View, OverlayRecord>();
+    private final ArrayList<OverlayRecord> mRecords = new ArrayList<OverlayRecord>();
+
+    void put(OverlayRecord record) {
+        OverlayRecord previous = mRecordsByView.put(record.view, record);
+        if (previous != null) {
+            mRecords.remove(previous);
+        }
+        mRecords.add(record);
+    }
+
+    /** Return the record for this view, or null if the view isn't an attached overlay. */
+    OverlayRecord get(View view) {
+        return mRecordsByView.get(view);
+    }
+
+    /** Remove and return the record for this view, or null if the view isn't an attached overlay. */
+    OverlayRecord remove(View view) {
+        OverlayRecord record = mRecordsByView.remove(view);
+        if (record != null) {
+            mRecords.remove(record);
+        }
+        return record;
+    }
+
+    void clear() {
+        mRecordsByView.clear();
+        mRecords.clear();
+    }
+
+    int size() {
+        return mRecords.size();
+    }
+
+    boolean isEmpty() {
+        return mRecords.isEmpty();
+    }
+
+    /** Return the record at this position, in the order the overlays were added. */
+    OverlayRecord getAt(int index) {
+        return mRecords.get(index);
+    }
+
+}
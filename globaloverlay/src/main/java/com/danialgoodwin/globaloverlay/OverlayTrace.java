@@ -0,0 +1,32 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/** Named sections for systrace, while gesture metrics are enabled. `android.os.Trace` is only
+ * available since API 18, on older devices these do nothing. */
+final class OverlayTrace {
+
+    static final String SECTION_TOUCH = "GlobalOverlay#onTouch";
+    static final String SECTION_UPDATE_LAYOUT = "GlobalOverlay#updateLayout";
+
+    private static final boolean IS_SUPPORTED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private OverlayTrace() {}
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static void beginSection(String sectionName) {
+        if (IS_SUPPORTED) {
+            Trace.beginSection(sectionName);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static void endSection() {
+        if (IS_SUPPORTED) {
+            Trace.endSection();
+        }
+    }
+
+}
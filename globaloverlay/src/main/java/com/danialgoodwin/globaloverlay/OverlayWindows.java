@@ -0,0 +1,134 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.Context;
+
+/** Shows overlays and sends their layout params to where they are shown: their own windows, or
+ * the {@link OverlayCompositor} in compositor mode. Only this class tells the two apart when
+ * showing, moving or removing an overlay. */
+final class OverlayWindows {
+
+    private final Context mContext;
+    private final WindowSink mWindowSink;
+    private final FrameSyncedLayoutUpdater mLayoutUpdater;
+    private OverlayCompositor mCompositor;
+    private boolean mIsDragCoalescingEnabled;
+
+    OverlayWindows(Context context, WindowSink windowSink, FrameScheduler frameScheduler) {
+        mContext = context;
+        mWindowSink = windowSink;
+        mLayoutUpdater = new FrameSyncedLayoutUpdater(windowSink, frameScheduler);
+    }
+
+    /** Set whether overlays shown after this call are composited, see
+     * {@link GlobalOverlay#setCompositorModeEnabled(boolean)}. Returns false if that isn't
+     * supported on this device. */
+    boolean setCompositorModeEnabled(boolean isEnabled) {
+        if (!isEnabled) {
+            mCompositor = null;
+            return true;
+        }
+        mCompositor = new OverlayCompositor(mContext, mWindowSink);
+        if (!mCompositor.attach()) {
+            mCompositor = null;
+            return false;
+        }
+        return true;
+    }
+
+    /** Set whether {@link #update(OverlayRecord)} and {@link #updateForMove(OverlayRecord)}
+     * send at most one layout update per frame for each overlay. */
+    void setDragCoalescingEnabled(boolean isEnabled) {
+        mIsDragCoalescingEnabled = isEnabled;
+    }
+
+    /** Return the total number of touch moves that were merged into another update. */
+    long getCoalescedMoveCount() {
+        return mLayoutUpdater.getCoalescedMoveCount();
+    }
+
+    /** Show this overlay, at the position in its layout params. */
+    void add(OverlayRecord record) {
+        if (mCompositor != null && mCompositor.attach()) {
+            record.isComposited = true;
+            mCompositor.addOverlay(record);
+        } else {
+            mWindowSink.addView(record.view, record.layoutParams);
+        }
+    }
+
+    /** Stop showing this overlay. The compositor's host window goes with its last overlay. */
+    void remove(OverlayRecord record) {
+        if (record.isComposited) {
+            mCompositor.removeOverlay(record);
+            if (mCompositor.getOverlayCount() == 0) {
+                mCompositor.detach();
+            }
+        } else {
+            mWindowSink.removeView(record.view);
+        }
+    }
+
+    /** Send the position in the layout params of this overlay, on the next frame if drags are
+     * coalesced. */
+    void update(OverlayRecord record) {
+        if (record.isComposited) {
+            mCompositor.updateOverlay(record);
+        } else if (mIsDragCoalescingEnabled) {
+            mLayoutUpdater.requestUpdate(record);
+        } else {
+            mLayoutUpdater.updateNow(record);
+        }
+    }
+
+    /** Like {@link #update(OverlayRecord)}, for the position of a touch move. Only these are
+     * counted in {@link #getCoalescedMoveCount()} when merged. */
+    void updateForMove(OverlayRecord record) {
+        if (!record.isComposited && mIsDragCoalescingEnabled) {
+            mLayoutUpdater.requestMoveUpdate(record);
+        } else {
+            update(record);
+        }
+    }
+
+    /** Send the position in the layout params of this overlay right away. Only for callers that
+     * already run at most once per frame. */
+    void updateNow(OverlayRecord record) {
+        if (record.isComposited) {
+            mCompositor.updateOverlay(record);
+        } else {
+            mLayoutUpdater.updateNow(record);
+        }
+    }
+
+    /** Send the position in the layout params of this overlay on the next frame, merged with
+     * the updates of all other overlays moved before then. */
+    void updateOnNextFrame(OverlayRecord record) {
+        if (record.isComposited) {
+            mCompositor.updateOverlay(record);
+        } else {
+            mLayoutUpdater.requestUpdate(record);
+        }
+    }
+
+    /** Send the size and position in the layout params of this overlay right away. */
+    void updateSizeNow(OverlayRecord record) {
+        if (record.isComposited) {
+            mCompositor.updateOverlaySize(record);
+        }
+        updateNow(record);
+    }
+
+    /** Drop any pending update for this overlay, e.g. because it is being removed. */
+    void cancelUpdate(OverlayRecord record) {
+        mLayoutUpdater.cancelUpdate(record);
+    }
+
+    /** Detach the compositor's host window, if there is one. */
+    void destroy() {
+        if (mCompositor != null) {
+            mCompositor.detach();
+            mCompositor = null;
+        }
+    }
+
+}
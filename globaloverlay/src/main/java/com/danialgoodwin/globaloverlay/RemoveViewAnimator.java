@@ -0,0 +1,83 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.view.View;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+
+/** Fades and scales the remove view in and out. Only render properties are animated, on a
+ * hardware layer, and the view toggles between VISIBLE and INVISIBLE rather than GONE, so showing
+ * and hiding never causes a layout of the remove view's window. */
+final class RemoveViewAnimator {
+
+    private static final long SHOW_DURATION_MILLIS = 150;
+    private static final long HIDE_DURATION_MILLIS = 100;
+    private static final float HIDDEN_SCALE = 0.6f;
+
+    private final View mView;
+    private final DecelerateInterpolator mShowInterpolator = new DecelerateInterpolator();
+    private final AccelerateInterpolator mHideInterpolator = new AccelerateInterpolator();
+    private boolean mIsShown;
+
+    private final AnimatorListenerAdapter mAnimatorListener = new AnimatorListenerAdapter() {
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            mView.setLayerType(View.LAYER_TYPE_NONE, null);
+            if (!mIsShown) {
+                mView.setVisibility(View.INVISIBLE);
+            }
+        }
+    };
+
+    RemoveViewAnimator(View view) {
+        mView = view;
+    }
+
+    /** Put the view in its hidden state right away, without animating. */
+    void hideNow() {
+        mView.animate().cancel();
+        mIsShown = false;
+        mView.setAlpha(0);
+        mView.setScaleX(HIDDEN_SCALE);
+        mView.setScaleY(HIDDEN_SCALE);
+        mView.setVisibility(View.INVISIBLE);
+    }
+
+    /** Return true while the view is shown or being shown, i.e. during a drag. */
+    boolean isShown() {
+        return mIsShown;
+    }
+
+    void show() {
+        if (mIsShown) {
+            return;
+        }
+        mIsShown = true;
+        mView.setVisibility(View.VISIBLE);
+        mView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        mView.animate()
+                .alpha(1)
+                .scaleX(1)
+                .scaleY(1)
+                .setDuration(SHOW_DURATION_MILLIS)
+                .setInterpolator(mShowInterpolator)
+                .setListener(mAnimatorListener);
+    }
+
+    void hide() {
+        if (!mIsShown) {
+            return;
+        }
+        mIsShown = false;
+        mView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        mView.animate()
+                .alpha(0)
+                .scaleX(HIDDEN_SCALE)
+                .scaleY(HIDDEN_SCALE)
+                .setDuration(HIDE_DURATION_MILLIS)
+                .setInterpolator(mHideInterpolator)
+                .setListener(mAnimatorListener);
+    }
+
+}
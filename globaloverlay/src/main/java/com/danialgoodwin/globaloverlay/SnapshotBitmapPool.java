@@ -0,0 +1,61 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+
+/** A few bitmaps for snapshots of overlays, shared by drags and idle demotion. Overlays are
+ * usually the same size from one snapshot to the next, so the last released bitmap is almost
+ * always the right one. On API 19+, a bitmap that's large enough is reconfigured to the new size
+ * rather than replaced. */
+final class SnapshotBitmapPool {
+
+    private static final int MAX_SIZE = 3;
+
+    /** Least recently released first. */
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>(MAX_SIZE);
+
+    /** Return a cleared bitmap of this size, from the pool if there's a fitting one. */
+    Bitmap acquire(int width, int height) {
+        for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = mBitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                mBitmaps.remove(i);
+                bitmap.eraseColor(0);
+                return bitmap;
+            }
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            int byteCount = width * height * 4;
+            for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+                Bitmap bitmap = mBitmaps.get(i);
+                if (bitmap.getAllocationByteCount() >= byteCount) {
+                    mBitmaps.remove(i);
+                    bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                    bitmap.eraseColor(0);
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /** Give a bitmap back for a later snapshot. The least recently used bitmap is recycled once the
+     * pool is full. */
+    void release(Bitmap bitmap) {
+        if (mBitmaps.size() == MAX_SIZE) {
+            mBitmaps.remove(0).recycle();
+        }
+        mBitmaps.add(bitmap);
+    }
+
+    /** Recycle all pooled bitmaps. */
+    void clear() {
+        for (int i = 0, size = mBitmaps.size(); i < size; i++) {
+            mBitmaps.get(i).recycle();
+        }
+        mBitmaps.clear();
+    }
+
+}
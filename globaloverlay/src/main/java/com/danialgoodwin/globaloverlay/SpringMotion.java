@@ -0,0 +1,155 @@
+package com.danialgoodwin.globaloverlay;
+
+/** A 2D damped spring pulling a point towards a target, used to fling overlays and snap them to
+ * the screen edges. It is integrated with a fixed time step, whatever the frame rate, so the
+ * motion looks and settles the same on every device. One instance is reused for every animation
+ * of an overlay and nothing is allocated while stepping. */
+final class SpringMotion {
+
+    /** Fixed integration step. Frames are split into as many of these as fit. */
+    static final long STEP_NANOS = 1000000000L / 240;
+
+    /** Frame gaps longer than this, e.g. after the main thread was blocked, are shortened so the
+     * spring doesn't jump or explode. */
+    private static final long MAX_FRAME_NANOS = 1000000000L / 20;
+
+    private static final float STEP_SECONDS = STEP_NANOS / 1e9f;
+    private static final float DEFAULT_STIFFNESS = 300f;
+    private static final float DEFAULT_DAMPING_RATIO = 0.75f;
+
+    /** The motion is settled once it is this close to the target, in pixels... */
+    private static final float SETTLE_DISTANCE = 0.5f;
+    /** ...and slower than this, in pixels per second. */
+    private static final float SETTLE_VELOCITY = 20f;
+
+    /** How far ahead, in seconds, a fling's velocity is projected when picking the edge to snap to. */
+    private static final float FLING_PROJECTION_SECONDS = 0.2f;
+
+    /** Whatever the animation belongs to, e.g. an overlay. */
+    final Object tag;
+
+    /** True while the motion has an entry in the list of an {@link OverlayMotionEngine}. Only
+     * changed by the engine, which uses it instead of searching its list. */
+    boolean isInEngine;
+
+    private float mStiffness = DEFAULT_STIFFNESS;
+    private float mDamping = dampingFor(DEFAULT_STIFFNESS, DEFAULT_DAMPING_RATIO);
+
+    private float mX;
+    private float mY;
+    private float mVelocityX;
+    private float mVelocityY;
+    private float mTargetX;
+    private float mTargetY;
+    private long mLastFrameTimeNanos;
+    private long mUnsteppedNanos;
+    private boolean mIsRunning;
+
+    SpringMotion(Object tag) {
+        this.tag = tag;
+    }
+
+    /** Set how the spring feels. A damping ratio of 1 is critically damped, lower overshoots.
+     * @param stiffness spring constant, per second squared
+     * @param dampingRatio damping relative to critical damping */
+    void setSpring(float stiffness, float dampingRatio) {
+        mStiffness = stiffness;
+        mDamping = dampingFor(stiffness, dampingRatio);
+    }
+
+    /** Start moving from this position and velocity towards the target.
+     * @param frameTimeNanos the time the motion starts, in the time base of the frames given to
+     *                       {@link #step(long)} */
+    void start(float x, float y, float velocityX, float velocityY, float targetX, float targetY, long frameTimeNanos) {
+        mX = x;
+        mY = y;
+        mVelocityX = velocityX;
+        mVelocityY = velocityY;
+        mTargetX = targetX;
+        mTargetY = targetY;
+        mLastFrameTimeNanos = frameTimeNanos;
+        mUnsteppedNanos = 0;
+        mIsRunning = true;
+    }
+
+    /** Start moving from this position and velocity towards the nearest left or right edge of the
+     * bounds, taking the velocity into account, while staying vertically within the bounds. The
+     * bounds are for the position, i.e. they should already exclude the size of the overlay. */
+    void startSnapToEdge(float x, float y, float velocityX, float velocityY,
+            float minX, float maxX, float minY, float maxY, long frameTimeNanos) {
+        float projectedX = projectFling(x, velocityX);
+        float projectedY = projectFling(y, velocityY);
+        float targetX = projectedX < (minX + maxX) / 2 ? minX : maxX;
+        float targetY = Math.max(minY, Math.min(maxY, projectedY));
+        start(x, y, velocityX, velocityY, targetX, targetY, frameTimeNanos);
+    }
+
+    /** Return where a fling from this position with this velocity is headed, the same projection
+     * that picks the edge in {@link #startSnapToEdge}. */
+    static float projectFling(float position, float velocity) {
+        return position + velocity * FLING_PROJECTION_SECONDS;
+    }
+
+    void cancel() {
+        mIsRunning = false;
+    }
+
+    boolean isRunning() {
+        return mIsRunning;
+    }
+
+    /** Advance the motion to this frame time. Return true if it's still running afterwards. */
+    boolean step(long frameTimeNanos) {
+        if (!mIsRunning) {
+            return false;
+        }
+        long elapsedNanos = frameTimeNanos - mLastFrameTimeNanos;
+        mLastFrameTimeNanos = frameTimeNanos;
+        if (elapsedNanos <= 0) {
+            return true;
+        }
+        mUnsteppedNanos += Math.min(elapsedNanos, MAX_FRAME_NANOS);
+
+        while (mUnsteppedNanos >= STEP_NANOS) {
+            mUnsteppedNanos -= STEP_NANOS;
+            // Semi-implicit Euler, which is stable for stiff springs at this step size.
+            float accelerationX = -mStiffness * (mX - mTargetX) - mDamping * mVelocityX;
+            float accelerationY = -mStiffness * (mY - mTargetY) - mDamping * mVelocityY;
+            mVelocityX += accelerationX * STEP_SECONDS;
+            mVelocityY += accelerationY * STEP_SECONDS;
+            mX += mVelocityX * STEP_SECONDS;
+            mY += mVelocityY * STEP_SECONDS;
+        }
+
+        if (Math.abs(mX - mTargetX) < SETTLE_DISTANCE && Math.abs(mY - mTargetY) < SETTLE_DISTANCE
+                && Math.abs(mVelocityX) < SETTLE_VELOCITY && Math.abs(mVelocityY) < SETTLE_VELOCITY) {
+            mX = mTargetX;
+            mY = mTargetY;
+            mVelocityX = 0;
+            mVelocityY = 0;
+            mIsRunning = false;
+        }
+        return mIsRunning;
+    }
+
+    int getX() {
+        return Math.round(mX);
+    }
+
+    int getY() {
+        return Math.round(mY);
+    }
+
+    float getTargetX() {
+        return mTargetX;
+    }
+
+    float getTargetY() {
+        return mTargetY;
+    }
+
+    private static float dampingFor(float stiffness, float dampingRatio) {
+        return 2 * dampingRatio * (float) Math.sqrt(stiffness);
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.danialgoodwin.globaloverlay;
+
+/** A hashed timer wheel: timers are kept in a ring of slots by their deadline, rounded to ticks,
+ * and each tick only looks at the timers in one slot. Timers further out than one turn of the
+ * wheel stay in their slot until the turn their deadline is in.
+ *
+ * Timers are owned by their users and link themselves into the wheel, so scheduling never
+ * allocates. Pushing back the deadline of a scheduled timer only stores the new deadline, the
+ * timer is moved to its new slot once its old one comes up. So re-arming a timer on every touch
+ * costs a field write, not a message.
+ *
+ * Nothing runs by itself, the owner calls {@link #advance(long)} every tick while
+ * {@link #isEmpty()} is false. */
+final class TimerWheel {
+
+    /** Interface definition for a callback to be invoked when a timer expires. */
+    interface Callback {
+        /** Called from {@link #advance(long)}, once per expiry. The timer may be scheduled again. */
+        void onTimerExpired(Timer timer);
+    }
+
+    private static final int NO_SLOT = -1;
+    /** Taken out of its slot while the slot is being expired. */
+    private static final int DETACHED = -2;
+
+    /** A timer, reused for as many deadlines as its owner likes. */
+    static final class Timer {
+        /** Whatever the owner wants to find again when the timer expires. */
+        final Object tag;
+
+        private long mDeadlineTick;
+        private int mSlot = NO_SLOT;
+        private Timer mPrevious;
+        private Timer mNext;
+        /** Link of the chain of timers taken out of a slot being expired. */
+        private Timer mNextDetached;
+
+        Timer(Object tag) {
+            this.tag = tag;
+        }
+
+        boolean isScheduled() {
+            return mSlot != NO_SLOT;
+        }
+    }
+
+    private final long mTickMillis;
+    private final Timer[] mSlots;
+    private final Callback mCallback;
+    /** The last tick that was expired, or the one before the wheel was first used. */
+    private long mCurrentTick;
+    private boolean mIsStarted;
+    private int mTimerCount;
+
+    TimerWheel(int slotCount, long tickMillis, Callback callback) {
+        mSlots = new Timer[slotCount];
+        mTickMillis = tickMillis;
+        mCallback = callback;
+    }
+
+    /** Schedule the timer to expire once this much time has passed, replacing its current
+     * deadline if it's scheduled. Expiry is rounded up to the next tick. */
+    void schedule(Timer timer, long nowMillis, long delayMillis) {
+        start(nowMillis);
+        long deadlineTick = Math.max(mCurrentTick + 1, (nowMillis + delayMillis + mTickMillis - 1) / mTickMillis);
+        if (timer.mSlot == NO_SLOT) {
+            mTimerCount++;
+        } else if (timer.mSlot >= 0) {
+            if (deadlineTick >= timer.mDeadlineTick) {
+                // Later than before, its current slot comes up first and moves it on.
+                timer.mDeadlineTick = deadlineTick;
+                return;
+            }
+            unlink(timer);
+        }
+        timer.mDeadlineTick = deadlineTick;
+        link(timer);
+    }
+
+    void cancel(Timer timer) {
+        if (timer.mSlot == NO_SLOT) {
+            return;
+        }
+        if (timer.mSlot >= 0) {
+            unlink(timer);
+        }
+        timer.mSlot = NO_SLOT;
+        mTimerCount--;
+    }
+
+    boolean isEmpty() {
+        return mTimerCount == 0;
+    }
+
+    /** Expire all timers with a deadline up to now. If the owner fell behind by more than a turn
+     * of the wheel, each slot is only visited once, at the latest tick. */
+    void advance(long nowMillis) {
+        start(nowMillis);
+        long nowTick = nowMillis / mTickMillis;
+        for (long tick = Math.max(mCurrentTick + 1, nowTick - mSlots.length + 1); tick <= nowTick; tick++) {
+            // Timers scheduled by callbacks go after this tick, into slots still to come.
+            mCurrentTick = tick;
+            expireSlot((int) (tick % mSlots.length), nowTick);
+        }
+        mCurrentTick = Math.max(mCurrentTick, nowTick);
+    }
+
+    /** Start counting ticks from this time, the first time the wheel is used. Timers scheduled
+     * before the first advance are then expired by it, however late it comes. */
+    private void start(long nowMillis) {
+        if (!mIsStarted) {
+            mIsStarted = true;
+            mCurrentTick = nowMillis / mTickMillis - 1;
+        }
+    }
+
+    private void expireSlot(int slot, long nowTick) {
+        // Take all timers out first, so callbacks can schedule and cancel timers freely.
+        Timer detached = mSlots[slot];
+        mSlots[slot] = null;
+        for (Timer timer = detached; timer != null; timer = timer.mNext) {
+            timer.mSlot = DETACHED;
+            timer.mNextDetached = timer.mNext;
+        }
+
+        for (Timer timer = detached; timer != null; ) {
+            Timer next = timer.mNextDetached;
+            timer.mNextDetached = null;
+            // Timers scheduled or cancelled by a callback meanwhile are already taken care of.
+            if (timer.mSlot == DETACHED) {
+                if (timer.mDeadlineTick <= nowTick) {
+                    timer.mSlot = NO_SLOT;
+                    mTimerCount--;
+                    mCallback.onTimerExpired(timer);
+                } else {
+                    link(timer);
+                }
+            }
+            timer = next;
+        }
+    }
+
+    private void link(Timer timer) {
+        int slot = (int) (timer.mDeadlineTick % mSlots.length);
+        Timer head = mSlots[slot];
+        timer.mSlot = slot;
+        timer.mPrevious = null;
+        timer.mNext = head;
+        if (head != null) {
+            head.mPrevious = timer;
+        }
+        mSlots[slot] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.mPrevious != null) {
+            timer.mPrevious.mNext = timer.mNext;
+        } else {
+            mSlots[timer.mSlot] = timer.mNext;
+        }
+        if (timer.mNext != null) {
+            timer.mNext.mPrevious = timer.mPrevious;
+        }
+        timer.mPrevious = null;
+        timer.mNext = null;
+    }
+
+}
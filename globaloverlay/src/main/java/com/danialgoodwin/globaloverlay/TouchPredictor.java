@@ -0,0 +1,163 @@
+package com.danialgoodwin.globaloverlay;
+
+/** Predicts where a dragging finger will be a few milliseconds after the newest touch sample, so
+ * a dragged overlay can be placed there rather than trailing behind the finger.
+ *
+ * The samples of the last {@link #FIT_HORIZON_MILLIS} are fit with a parabola per axis, which
+ * gives the velocity and acceleration at the newest sample. The velocity is extrapolated, but an
+ * acceleration never is, since fingers stop speeding up without warning. A deceleration is
+ * followed up to the point where the finger would come to rest, and no further. Nothing is
+ * predicted in a direction the finger didn't move in between its two newest samples, so the fit
+ * doesn't pull back a finger that just stopped. Predictions are also limited to
+ * {@link #MAX_PREDICTION_MILLIS} ahead and to a maximum distance, so a wrong guess overshoots by
+ * little.
+ *
+ * Samples are kept in fixed size arrays that are reused for every gesture, so adding samples and
+ * predicting never allocates. */
+final class TouchPredictor {
+
+    private static final int MAX_SAMPLES = 16;
+
+    /** Only samples this recent, relative to the newest one, are used for the fit. */
+    static final long FIT_HORIZON_MILLIS = 50;
+
+    /** Never predict further ahead of the newest sample than this. */
+    static final long MAX_PREDICTION_MILLIS = 25;
+
+    private final float mMaxDistance;
+
+    private final float[] mX = new float[MAX_SAMPLES];
+    private final float[] mY = new float[MAX_SAMPLES];
+    private final long[] mTime = new long[MAX_SAMPLES];
+    private int mNewest = -1;
+    private int mCount;
+
+    private float mPredictedX;
+    private float mPredictedY;
+
+    // Result of the last fit of one axis, in pixels per millisecond (squared).
+    private double mVelocity;
+    private double mAcceleration;
+    private float mLastStep;
+
+    /** @param maxDistance how far along each axis a prediction may be from the newest sample, in
+     *                    pixels */
+    TouchPredictor(float maxDistance) {
+        mMaxDistance = maxDistance;
+    }
+
+    void clear() {
+        mNewest = -1;
+        mCount = 0;
+        mPredictedX = 0;
+        mPredictedY = 0;
+    }
+
+    void addSample(float x, float y, long timeMillis) {
+        mNewest = (mNewest + 1) % MAX_SAMPLES;
+        mX[mNewest] = x;
+        mY[mNewest] = y;
+        mTime[mNewest] = timeMillis;
+        if (mCount < MAX_SAMPLES) {
+            mCount++;
+        }
+    }
+
+    /** Predict the position at this time, see {@link #getPredictedX()} and
+     * {@link #getPredictedY()}. Without enough samples to fit, or for a time that isn't after the
+     * newest sample, the prediction is the newest sample. */
+    void predict(long timeMillis) {
+        if (mCount == 0) {
+            mPredictedX = 0;
+            mPredictedY = 0;
+            return;
+        }
+        mPredictedX = mX[mNewest];
+        mPredictedY = mY[mNewest];
+        long ahead = Math.min(timeMillis - mTime[mNewest], MAX_PREDICTION_MILLIS);
+        if (ahead <= 0) {
+            return;
+        }
+        if (fit(mX)) {
+            mPredictedX += offset(ahead);
+        }
+        if (fit(mY)) {
+            mPredictedY += offset(ahead);
+        }
+    }
+
+    /** Return the predicted x position, as of the last {@link #predict(long)}. */
+    float getPredictedX() {
+        return mPredictedX;
+    }
+
+    /** Return the predicted y position, as of the last {@link #predict(long)}. */
+    float getPredictedY() {
+        return mPredictedY;
+    }
+
+    /** Fit one axis by least squares, with time and position relative to the newest sample, and
+     * store its velocity and acceleration at the newest sample. Falls back to a line when the
+     * samples don't span three distinct times.
+     * @return false if there aren't two samples to fit */
+    private boolean fit(float[] values) {
+        long newestTime = mTime[mNewest];
+        float newestValue = values[mNewest];
+        mLastStep = mCount > 1 ? newestValue - values[(mNewest - 1 + MAX_SAMPLES) % MAX_SAMPLES] : 0;
+        int n = 0;
+        double s1 = 0, s2 = 0, s3 = 0, s4 = 0, sv0 = 0, sv1 = 0, sv2 = 0;
+        for (int i = 0; i < mCount; i++) {
+            int index = (mNewest - i + MAX_SAMPLES) % MAX_SAMPLES;
+            long age = newestTime - mTime[index];
+            if (age > FIT_HORIZON_MILLIS) {
+                break;
+            }
+            double t = -age;
+            double tt = t * t;
+            double v = values[index] - newestValue;
+            n++;
+            s1 += t;
+            s2 += tt;
+            s3 += tt * t;
+            s4 += tt * tt;
+            sv0 += v;
+            sv1 += t * v;
+            sv2 += tt * v;
+        }
+
+        if (n >= 3) {
+            // The normal equations of v = c0 + c1 * t + c2 * t^2, solved with Cramer's rule.
+            double determinant = n * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s3 * s2) + s2 * (s1 * s3 - s2 * s2);
+            if (determinant > 1e-9 * n * s2 * s4) {
+                mVelocity = (n * (sv1 * s4 - s3 * sv2) - sv0 * (s1 * s4 - s3 * s2) + s2 * (s1 * sv2 - sv1 * s2)) / determinant;
+                mAcceleration = 2 * (n * (s2 * sv2 - sv1 * s3) - s1 * (s1 * sv2 - sv1 * s2) + sv0 * (s1 * s3 - s2 * s2)) / determinant;
+                return true;
+            }
+        }
+
+        double determinant = n * s2 - s1 * s1;
+        if (n < 2 || determinant == 0) {
+            return false;
+        }
+        mVelocity = (n * sv1 - s1 * sv0) / determinant;
+        mAcceleration = 0;
+        return true;
+    }
+
+    /** Return how far the last fit axis moves in this many milliseconds, see the class comment. */
+    private float offset(long ahead) {
+        if (mVelocity * mLastStep <= 0) {
+            return 0;
+        }
+        double offset;
+        if (mVelocity * mAcceleration < 0) {
+            // Slowing down, stop where the finger would come to rest.
+            double time = Math.min(ahead, -mVelocity / mAcceleration);
+            offset = mVelocity * time + mAcceleration * time * time / 2;
+        } else {
+            offset = mVelocity * ahead;
+        }
+        return (float) Math.max(-mMaxDistance, Math.min(mMaxDistance, offset));
+    }
+
+}
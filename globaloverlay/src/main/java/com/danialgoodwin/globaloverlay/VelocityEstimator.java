@@ -0,0 +1,86 @@
+package com.danialgoodwin.globaloverlay;
+
+/** Estimates pointer velocity from the most recent touch samples with a least squares line fit.
+ * Samples are kept in fixed size arrays that are reused for every gesture, so adding samples and
+ * computing the velocity never allocates. */
+final class VelocityEstimator {
+
+    private static final int MAX_SAMPLES = 10;
+
+    /** Only samples this recent, relative to the newest one, are used for the estimate. */
+    private static final long HORIZON_MILLIS = 100;
+
+    private final float[] mX = new float[MAX_SAMPLES];
+    private final float[] mY = new float[MAX_SAMPLES];
+    private final long[] mTime = new long[MAX_SAMPLES];
+    private int mNewest = -1;
+    private int mCount;
+
+    private float mVelocityX;
+    private float mVelocityY;
+
+    void clear() {
+        mNewest = -1;
+        mCount = 0;
+        mVelocityX = 0;
+        mVelocityY = 0;
+    }
+
+    void addSample(float x, float y, long timeMillis) {
+        mNewest = (mNewest + 1) % MAX_SAMPLES;
+        mX[mNewest] = x;
+        mY[mNewest] = y;
+        mTime[mNewest] = timeMillis;
+        if (mCount < MAX_SAMPLES) {
+            mCount++;
+        }
+    }
+
+    /** Compute the velocity from the current samples, see {@link #getVelocityX()} and
+     * {@link #getVelocityY()}. */
+    void computeVelocity() {
+        mVelocityX = 0;
+        mVelocityY = 0;
+        if (mCount < 2) {
+            return;
+        }
+
+        long newestTime = mTime[mNewest];
+        int n = 0;
+        double sumT = 0, sumTT = 0, sumX = 0, sumY = 0, sumTX = 0, sumTY = 0;
+        for (int i = 0; i < mCount; i++) {
+            int index = (mNewest - i + MAX_SAMPLES) % MAX_SAMPLES;
+            long age = newestTime - mTime[index];
+            if (age > HORIZON_MILLIS) {
+                break;
+            }
+            double t = -age;
+            n++;
+            sumT += t;
+            sumTT += t * t;
+            sumX += mX[index];
+            sumY += mY[index];
+            sumTX += t * mX[index];
+            sumTY += t * mY[index];
+        }
+
+        double denominator = n * sumTT - sumT * sumT;
+        if (n < 2 || denominator == 0) {
+            return;
+        }
+        // Slopes are in pixels per millisecond.
+        mVelocityX = (float) ((n * sumTX - sumT * sumX) / denominator * 1000);
+        mVelocityY = (float) ((n * sumTY - sumT * sumY) / denominator * 1000);
+    }
+
+    /** Return the x velocity in pixels per second, as of the last {@link #computeVelocity()}. */
+    float getVelocityX() {
+        return mVelocityX;
+    }
+
+    /** Return the y velocity in pixels per second, as of the last {@link #computeVelocity()}. */
+    float getVelocityY() {
+        return mVelocityY;
+    }
+
+}
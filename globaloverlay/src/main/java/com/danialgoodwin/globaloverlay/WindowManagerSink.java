@@ -0,0 +1,30 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.view.View;
+import android.view.WindowManager;
+
+/** The {@link WindowSink} that actually shows the windows, through the system window manager. */
+final class WindowManagerSink implements WindowSink {
+
+    private final WindowManager mWindowManager;
+
+    WindowManagerSink(WindowManager windowManager) {
+        mWindowManager = windowManager;
+    }
+
+    @Override
+    public void addView(View view, WindowManager.LayoutParams params) {
+        mWindowManager.addView(view, params);
+    }
+
+    @Override
+    public void updateViewLayout(View view, WindowManager.LayoutParams params) {
+        mWindowManager.updateViewLayout(view, params);
+    }
+
+    @Override
+    public void removeView(View view) {
+        mWindowManager.removeView(view);
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.view.View;
+import android.view.WindowManager;
+
+/** The window manager calls the library makes for its windows. Each of these is an IPC to the
+ * window server on a device, so this is the narrow place where they can be counted, recorded or
+ * replaced, e.g. by the `RecordingWindowSink` of the tests. */
+interface WindowSink {
+
+    void addView(View view, WindowManager.LayoutParams params);
+
+    void updateViewLayout(View view, WindowManager.LayoutParams params);
+
+    void removeView(View view);
+
+}
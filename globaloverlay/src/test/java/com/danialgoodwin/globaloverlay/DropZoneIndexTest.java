@@ -0,0 +1,177 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Queries a {@link DropZoneIndex} with points around its zones, and checks many zones against a
+ * plain scan of all of them. */
+public class DropZoneIndexTest {
+
+    private DropZoneIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new DropZoneIndex();
+    }
+
+    @Test
+    public void emptyIndex_matchesNothing() {
+        mIndex.build();
+
+        assertEquals(0, mIndex.getZoneCount());
+        assertEquals(DropZoneIndex.NO_ZONE, query(0, 0, DropZoneIndex.NO_ZONE));
+        assertEquals(DropZoneIndex.NO_ZONE, query(Integer.MIN_VALUE, Integer.MAX_VALUE, DropZoneIndex.NO_ZONE));
+    }
+
+    @Test
+    public void clearedIndex_matchesNothing() {
+        mIndex.addZone(0, 0, 100, 100);
+        mIndex.build();
+        mIndex.clear();
+        mIndex.build();
+
+        assertEquals(DropZoneIndex.NO_ZONE, query(50, 50, DropZoneIndex.NO_ZONE));
+        // A zone from before the clear isn't kept either.
+        assertEquals(DropZoneIndex.NO_ZONE, query(50, 50, 0));
+    }
+
+    @Test
+    public void capture_includesTheEdgeOfTheRadius() {
+        // 40 by 20, so the capture radius is 40 around (120, 110).
+        int zone = mIndex.addZone(100, 100, 140, 120);
+        mIndex.build();
+
+        assertEquals(zone, query(120, 110, DropZoneIndex.NO_ZONE));
+        assertEquals(zone, query(160, 110, DropZoneIndex.NO_ZONE));
+        assertEquals(zone, query(120, 70, DropZoneIndex.NO_ZONE));
+        assertEquals(zone, query(144, 142, DropZoneIndex.NO_ZONE));
+        assertEquals(DropZoneIndex.NO_ZONE, query(161, 110, DropZoneIndex.NO_ZONE));
+        assertEquals(DropZoneIndex.NO_ZONE, query(149, 139, DropZoneIndex.NO_ZONE));
+    }
+
+    @Test
+    public void release_onlyBeyondTheLargerRadius() {
+        // Capture radius 40, so the release radius is 50.
+        int zone = mIndex.addZone(100, 100, 140, 120);
+        mIndex.build();
+
+        int current = query(150, 110, DropZoneIndex.NO_ZONE);
+        assertEquals(zone, current);
+        current = query(165, 110, current);
+        assertEquals(zone, current);
+        current = query(170, 110, current);
+        assertEquals(zone, current);
+        current = query(171, 110, current);
+        assertEquals(DropZoneIndex.NO_ZONE, current);
+
+        // Coming back, it takes the capture radius again.
+        current = query(165, 110, current);
+        assertEquals(DropZoneIndex.NO_ZONE, current);
+        current = query(160, 110, current);
+        assertEquals(zone, current);
+    }
+
+    @Test
+    public void ignoredZone_neverMatches() {
+        int ignored = mIndex.addZone(0, 0, 100, 100);
+        int other = mIndex.addZone(40, 40, 140, 140);
+        mIndex.build();
+
+        assertEquals(other, mIndex.query(60, 60, DropZoneIndex.NO_ZONE, ignored));
+        assertEquals(DropZoneIndex.NO_ZONE, mIndex.query(-40, -40, DropZoneIndex.NO_ZONE, ignored));
+    }
+
+    @Test
+    public void pointsOutsideTheGrid_matchNothing() {
+        mIndex.addZone(1000, 1000, 1010, 1010);
+        mIndex.build();
+
+        assertEquals(DropZoneIndex.NO_ZONE, query(0, 0, DropZoneIndex.NO_ZONE));
+        assertEquals(DropZoneIndex.NO_ZONE, query(5000, 1005, DropZoneIndex.NO_ZONE));
+        assertEquals(DropZoneIndex.NO_ZONE, query(1005, -5000, DropZoneIndex.NO_ZONE));
+    }
+
+    @Test
+    public void manyZones_matchAPlainScan() {
+        Random random = new Random(7);
+        int zoneCount = 100;
+        int[] bounds = new int[zoneCount * 4];
+        for (int i = 0; i < zoneCount; i++) {
+            int left = random.nextInt(2000) - 500;
+            int top = random.nextInt(3000) - 500;
+            int right = left + 1 + random.nextInt(150);
+            int bottom = top + 1 + random.nextInt(150);
+            bounds[i * 4] = left;
+            bounds[i * 4 + 1] = top;
+            bounds[i * 4 + 2] = right;
+            bounds[i * 4 + 3] = bottom;
+            assertEquals(i, mIndex.addZone(left, top, right, bottom));
+        }
+        mIndex.build();
+
+        for (int i = 0; i < 20000; i++) {
+            int x = random.nextInt(2400) - 700;
+            int y = random.nextInt(3400) - 700;
+            assertEquals("Point " + x + "," + y, scan(bounds, x, y), query(x, y, DropZoneIndex.NO_ZONE));
+        }
+    }
+
+    @Test
+    public void zonesAcrossCellBorders_matchFromEveryCellTheyCover() {
+        // One large zone spanning most of the grid, and small ones in its corners, so the large
+        // one is in many cells and the small ones in few.
+        int large = mIndex.addZone(400, 400, 600, 600);
+        int topLeft = mIndex.addZone(0, 0, 10, 10);
+        int bottomRight = mIndex.addZone(990, 990, 1000, 1000);
+        mIndex.build();
+
+        for (int x = 300; x <= 700; x += 7) {
+            assertEquals("x " + x, large, query(x, 500, DropZoneIndex.NO_ZONE));
+        }
+        for (int y = 300; y <= 700; y += 7) {
+            assertEquals("y " + y, large, query(500, y, DropZoneIndex.NO_ZONE));
+        }
+        assertEquals(topLeft, query(5, 5, DropZoneIndex.NO_ZONE));
+        assertEquals(bottomRight, query(995, 995, DropZoneIndex.NO_ZONE));
+    }
+
+    @Test
+    public void rebuild_movesTheZones() {
+        mIndex.addZone(0, 0, 10, 10);
+        mIndex.build();
+        mIndex.clear();
+        int zone = mIndex.addZone(500, 500, 510, 510);
+        mIndex.build();
+
+        assertEquals(DropZoneIndex.NO_ZONE, query(5, 5, DropZoneIndex.NO_ZONE));
+        assertEquals(zone, query(505, 505, DropZoneIndex.NO_ZONE));
+        assertEquals(505, mIndex.getCenterX(zone));
+        assertEquals(505, mIndex.getCenterY(zone));
+    }
+
+    private int query(int x, int y, int currentZone) {
+        return mIndex.query(x, y, currentZone, DropZoneIndex.NO_ZONE);
+    }
+
+    /** Returns the first zone whose capture circle contains the point, checking every zone. */
+    private static int scan(int[] bounds, int x, int y) {
+        for (int i = 0; i < bounds.length / 4; i++) {
+            int left = bounds[i * 4];
+            int top = bounds[i * 4 + 1];
+            int right = bounds[i * 4 + 2];
+            int bottom = bounds[i * 4 + 3];
+            long radius = Math.max(right - left, bottom - top);
+            long dx = x - (left + right) / 2;
+            long dy = y - (top + bottom) / 2;
+            if (dx * dx + dy * dy <= radius * radius) {
+                return i;
+            }
+        }
+        return DropZoneIndex.NO_ZONE;
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/** Records made up gestures with a {@link GestureMetricsRecorder} and checks the counts,
+ * percentiles and maximum it reports. */
+public class GestureMetricsRecorderTest {
+
+    private GestureMetricsRecorder mRecorder;
+    private GestureMetrics mReported;
+    private int mReportCount;
+
+    @Before
+    public void setUp() {
+        mRecorder = new GestureMetricsRecorder("overlay", new GestureMetricsRecorder.Reporter() {
+            @Override
+            public void onGestureMetrics(GestureMetricsRecorder recorder, GestureMetrics metrics) {
+                mReported = metrics;
+                mReportCount++;
+            }
+        });
+    }
+
+    @Test
+    public void latencies_givePercentilesAndMax() {
+        // Latencies 1 to 100 microseconds, in shuffled order.
+        mRecorder.onGestureStart();
+        for (int i = 0; i < 100; i++) {
+            long latencyMicros = (i * 37) % 100 + 1;
+            recordMove(i * 1000000L, latencyMicros * 1000);
+        }
+        mRecorder.onTouchHandled(0, true, 0);
+
+        assertEquals(1, mReportCount);
+        assertEquals(100, mReported.getLatencySampleCount());
+        assertEquals(50000, mReported.getLatencyP50Nanos());
+        assertEquals(99000, mReported.getLatencyP99Nanos());
+        assertEquals(100000, mReported.getMaxLatencyNanos());
+        assertEquals(100, mReported.getMoveCount());
+        assertEquals(100, mReported.getLayoutUpdateCount());
+    }
+
+    @Test
+    public void singleLatency_isEveryPercentile() {
+        mRecorder.onGestureStart();
+        recordMove(0, 7000);
+        mRecorder.onTouchHandled(0, true, 0);
+
+        assertEquals(7000, mReported.getLatencyP50Nanos());
+        assertEquals(7000, mReported.getLatencyP99Nanos());
+        assertEquals(7000, mReported.getMaxLatencyNanos());
+    }
+
+    @Test
+    public void noLatencies_reportZeros() {
+        mRecorder.onGestureStart();
+        mRecorder.onTouchHandled(0, true, 0);
+
+        assertEquals(1, mReportCount);
+        assertEquals(0, mReported.getLatencySampleCount());
+        assertEquals(0, mReported.getLatencyP50Nanos());
+        assertEquals(0, mReported.getLatencyP99Nanos());
+        assertEquals(0, mReported.getMaxLatencyNanos());
+    }
+
+    @Test
+    public void longGesture_keepsOnlyTheNewestLatencies() {
+        mRecorder.onGestureStart();
+        // An early outlier that falls out of the ring buffer, then steady latencies.
+        recordMove(0, 1000000);
+        for (int i = 1; i <= GestureMetricsRecorder.MAX_LATENCY_SAMPLES; i++) {
+            recordMove(i * 1000000L, 2000);
+        }
+        mRecorder.onTouchHandled(0, true, 0);
+
+        assertEquals(GestureMetricsRecorder.MAX_LATENCY_SAMPLES, mReported.getLatencySampleCount());
+        assertEquals(2000, mReported.getMaxLatencyNanos());
+        assertEquals(GestureMetricsRecorder.MAX_LATENCY_SAMPLES + 1, mReported.getLayoutUpdateCount());
+    }
+
+    @Test
+    public void coalescedUpdate_isMeasuredFromTheOldestTouch() {
+        mRecorder.onGestureStart();
+        mRecorder.onMove();
+        mRecorder.onLayoutRequested(1000);
+        mRecorder.onMove();
+        mRecorder.onLayoutRequested(5000);
+        mRecorder.onTouchHandled(100, true, 1);
+        assertEquals(0, mReportCount);
+
+        // The frame after the up event sends the update.
+        mRecorder.onLayoutUpdated(9000);
+        assertEquals(1, mReportCount);
+        assertEquals(8000, mReported.getMaxLatencyNanos());
+        assertEquals(1, mReported.getLayoutUpdateCount());
+        assertEquals(1, mReported.getCoalescedMoveCount());
+    }
+
+    @Test
+    public void cancelledUpdate_stillReportsTheGesture() {
+        mRecorder.onGestureStart();
+        mRecorder.onLayoutRequested(1000);
+        mRecorder.onTouchHandled(100, true, 0);
+        mRecorder.onLayoutCancelled();
+
+        assertEquals(1, mReportCount);
+        assertEquals(0, mReported.getLatencySampleCount());
+    }
+
+    @Test
+    public void throttledMoves_reportTheLongestInterval() {
+        mRecorder.onGestureStart();
+        mRecorder.onMoveThrottled(20000000);
+        mRecorder.onMoveThrottled(50000000);
+        mRecorder.onMoveThrottled(30000000);
+        mRecorder.onTouchHandled(0, true, 0);
+
+        assertEquals(3, mReported.getThrottledMoveCount());
+        assertEquals(50000000, mReported.getMaxMoveUpdateIntervalNanos());
+    }
+
+    @Test
+    public void nextGesture_startsFromScratchWithTheSameMetrics() {
+        mRecorder.onGestureStart();
+        recordMove(0, 9000);
+        mRecorder.onTouchHandled(500, true, 0);
+        GestureMetrics first = mReported;
+
+        mRecorder.onGestureStart();
+        recordMove(0, 3000);
+        mRecorder.onTouchHandled(200, true, 0);
+
+        assertSame(first, mReported);
+        assertEquals(2, mReportCount);
+        assertEquals(1, mReported.getLatencySampleCount());
+        assertEquals(3000, mReported.getMaxLatencyNanos());
+        assertEquals(200, mReported.getTouchTimeNanos());
+    }
+
+    @Test
+    public void eventsWithoutAGesture_areIgnored() {
+        mRecorder.onMove();
+        mRecorder.onLayoutRequested(0);
+        mRecorder.onLayoutUpdated(1000);
+        mRecorder.onTouchHandled(0, true, 0);
+
+        assertEquals(0, mReportCount);
+    }
+
+    /** A move whose layout update is sent this long after its touch. */
+    private void recordMove(long touchTimeNanos, long latencyNanos) {
+        mRecorder.onMove();
+        mRecorder.onLayoutRequested(touchTimeNanos);
+        mRecorder.onLayoutUpdated(touchTimeNanos + latencyNanos);
+        mRecorder.onTouchHandled(0, false, 0);
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.Context;
+import android.view.Display;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.WindowManager;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Replays touch streams on an overlay and checks how many window manager calls, i.e. IPCs on a
+ * device, and allocations they cost, so performance regressions fail the build. The streams are
+ * synthetic, evenly spaced moves at a high touch rate, built by {@link #obtainDrag}.
+ *
+ * Allocations are counted with `com.sun.management.ThreadMXBean`, so that check is skipped on
+ * JVMs that don't have it. */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class GlobalOverlayPerformanceTest {
+
+    private static final int OVERLAY_SIZE = 100;
+    private static final int MOVES_PER_DRAG = 200;
+    private static final long MOVE_INTERVAL_MILLIS = 4;
+    /** Larger than the touch slop, so every move of a drag moves the overlay. */
+    private static final int MOVE_DISTANCE = 20;
+
+    /** Allowed allocations per move event on top of what replaying the events costs by itself. */
+    private static final long MAX_BYTES_PER_MOVE = 8;
+
+    private RecordingWindowSink mWindowSink;
+    private GlobalOverlay mGlobalOverlay;
+    private View mOverlay;
+    private int mClickCount;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        mWindowSink = new RecordingWindowSink(null, 4 * MOVES_PER_DRAG);
+
+        // Both views are laid out at the origin, so the overlay is over the remove view whenever
+        // its layout params are back at (0, 0).
+        View removeView = new View(context);
+        removeView.layout(0, 0, OVERLAY_SIZE, OVERLAY_SIZE);
+        mGlobalOverlay = new GlobalOverlay(context, removeView, false, false, mWindowSink);
+
+        mOverlay = new View(context);
+        mGlobalOverlay.addOverlayView(mOverlay, new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mClickCount++;
+            }
+        });
+        mOverlay.layout(0, 0, OVERLAY_SIZE, OVERLAY_SIZE);
+        mWindowSink.clear();
+    }
+
+    @Test
+    public void tap_sendsNoLayoutUpdates() {
+        replay(mOverlay, obtainTap(500, 500, 0));
+
+        assertEquals(1, mClickCount);
+        assertEquals(0, mWindowSink.getCallCount());
+    }
+
+    @Test
+    public void drag_sendsOneLayoutUpdatePerMove() {
+        replay(mOverlay, obtainDrag(500, 500, 500 + MOVES_PER_DRAG * MOVE_DISTANCE, 500, MOVES_PER_DRAG, 0));
+
+        assertEquals(0, mClickCount);
+        assertEquals(MOVES_PER_DRAG, mWindowSink.getCallCount(RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, mOverlay));
+        assertEquals(0, mWindowSink.getCallCount(RecordingWindowSink.CALL_ADD_VIEW));
+        assertEquals(0, mWindowSink.getCallCount(RecordingWindowSink.CALL_REMOVE_VIEW));
+        int lastCall = mWindowSink.getCallCount() - 1;
+        assertEquals(MOVES_PER_DRAG * MOVE_DISTANCE, mWindowSink.getCallX(lastCall));
+    }
+
+    @Test
+    public void coalescedDrag_sendsOneLayoutUpdatePerFrame() {
+        mGlobalOverlay.setDragCoalescingEnabled(true);
+
+        // All moves arrive before the next frame.
+        replay(mOverlay, obtainDrag(500, 500, 500 + MOVES_PER_DRAG * MOVE_DISTANCE, 500, MOVES_PER_DRAG, 0));
+        assertEquals(0, mWindowSink.getCallCount(RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT));
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(1, mWindowSink.getCallCount(RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, mOverlay));
+        assertEquals(MOVES_PER_DRAG - 1, mGlobalOverlay.getCoalescedMoveCount());
+        assertEquals(MOVES_PER_DRAG * MOVE_DISTANCE, mWindowSink.getCallX(mWindowSink.getCallCount() - 1));
+    }
+
+    @Test
+    public void coalescedDisplayResize_isNotCountedAsAMove() {
+        mGlobalOverlay.setDragCoalescingEnabled(true);
+        replay(mOverlay, obtainDrag(500, 500, 500 + MOVES_PER_DRAG * MOVE_DISTANCE, 500, MOVES_PER_DRAG, 0));
+
+        // The reprojection is merged into the update still pending for the drag.
+        Display display = ((WindowManager) RuntimeEnvironment.application.getSystemService(Context.WINDOW_SERVICE))
+                .getDefaultDisplay();
+        Shadows.shadowOf(display).setWidth(display.getHeight());
+        Shadows.shadowOf(display).setHeight(display.getWidth());
+        RuntimeEnvironment.application.onConfigurationChanged(RuntimeEnvironment.application.getResources().getConfiguration());
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertEquals(1, mWindowSink.getCallCount(RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, mOverlay));
+        assertEquals(MOVES_PER_DRAG - 1, mGlobalOverlay.getCoalescedMoveCount());
+    }
+
+    @Test
+    public void snapshotDrags_addTheProxyWindowOnlyOnce() {
+        mGlobalOverlay.setDragMode(GlobalOverlay.DRAG_MODE_SNAPSHOT);
+
+        replay(mOverlay, obtainDrag(500, 500, 1000, 500, MOVES_PER_DRAG / 2, 0));
+        replay(mOverlay, obtainDrag(1000, 500, 1500, 500, MOVES_PER_DRAG / 2, 1000));
+        replay(mOverlay, obtainDrag(1500, 500, 2000, 500, MOVES_PER_DRAG / 2, 2000));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        // The proxy window is hidden between drags, not removed.
+        assertEquals(1, mWindowSink.getCallCount(RecordingWindowSink.CALL_ADD_VIEW));
+        assertEquals(0, mWindowSink.getCallCount(RecordingWindowSink.CALL_REMOVE_VIEW));
+        assertEquals(1, mGlobalOverlay.getOverlayCount());
+    }
+
+    @Test
+    public void dropOntoRemoveView_removesOverlayWithOneCall() {
+        MotionEvent[] away = obtainDrag(500, 500, 1000, 500, MOVES_PER_DRAG / 2, 0);
+        MotionEvent[] back = obtainDrag(1000, 500, 500, 500, MOVES_PER_DRAG / 2, 0);
+        replay(mOverlay, away, 0, away.length - 1);
+        replay(mOverlay, back, 1, back.length);
+
+        assertEquals(0, mGlobalOverlay.getOverlayCount());
+        assertEquals(1, mWindowSink.getCallCount(RecordingWindowSink.CALL_REMOVE_VIEW, mOverlay));
+        assertTrue(mWindowSink.getCallCount(RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, mOverlay) <= MOVES_PER_DRAG);
+        assertEquals(0, mClickCount);
+    }
+
+    @Test
+    public void dragMoves_allocateNothing() {
+        Assume.assumeTrue("Per-thread allocation counters aren't available", ThreadAllocations.isSupported());
+
+        // Reading the same event fields from a plain listener is the cost of replaying the events
+        // in this environment, which isn't the library's.
+        View baselineView = new View(RuntimeEnvironment.application);
+        baselineView.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                return event.getAction() >= 0 && event.getRawX() + event.getRawX()
+                        + event.getRawY() + event.getRawY() + event.getEventTime() != 0;
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            measureDragMoveAllocations(baselineView);
+            measureDragMoveAllocations(mOverlay);
+        }
+        long baselineBytes = measureDragMoveAllocations(baselineView);
+        long overlayBytes = measureDragMoveAllocations(mOverlay);
+
+        long extraBytes = overlayBytes - baselineBytes;
+        assertTrue("Drag moves allocated " + extraBytes + " bytes", extraBytes < MOVES_PER_DRAG * MAX_BYTES_PER_MOVE);
+    }
+
+    /** Replays a drag, and returns the bytes allocated by its moves after the drag started. The
+     * down event, the move that starts the drag and the up event are left out, since those show
+     * and hide the remove view. */
+    private long measureDragMoveAllocations(View view) {
+        MotionEvent[] drag = obtainDrag(500, 500, 500 + MOVES_PER_DRAG * MOVE_DISTANCE, 500, MOVES_PER_DRAG, 0);
+        mWindowSink.clear();
+        replay(view, drag, 0, 2);
+        long startBytes = ThreadAllocations.getAllocatedBytes();
+        replay(view, drag, 2, drag.length - 1);
+        long endBytes = ThreadAllocations.getAllocatedBytes();
+        replay(view, drag, drag.length - 1, drag.length);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        return endBytes - startBytes;
+    }
+
+    /** The bytes allocated by the current thread. Only this class refers to `com.sun.management`,
+     * and only after checking the class exists, so the test still loads on other JVMs. */
+    private static final class ThreadAllocations {
+
+        static boolean isSupported() {
+            try {
+                Class.forName("com.sun.management.ThreadMXBean");
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+                return false;
+            }
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            return sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled();
+        }
+
+        static long getAllocatedBytes() {
+            com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    private static void replay(View view, MotionEvent[] events) {
+        replay(view, events, 0, events.length);
+    }
+
+    private static void replay(View view, MotionEvent[] events, int start, int end) {
+        for (int i = start; i < end; i++) {
+            view.dispatchTouchEvent(events[i]);
+        }
+    }
+
+    private static MotionEvent[] obtainTap(float x, float y, long downTime) {
+        return new MotionEvent[] {
+                MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, y, 0),
+                MotionEvent.obtain(downTime, downTime + 50, MotionEvent.ACTION_UP, x, y, 0)
+        };
+    }
+
+    /** Returns a down event, evenly spaced moves ending at the end point, and an up event there. */
+    private static MotionEvent[] obtainDrag(float fromX, float fromY, float toX, float toY, int moveCount, long downTime) {
+        MotionEvent[] events = new MotionEvent[moveCount + 2];
+        events[0] = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, fromX, fromY, 0);
+        for (int i = 1; i <= moveCount; i++) {
+            float fraction = i / (float) moveCount;
+            events[i] = MotionEvent.obtain(downTime, downTime + i * MOVE_INTERVAL_MILLIS, MotionEvent.ACTION_MOVE,
+                    fromX + (toX - fromX) * fraction, fromY + (toY - fromY) * fraction, 0);
+        }
+        long upTime = downTime + moveCount * MOVE_INTERVAL_MILLIS;
+        events[moveCount + 1] = MotionEvent.obtain(downTime, upTime, MotionEvent.ACTION_UP, toX, toY, 0);
+        return events;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Feeds synthetic frame timings to a {@link MoveRateGovernor}, as if the main thread kept up with
+ * the display or fell behind it. Plain JVM, no Android needed. */
+public class MoveRateGovernorTest {
+
+    private static final long FRAME_NANOS = 16666667;
+
+    private MoveRateGovernor mGovernor;
+    private long mFrameTimeNanos;
+
+    @Before
+    public void setUp() {
+        mGovernor = new MoveRateGovernor();
+        mGovernor.reset(FRAME_NANOS);
+        mFrameTimeNanos = 1000000000;
+    }
+
+    @Test
+    public void framesOnTime_keepFullRate() {
+        runFrames(60, 1);
+
+        assertEquals(0, mGovernor.getUpdateIntervalNanos());
+    }
+
+    @Test
+    public void singleLateFrame_keepsFullRate() {
+        runFrames(30, 1);
+        runFrames(1, 2);
+        runFrames(30, 1);
+
+        assertEquals(0, mGovernor.getUpdateIntervalNanos());
+    }
+
+    @Test
+    public void busyMainThread_throttles() {
+        runFrames(10, 3);
+
+        long interval = mGovernor.getUpdateIntervalNanos();
+        assertTrue("Interval " + interval, interval >= 3 * FRAME_NANOS * MoveRateGovernor.FRAMES_PER_UPDATE * 9 / 10);
+    }
+
+    @Test
+    public void veryBusyMainThread_isLimitedToMaxInterval() {
+        runFrames(10, 20);
+
+        assertEquals(MoveRateGovernor.MAX_UPDATE_INTERVAL_MILLIS * 1000000, mGovernor.getUpdateIntervalNanos());
+    }
+
+    @Test
+    public void idleMainThread_returnsToFullRate() {
+        runFrames(10, 3);
+        runFrames(20, 1);
+
+        assertEquals(0, mGovernor.getUpdateIntervalNanos());
+    }
+
+    @Test
+    public void frameTimesBetweenThresholds_keepTheCurrentRate() {
+        runFrames(30, 1);
+        runFrames(30, 1.35f);
+        assertEquals(0, mGovernor.getUpdateIntervalNanos());
+
+        runFrames(10, 3);
+        runFrames(30, 1.35f);
+        assertTrue(mGovernor.getUpdateIntervalNanos() > 0);
+    }
+
+    @Test
+    public void reset_forgetsLoad() {
+        runFrames(10, 3);
+        mGovernor.reset(FRAME_NANOS);
+
+        assertEquals(0, mGovernor.getUpdateIntervalNanos());
+    }
+
+    @Test
+    public void isUpdateDue_allowsHalfAFrameOfJitter() {
+        runFrames(10, 3);
+        long interval = mGovernor.getUpdateIntervalNanos();
+
+        assertTrue(mGovernor.isUpdateDue(0, interval - FRAME_NANOS / 2));
+        assertFalse(mGovernor.isUpdateDue(0, interval - FRAME_NANOS));
+    }
+
+    /** Run this many frames, each taking this many frame intervals. */
+    private void runFrames(int count, float framesPerFrame) {
+        for (int i = 0; i < count; i++) {
+            mFrameTimeNanos += (long) (framesPerFrame * FRAME_NANOS);
+            mGovernor.onFrame(mFrameTimeNanos);
+        }
+    }
+
+}
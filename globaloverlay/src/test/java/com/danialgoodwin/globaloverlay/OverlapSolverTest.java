@@ -0,0 +1,212 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the places an {@link OverlapSolver} finds: never on another box or the reserved area,
+ * always within the bounds, and as close to where the box was released as possible. Plain JVM, no
+ * Android needed. */
+public class OverlapSolverTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int SIZE = 150;
+
+    private OverlapSolver mSolver;
+    /** Boxes as {left, top, width, height}, by id. */
+    private final ArrayList<int[]> mBoxes = new ArrayList<int[]>();
+    /** The reserved area as {left, top, right, bottom}, or null. */
+    private int[] mReservedArea;
+
+    @Before
+    public void setUp() {
+        mSolver = new OverlapSolver();
+        mSolver.setBounds(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void freeRelease_docksAtNearestEdgeAtTheSameHeight() {
+        int left = add(200, 500, SIZE, SIZE);
+        assertTrue(mSolver.solve(left, 200, 500));
+        assertEquals(0, mSolver.getSolvedLeft());
+        assertEquals(500, mSolver.getSolvedTop());
+
+        int right = add(700, 800, SIZE, SIZE);
+        assertTrue(mSolver.solve(right, 700, 800));
+        assertEquals(WIDTH - SIZE, mSolver.getSolvedLeft());
+        assertEquals(800, mSolver.getSolvedTop());
+    }
+
+    @Test
+    public void releaseOutsideBounds_isKeptInside() {
+        int id = add(-100, -300, SIZE, SIZE);
+        assertTrue(mSolver.solve(id, -100, -300));
+        assertEquals(0, mSolver.getSolvedTop());
+
+        assertTrue(mSolver.solve(id, 2000, 5000));
+        assertEquals(WIDTH - SIZE, mSolver.getSolvedLeft());
+        assertEquals(HEIGHT - SIZE, mSolver.getSolvedTop());
+    }
+
+    @Test
+    public void takenPlace_movesToClosestFreeHeightInTheSameColumn() {
+        place(add(0, 500, SIZE, SIZE));
+        int id = add(100, 520, SIZE, SIZE);
+
+        assertTrue(mSolver.solve(id, 100, 520));
+
+        assertEquals(0, mSolver.getSolvedLeft());
+        // Just below the other box is closer than just above it.
+        assertEquals(650, mSolver.getSolvedTop());
+    }
+
+    @Test
+    public void fullColumn_movesToTheOtherEdge() {
+        for (int top = 0; top + SIZE <= HEIGHT; top += SIZE) {
+            place(add(0, top, SIZE, SIZE));
+        }
+        int id = add(100, 600, SIZE, SIZE);
+
+        assertTrue(mSolver.solve(id, 100, 600));
+
+        assertEquals(WIDTH - SIZE, mSolver.getSolvedLeft());
+        assertEquals(600, mSolver.getSolvedTop());
+    }
+
+    @Test
+    public void reservedArea_isAvoided() {
+        setReservedArea(0, 900, WIDTH, 1100);
+        int id = add(0, 950, SIZE, SIZE);
+
+        assertTrue(mSolver.solve(id, 0, 950));
+        assertNoOverlap(id, mSolver.getSolvedLeft(), mSolver.getSolvedTop());
+
+        assertEquals(0, mSolver.getSolvedLeft());
+        // Below the area is 150 pixels away, above it 200.
+        assertEquals(1100, mSolver.getSolvedTop());
+        mSolver.clearReservedArea();
+        assertTrue(mSolver.solve(id, 0, 950));
+        assertEquals(950, mSolver.getSolvedTop());
+    }
+
+    @Test
+    public void wideBoxStartingFarLeft_stillBlocksTheRightColumn() {
+        // Starts well before the right column, so only the widest box bounds the sweep to it.
+        place(add(100, 400, WIDTH - 100, SIZE));
+        int id = add(WIDTH - SIZE, 400, SIZE, SIZE);
+
+        assertTrue(mSolver.solve(id, WIDTH - SIZE, 400));
+
+        assertNoOverlap(id, mSolver.getSolvedLeft(), mSolver.getSolvedTop());
+        assertEquals(WIDTH - SIZE, mSolver.getSolvedLeft());
+    }
+
+    @Test
+    public void removedBox_noLongerBlocksAndItsIdIsReused() {
+        int first = add(0, 500, SIZE, SIZE);
+        place(first);
+        mSolver.remove(first);
+        mBoxes.set(first, null);
+
+        int second = add(0, 500, SIZE, SIZE);
+        assertEquals(first, second);
+        assertEquals(1, mSolver.getBoxCount());
+        assertTrue(mSolver.solve(second, 0, 500));
+        assertEquals(500, mSolver.getSolvedTop());
+    }
+
+    @Test
+    public void noFreePlace_returnsFalseAtReleasedPosition() {
+        mSolver.setReservedArea(0, 0, WIDTH, HEIGHT);
+        int id = add(100, 700, SIZE, SIZE);
+
+        assertFalse(mSolver.solve(id, 100, 700));
+
+        assertEquals(0, mSolver.getSolvedLeft());
+        assertEquals(700, mSolver.getSolvedTop());
+    }
+
+    @Test
+    public void randomReleases_neverOverlap() {
+        Random random = new Random(1);
+        setReservedArea(WIDTH / 2 - 150, HEIGHT - 300, WIDTH / 2 + 150, HEIGHT - 100);
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 2000; i++) {
+            if (ids.size() > 40 || (!ids.isEmpty() && random.nextInt(4) == 0)) {
+                // Remove one now and then, so ids get reused.
+                int id = ids.remove(random.nextInt(ids.size()));
+                mSolver.remove(id);
+                mBoxes.set(id, null);
+                continue;
+            }
+            int width = 60 + random.nextInt(200);
+            int height = 60 + random.nextInt(200);
+            int left = random.nextInt(WIDTH + 200) - 100;
+            int top = random.nextInt(HEIGHT + 200) - 100;
+            int id = add(left, top, width, height);
+            ids.add(id);
+            if (mSolver.solve(id, left, top)) {
+                assertNoOverlap(id, mSolver.getSolvedLeft(), mSolver.getSolvedTop());
+                place(id);
+            } else {
+                // Nothing free, don't keep it where it overlaps.
+                ids.remove((Integer) id);
+                mSolver.remove(id);
+                mBoxes.set(id, null);
+            }
+        }
+    }
+
+    private void setReservedArea(int left, int top, int right, int bottom) {
+        mSolver.setReservedArea(left, top, right, bottom);
+        mReservedArea = new int[] {left, top, right, bottom};
+    }
+
+    private int add(int left, int top, int width, int height) {
+        int id = mSolver.add(left, top, width, height);
+        while (mBoxes.size() <= id) {
+            mBoxes.add(null);
+        }
+        mBoxes.set(id, new int[] {left, top, width, height});
+        return id;
+    }
+
+    /** Solve the box where it is and move it to the result, as the engine does on release. */
+    private void place(int id) {
+        int[] box = mBoxes.get(id);
+        assertTrue(mSolver.solve(id, box[0], box[1]));
+        box[0] = mSolver.getSolvedLeft();
+        box[1] = mSolver.getSolvedTop();
+        mSolver.update(id, box[0], box[1], box[2], box[3]);
+    }
+
+    private void assertNoOverlap(int id, int left, int top) {
+        int[] box = mBoxes.get(id);
+        int right = left + box[2];
+        int bottom = top + box[3];
+        assertTrue("Out of bounds at " + left + "," + top,
+                left >= 0 && top >= 0 && right <= WIDTH && bottom <= HEIGHT);
+        if (mReservedArea != null) {
+            assertFalse("Box " + id + " at " + left + "," + top + " overlaps the reserved area",
+                    left < mReservedArea[2] && mReservedArea[0] < right
+                            && top < mReservedArea[3] && mReservedArea[1] < bottom);
+        }
+        for (int other = 0; other < mBoxes.size(); other++) {
+            int[] otherBox = mBoxes.get(other);
+            if (other == id || otherBox == null) {
+                continue;
+            }
+            boolean isOverlapping = left < otherBox[0] + otherBox[2] && otherBox[0] < right
+                    && top < otherBox[1] + otherBox[3] && otherBox[1] < bottom;
+            assertFalse("Box " + id + " at " + left + "," + top + " overlaps box " + other, isOverlapping);
+        }
+    }
+
+}
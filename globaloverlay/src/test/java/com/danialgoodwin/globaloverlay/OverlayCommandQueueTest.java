@@ -0,0 +1,323 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.Context;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/** Posts overlay commands from worker threads, then runs the main thread and checks which window
+ * manager calls the drained and merged commands turned into. The main looper is paused while the
+ * workers post, so nothing runs on their threads. */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class OverlayCommandQueueTest {
+
+    private static final int THREAD_COUNT = 4;
+    private static final int VIEWS_PER_THREAD = 8;
+    private static final int MOVES_PER_VIEW = 50;
+
+    private Context mContext;
+    private RecordingWindowSink mWindowSink;
+    private GlobalOverlay mGlobalOverlay;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mWindowSink = new RecordingWindowSink(null, 256);
+        mGlobalOverlay = new GlobalOverlay(mContext, new View(mContext), false, false, mWindowSink);
+        mWindowSink.clear();
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void repeatedMoves_applyOnlyTheLast() {
+        final View view = addOverlayNow();
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                for (int i = 1; i <= MOVES_PER_VIEW; i++) {
+                    mGlobalOverlay.postMoveOverlayView(view, i, -i);
+                }
+            }
+        });
+        assertEquals(0, mWindowSink.getCallCount());
+
+        runFrames();
+        assertEquals(1, mWindowSink.getCallCount());
+        assertCall(0, RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, view);
+        assertEquals(MOVES_PER_VIEW, mWindowSink.getCallX(0));
+        assertEquals(-MOVES_PER_VIEW, mWindowSink.getCallY(0));
+    }
+
+    @Test
+    public void addThenRemove_cancelOut() {
+        final View view = new View(mContext);
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postAddOverlayView(view, null, null, null);
+                mGlobalOverlay.postMoveOverlayView(view, 10, 20);
+                mGlobalOverlay.postRemoveOverlayView(view);
+            }
+        });
+        runFrames();
+
+        assertEquals(0, mWindowSink.getCallCount());
+        assertEquals(0, mGlobalOverlay.getOverlayCount());
+    }
+
+    @Test
+    public void addThenMove_addsBeforeMoving() {
+        final View view = new View(mContext);
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postAddOverlayView(view, null, null, null);
+                mGlobalOverlay.postMoveOverlayView(view, 10, 20);
+                mGlobalOverlay.postMoveOverlayView(view, 30, 40);
+            }
+        });
+        runFrames();
+
+        assertEquals(2, mWindowSink.getCallCount());
+        assertCall(0, RecordingWindowSink.CALL_ADD_VIEW, view);
+        assertCall(1, RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, view);
+        assertEquals(30, mWindowSink.getCallX(1));
+        assertEquals(40, mWindowSink.getCallY(1));
+        assertEquals(1, mGlobalOverlay.getOverlayCount());
+    }
+
+    @Test
+    public void moveThenAdd_dropsTheMoveBeforeTheAdd() {
+        final View view = new View(mContext);
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postMoveOverlayView(view, 10, 20);
+                mGlobalOverlay.postAddOverlayView(view, null, null, null);
+            }
+        });
+        runFrames();
+
+        assertEquals(1, mWindowSink.getCallCount());
+        assertCall(0, RecordingWindowSink.CALL_ADD_VIEW, view);
+        assertEquals(0, mWindowSink.getCallX(0));
+    }
+
+    @Test
+    public void removeThenAddOfAShownOverlay_removesBeforeAddingAgain() {
+        final View view = addOverlayNow();
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postMoveOverlayView(view, 10, 20);
+                mGlobalOverlay.postRemoveOverlayView(view);
+                mGlobalOverlay.postAddOverlayView(view, null, null, null);
+            }
+        });
+        runFrames();
+
+        assertEquals(2, mWindowSink.getCallCount());
+        assertCall(0, RecordingWindowSink.CALL_REMOVE_VIEW, view);
+        assertCall(1, RecordingWindowSink.CALL_ADD_VIEW, view);
+        assertEquals(1, mGlobalOverlay.getOverlayCount());
+    }
+
+    @Test
+    public void removeThenMove_onlyRemoves() {
+        final View view = addOverlayNow();
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postRemoveOverlayView(view);
+                mGlobalOverlay.postMoveOverlayView(view, 10, 20);
+            }
+        });
+        runFrames();
+
+        assertEquals(1, mWindowSink.getCallCount());
+        assertCall(0, RecordingWindowSink.CALL_REMOVE_VIEW, view);
+        assertEquals(0, mGlobalOverlay.getOverlayCount());
+    }
+
+    @Test
+    public void manyThreads_eachViewEndsInItsLastState() {
+        final View[] views = new View[THREAD_COUNT * VIEWS_PER_THREAD];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = new View(mContext);
+        }
+
+        // Each thread owns some views: it adds them all, moves them, and removes every other one.
+        runOnWorkers(THREAD_COUNT, new Worker() {
+            @Override
+            public void run(int index) {
+                for (int i = 0; i < VIEWS_PER_THREAD; i++) {
+                    mGlobalOverlay.postAddOverlayView(views[index * VIEWS_PER_THREAD + i], null, null, null);
+                }
+                for (int move = 1; move <= MOVES_PER_VIEW; move++) {
+                    for (int i = 0; i < VIEWS_PER_THREAD; i++) {
+                        int viewIndex = index * VIEWS_PER_THREAD + i;
+                        mGlobalOverlay.postMoveOverlayView(views[viewIndex], viewIndex, move);
+                    }
+                }
+                for (int i = 1; i < VIEWS_PER_THREAD; i += 2) {
+                    mGlobalOverlay.postRemoveOverlayView(views[index * VIEWS_PER_THREAD + i]);
+                }
+            }
+        });
+        runFrames();
+
+        assertEquals(views.length / 2, mGlobalOverlay.getOverlayCount());
+        for (int viewIndex = 0; viewIndex < views.length; viewIndex++) {
+            View view = views[viewIndex];
+            if (viewIndex % 2 == 1) {
+                assertEquals("View " + viewIndex, 0, callCount(view));
+                continue;
+            }
+            assertEquals("View " + viewIndex, 2, callCount(view));
+            assertEquals(1, mWindowSink.getCallCount(RecordingWindowSink.CALL_ADD_VIEW, view));
+            int update = lastCallIndex(view);
+            assertCall(update, RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, view);
+            assertEquals(viewIndex, mWindowSink.getCallX(update));
+            assertEquals(MOVES_PER_VIEW, mWindowSink.getCallY(update));
+        }
+    }
+
+    @Test
+    public void commandsPostedAfterADrain_applyOnTheNextOne() {
+        final View view = new View(mContext);
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postAddOverlayView(view, null, null, null);
+            }
+        });
+        runFrames();
+        assertEquals(1, mGlobalOverlay.getOverlayCount());
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postMoveOverlayView(view, 10, 20);
+            }
+        });
+        runFrames();
+
+        assertEquals(2, mWindowSink.getCallCount());
+        assertCall(1, RecordingWindowSink.CALL_UPDATE_VIEW_LAYOUT, view);
+        assertEquals(10, mWindowSink.getCallX(1));
+    }
+
+    @Test
+    public void destroy_dropsPendingCommands() {
+        final View view = new View(mContext);
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postAddOverlayView(view, null, null, null);
+            }
+        });
+        mGlobalOverlay.destroy();
+        mWindowSink.clear();
+
+        runOnWorkers(1, new Worker() {
+            @Override
+            public void run(int index) {
+                mGlobalOverlay.postAddOverlayView(view, null, null, null);
+            }
+        });
+        runFrames();
+
+        assertEquals(0, callCount(view));
+    }
+
+    private interface Worker {
+        void run(int index);
+    }
+
+    /** Runs the worker on this many threads at once, and waits for all of them. */
+    private static void runOnWorkers(int threadCount, final Worker worker) {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        ArrayList<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        worker.run(index);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+        assertNull(failure.get());
+    }
+
+    private View addOverlayNow() {
+        View view = new View(mContext);
+        mGlobalOverlay.addOverlayView(view, null);
+        mWindowSink.clear();
+        return view;
+    }
+
+    /** Runs the main thread until the posted drain and the frame it asked for have both run. */
+    private static void runFrames() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    private int callCount(View view) {
+        int count = 0;
+        for (int i = 0; i < mWindowSink.getCallCount(); i++) {
+            if (mWindowSink.getCallView(i) == view) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int lastCallIndex(View view) {
+        for (int i = mWindowSink.getCallCount() - 1; i >= 0; i--) {
+            if (mWindowSink.getCallView(i) == view) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void assertCall(int index, int callType, View view) {
+        assertEquals(callType, mWindowSink.getCallType(index));
+        assertEquals(view, mWindowSink.getCallView(index));
+    }
+
+}
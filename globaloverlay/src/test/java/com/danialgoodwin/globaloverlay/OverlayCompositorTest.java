@@ -0,0 +1,117 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.view.Gravity;
+import android.view.View;
+import android.view.WindowManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/** Lays out the compositor's host window like the window manager would, with the system bar
+ * insets as its padding, and checks that composited overlays land where their own windows
+ * would. A window without `FLAG_LAYOUT_IN_SCREEN` is placed with `Gravity.apply()` inside the
+ * area between the system bars, which is what the expected positions use. */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class OverlayCompositorTest {
+
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int STATUS_BAR_HEIGHT = 75;
+    private static final int NAVIGATION_BAR_HEIGHT = 144;
+    private static final int OVERLAY_SIZE = 120;
+
+    private Context mContext;
+    private OverlayCompositor mCompositor;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCompositor = new OverlayCompositor(mContext, new RecordingWindowSink(null, 16));
+    }
+
+    @Test
+    public void overlayAtTheOrigin_isCenteredVerticallyBetweenTheBars() {
+        OverlayRecord record = addOverlay(0, 0);
+        layOutHostView();
+
+        assertSamePositionAsWindow(record);
+        int contentHeight = SCREEN_HEIGHT - STATUS_BAR_HEIGHT - NAVIGATION_BAR_HEIGHT;
+        assertEquals(STATUS_BAR_HEIGHT + (contentHeight - OVERLAY_SIZE) / 2, getScreenTop(record));
+    }
+
+    @Test
+    public void overlaysAnywhere_landWhereTheirWindowsWould() {
+        int[][] positions = { { 40, -700 }, { 900, 650 }, { 500, -3 }, { 0, 800 } };
+        OverlayRecord[] records = new OverlayRecord[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            records[i] = addOverlay(positions[i][0], positions[i][1]);
+        }
+        layOutHostView();
+
+        for (OverlayRecord record : records) {
+            assertSamePositionAsWindow(record);
+        }
+    }
+
+    @Test
+    public void movedOverlay_landsWhereItsWindowWould() {
+        OverlayRecord record = addOverlay(100, 100);
+        layOutHostView();
+
+        record.layoutParams.x = 700;
+        record.layoutParams.y = -450;
+        mCompositor.updateOverlay(record);
+
+        assertSamePositionAsWindow(record);
+    }
+
+    private OverlayRecord addOverlay(int x, int y) {
+        WindowManager.LayoutParams params = OverlayEngine.newWindowManagerLayoutParams();
+        params.width = OVERLAY_SIZE;
+        params.height = OVERLAY_SIZE;
+        params.x = x;
+        params.y = y;
+        OverlayRecord record = new OverlayRecord(new View(mContext), params);
+        mCompositor.addOverlay(record);
+        return record;
+    }
+
+    /** What the window manager does for the full screen host window: it covers the screen, and
+     * the insets it asked for become its padding. */
+    private void layOutHostView() {
+        View hostView = mCompositor.getHostView();
+        hostView.setPadding(0, STATUS_BAR_HEIGHT, 0, NAVIGATION_BAR_HEIGHT);
+        hostView.measure(View.MeasureSpec.makeMeasureSpec(SCREEN_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SCREEN_HEIGHT, View.MeasureSpec.EXACTLY));
+        hostView.layout(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+    }
+
+    private void assertSamePositionAsWindow(OverlayRecord record) {
+        Rect contentFrame = new Rect(0, STATUS_BAR_HEIGHT, SCREEN_WIDTH, SCREEN_HEIGHT - NAVIGATION_BAR_HEIGHT);
+        Rect windowFrame = new Rect();
+        WindowManager.LayoutParams params = record.layoutParams;
+        Gravity.apply(params.gravity, params.width, params.height, contentFrame, params.x, params.y, windowFrame);
+
+        assertEquals(windowFrame.left, getScreenLeft(record));
+        assertEquals(windowFrame.top, getScreenTop(record));
+    }
+
+    /** The host window's origin is the screen's, so its coordinates are screen coordinates. */
+    private static int getScreenLeft(OverlayRecord record) {
+        return record.view.getLeft() + (int) record.view.getTranslationX();
+    }
+
+    private static int getScreenTop(OverlayRecord record) {
+        return record.view.getTop() + (int) record.view.getTranslationY();
+    }
+
+}
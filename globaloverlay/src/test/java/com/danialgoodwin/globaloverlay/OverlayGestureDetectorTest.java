@@ -0,0 +1,286 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Feeds made up touch events to an {@link OverlayGestureDetector} and checks the gestures it
+ * reports, with time only passing through the event times and {@link OverlayGestureDetector#onTimeout(long)}. */
+public class OverlayGestureDetectorTest {
+
+    private static final int TOUCH_SLOP = 10;
+    private static final int DOUBLE_TAP_SLOP = 100;
+    private static final long LONG_PRESS_TIMEOUT = 500;
+    private static final long DOUBLE_TAP_TIMEOUT = 300;
+    private static final int MIN_FLING_VELOCITY = 50;
+    private static final int MAX_FLING_VELOCITY = 8000;
+
+    private OverlayGestureDetector mDetector;
+    private final ArrayList<String> mGestures = new ArrayList<String>();
+    private boolean mIsLongPressConsumed;
+    private float mFlingVelocityX;
+    private float mFlingVelocityY;
+
+    @Before
+    public void setUp() {
+        mDetector = new OverlayGestureDetector(TOUCH_SLOP, DOUBLE_TAP_SLOP, LONG_PRESS_TIMEOUT, DOUBLE_TAP_TIMEOUT,
+                MIN_FLING_VELOCITY, MAX_FLING_VELOCITY, new OverlayGestureDetector.Callback() {
+                    @Override
+                    public void onDragStart() {
+                        mGestures.add("dragStart");
+                    }
+
+                    @Override
+                    public boolean onLongPress() {
+                        mGestures.add("longPress");
+                        return mIsLongPressConsumed;
+                    }
+
+                    @Override
+                    public void onClick() {
+                        mGestures.add("click");
+                    }
+
+                    @Override
+                    public void onDoubleTap() {
+                        mGestures.add("doubleTap");
+                    }
+
+                    @Override
+                    public void onDragEnd(float velocityX, float velocityY) {
+                        mGestures.add("dragEnd");
+                    }
+
+                    @Override
+                    public void onFling(float velocityX, float velocityY) {
+                        mGestures.add("fling");
+                        mFlingVelocityX = velocityX;
+                        mFlingVelocityY = velocityY;
+                    }
+                });
+    }
+
+    @Test
+    public void tap_clicks() {
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onUp(100, 100, 1050);
+
+        assertGestures("click");
+        assertEquals(OverlayGestureDetector.NO_TIMEOUT, mDetector.getTimeoutTime());
+    }
+
+    @Test
+    public void moveWithinSlopInBothAxes_stillClicks() {
+        mDetector.onDown(100, 100, 1000);
+        assertFalse(mDetector.onMove(107, 107, 1010));
+        mDetector.onUp(107, 107, 1020);
+
+        assertGestures("click");
+    }
+
+    @Test
+    public void horizontalDragPastSlop_isNotAClick() {
+        mDetector.onDown(100, 100, 1000);
+        assertFalse(mDetector.onMove(108, 100, 1010));
+        assertTrue(mDetector.onMove(111, 100, 1020));
+        mDetector.onUp(111, 100, 1500);
+
+        assertGestures("dragStart", "dragEnd");
+    }
+
+    @Test
+    public void diagonalDragPastSlop_startsADragBeforeEitherAxisDoes() {
+        mDetector.onDown(100, 100, 1000);
+
+        // Neither axis moved more than the slop, but the distance did.
+        assertTrue(mDetector.onMove(108, 108, 1010));
+        assertGestures("dragStart");
+    }
+
+    @Test
+    public void heldDown_timesOutOnceIntoALongPress() {
+        mDetector.onDown(100, 100, 1000);
+        assertEquals(1000 + LONG_PRESS_TIMEOUT, mDetector.getTimeoutTime());
+
+        // Moves within the slop don't move the timeout.
+        mDetector.onMove(103, 100, 1100);
+        assertEquals(1000 + LONG_PRESS_TIMEOUT, mDetector.getTimeoutTime());
+
+        mDetector.onTimeout(1000 + LONG_PRESS_TIMEOUT);
+        assertGestures("longPress");
+        assertEquals(OverlayGestureDetector.NO_TIMEOUT, mDetector.getTimeoutTime());
+
+        mDetector.onTimeout(1000 + 2 * LONG_PRESS_TIMEOUT);
+        assertGestures("longPress");
+    }
+
+    @Test
+    public void consumedLongPress_doesNotClick() {
+        mIsLongPressConsumed = true;
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onTimeout(1000 + LONG_PRESS_TIMEOUT);
+        mDetector.onUp(100, 100, 2000);
+
+        assertGestures("longPress");
+    }
+
+    @Test
+    public void unconsumedLongPress_clicksOnUp() {
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onTimeout(1000 + LONG_PRESS_TIMEOUT);
+        mDetector.onUp(100, 100, 2000);
+
+        assertGestures("longPress", "click");
+    }
+
+    @Test
+    public void lateUpWithoutTimeout_stillLongPresses() {
+        mIsLongPressConsumed = true;
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onUp(100, 100, 1000 + LONG_PRESS_TIMEOUT);
+
+        assertGestures("longPress");
+    }
+
+    @Test
+    public void dragStart_dropsTheLongPressTimeout() {
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onMove(200, 100, 1010);
+
+        assertEquals(OverlayGestureDetector.NO_TIMEOUT, mDetector.getTimeoutTime());
+    }
+
+    @Test
+    public void cancel_dropsTheLongPressTimeout() {
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onCancel();
+        mDetector.onTimeout(1000 + LONG_PRESS_TIMEOUT);
+
+        assertEquals(OverlayGestureDetector.NO_TIMEOUT, mDetector.getTimeoutTime());
+        assertGestures();
+    }
+
+    @Test
+    public void twoCloseTaps_doubleTap() {
+        mDetector.setDoubleTapEnabled(true);
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onUp(100, 100, 1050);
+        assertGestures();
+
+        mDetector.onDown(130, 120, 1200);
+        mDetector.onUp(130, 120, 1250);
+
+        assertGestures("doubleTap");
+        assertEquals(OverlayGestureDetector.NO_TIMEOUT, mDetector.getTimeoutTime());
+    }
+
+    @Test
+    public void singleTapWithDoubleTapEnabled_clicksOnlyAfterTheTimeout() {
+        mDetector.setDoubleTapEnabled(true);
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onUp(100, 100, 1050);
+
+        long timeoutTime = mDetector.getTimeoutTime();
+        assertTrue(timeoutTime > 1050 + DOUBLE_TAP_TIMEOUT);
+        mDetector.onTimeout(1050 + DOUBLE_TAP_TIMEOUT);
+        assertGestures();
+
+        mDetector.onTimeout(timeoutTime);
+        assertGestures("click");
+        assertEquals(OverlayGestureDetector.NO_TIMEOUT, mDetector.getTimeoutTime());
+    }
+
+    @Test
+    public void secondTapTooLate_isTwoClicks() {
+        mDetector.setDoubleTapEnabled(true);
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onUp(100, 100, 1050);
+        mDetector.onDown(100, 100, 1051 + DOUBLE_TAP_TIMEOUT);
+        assertGestures("click");
+
+        mDetector.onUp(100, 100, 1100 + DOUBLE_TAP_TIMEOUT);
+        mDetector.onTimeout(mDetector.getTimeoutTime());
+        assertGestures("click", "click");
+    }
+
+    @Test
+    public void secondTapTooFar_isTwoClicks() {
+        mDetector.setDoubleTapEnabled(true);
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onUp(100, 100, 1050);
+        mDetector.onDown(100 + DOUBLE_TAP_SLOP + 1, 100, 1100);
+        mDetector.onUp(100 + DOUBLE_TAP_SLOP + 1, 100, 1150);
+        mDetector.onTimeout(mDetector.getTimeoutTime());
+
+        assertGestures("click", "click");
+    }
+
+    @Test
+    public void disablingDoubleTap_clicksThePendingTap() {
+        mDetector.setDoubleTapEnabled(true);
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onUp(100, 100, 1050);
+        mDetector.setDoubleTapEnabled(false);
+
+        assertGestures("click");
+        assertEquals(OverlayGestureDetector.NO_TIMEOUT, mDetector.getTimeoutTime());
+    }
+
+    @Test
+    public void fastDrag_flingsWithItsVelocity() {
+        // 2 pixels per millisecond to the right and 1 up, i.e. 2000 and -1000 pixels per second.
+        mDetector.onDown(100, 500, 1000);
+        for (int i = 1; i <= 20; i++) {
+            mDetector.onMove(100 + 2 * 8 * i, 500 - 8 * i, 1000 + 8 * i);
+        }
+        mDetector.onUp(100 + 2 * 8 * 20, 500 - 8 * 20, 1000 + 8 * 20);
+
+        assertGestures("dragStart", "dragEnd", "fling");
+        assertEquals(2000, mFlingVelocityX, 1);
+        assertEquals(-1000, mFlingVelocityY, 1);
+    }
+
+    @Test
+    public void veryFastDrag_clampsTheFlingVelocityKeepingItsDirection() {
+        mDetector.onDown(100, 100, 1000);
+        for (int i = 1; i <= 10; i++) {
+            mDetector.onMove(100 + 300 * i, 100 + 400 * i, 1000 + 10 * i);
+        }
+        mDetector.onUp(100 + 300 * 10, 100 + 400 * 10, 1000 + 10 * 10);
+
+        assertEquals(MAX_FLING_VELOCITY * 3 / 5f, mFlingVelocityX, 1);
+        assertEquals(MAX_FLING_VELOCITY * 4 / 5f, mFlingVelocityY, 1);
+    }
+
+    @Test
+    public void dragThatStopsBeforeUp_doesNotFling() {
+        mDetector.onDown(100, 100, 1000);
+        mDetector.onMove(300, 100, 1050);
+        mDetector.onMove(300, 100, 1500);
+        mDetector.onUp(300, 100, 1510);
+
+        assertGestures("dragStart", "dragEnd");
+    }
+
+    @Test
+    public void repeatedTimestamps_doNotFlingWithAnInfiniteVelocity() {
+        mDetector.onDown(100, 100, 1000);
+        for (int i = 1; i <= 5; i++) {
+            mDetector.onMove(100 + 50 * i, 100, 1000);
+        }
+        mDetector.onUp(400, 100, 1000);
+
+        assertGestures("dragStart", "dragEnd");
+    }
+
+    private void assertGestures(String... expected) {
+        assertEquals(Arrays.asList(expected), mGestures);
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Drives {@link SpringMotion}s through an {@link OverlayMotionEngine} with made up frame times,
+ * the way the overlay engine does on each display frame. Plain JVM, no Android needed. */
+public class OverlayMotionEngineTest {
+
+    private static final long FRAME_NANOS = 1000000000L / 60;
+    /** About half a second at 60 fps, with some room for tuning the spring. */
+    private static final int MAX_SNAP_FRAMES = 36;
+    private static final int MAX_FLING_FRAMES = 45;
+
+    private static final float MIN_X = 0;
+    private static final float MAX_X = 1000;
+    private static final float MIN_Y = -800;
+    private static final float MAX_Y = 800;
+
+    private OverlayMotionEngine mEngine;
+    private long mFrameTimeNanos;
+    /** Updates reported in the current frame, by motion. */
+    private final HashMap<SpringMotion, Integer> mFrameUpdates = new HashMap<SpringMotion, Integer>();
+    private final ArrayList<SpringMotion> mEndedMotions = new ArrayList<SpringMotion>();
+    private int mLastX;
+    private int mLastY;
+    /** Also told of every update and end, to act on motions from inside a frame like the overlay
+     * engine does. */
+    private OverlayMotionEngine.Listener mInFrameListener;
+
+    @Before
+    public void setUp() {
+        mEngine = new OverlayMotionEngine(new OverlayMotionEngine.Listener() {
+            @Override
+            public void onMotionUpdate(SpringMotion motion, int x, int y) {
+                Integer count = mFrameUpdates.get(motion);
+                mFrameUpdates.put(motion, count == null ? 1 : count + 1);
+                mLastX = x;
+                mLastY = y;
+                if (mInFrameListener != null) {
+                    mInFrameListener.onMotionUpdate(motion, x, y);
+                }
+            }
+
+            @Override
+            public void onMotionEnd(SpringMotion motion) {
+                mEndedMotions.add(motion);
+                if (mInFrameListener != null) {
+                    mInFrameListener.onMotionEnd(motion);
+                }
+            }
+        });
+        mFrameTimeNanos = 5000000000L;
+    }
+
+    @Test
+    public void snapToEdge_settlesWithinFrameBound() {
+        SpringMotion motion = new SpringMotion("snap");
+        motion.startSnapToEdge(300, 100, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(motion);
+
+        int frames = runUntilSettled(MAX_SNAP_FRAMES);
+
+        assertTrue("Settled after " + frames + " frames", frames <= MAX_SNAP_FRAMES);
+        assertEquals(0, mLastX);
+        assertEquals(100, mLastY);
+        assertEquals(1, mEndedMotions.size());
+    }
+
+    @Test
+    public void fling_settlesWithinFrameBoundOnTheFlungSide() {
+        SpringMotion motion = new SpringMotion("fling");
+        motion.startSnapToEdge(300, 0, 4000, -2000, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(motion);
+
+        int frames = runUntilSettled(MAX_FLING_FRAMES);
+
+        assertTrue("Settled after " + frames + " frames", frames <= MAX_FLING_FRAMES);
+        assertEquals((int) MAX_X, mLastX);
+        assertEquals(-400, mLastY);
+    }
+
+    @Test
+    public void manyMotions_getAtMostOneUpdatePerFrame() {
+        for (int i = 0; i < 10; i++) {
+            SpringMotion motion = new SpringMotion(i);
+            motion.startSnapToEdge(100 * i, 50 * i, 500 * (i - 5), 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+            mEngine.add(motion);
+            // Adding again must not step it twice.
+            mEngine.add(motion);
+        }
+
+        runUntilSettled(MAX_FLING_FRAMES);
+
+        assertEquals(10, mEndedMotions.size());
+    }
+
+    @Test
+    public void frameBeforeStart_sendsNoUpdate() {
+        SpringMotion motion = new SpringMotion("early");
+        motion.startSnapToEdge(300, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(motion);
+
+        // Frame times are vsync times, which can be before the motion started.
+        mEngine.doFrame(mFrameTimeNanos - FRAME_NANOS / 2);
+
+        assertTrue(mFrameUpdates.isEmpty());
+        assertTrue(mEngine.isRunning());
+    }
+
+    @Test
+    public void longFrameGap_doesNotOvershootWildly() {
+        SpringMotion motion = new SpringMotion("blocked");
+        motion.startSnapToEdge(300, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(motion);
+
+        // The main thread was blocked for a second.
+        mFrameTimeNanos += 1000000000L;
+        mEngine.doFrame(mFrameTimeNanos);
+
+        assertTrue("Jumped to " + mLastX, mLastX > 0 && mLastX < 300);
+    }
+
+    @Test
+    public void cancelledMotion_isNotReportedAgain() {
+        SpringMotion motion = new SpringMotion("cancelled");
+        motion.startSnapToEdge(300, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(motion);
+        nextFrame();
+
+        mEngine.cancel(motion);
+        mFrameUpdates.clear();
+        nextFrame();
+
+        assertTrue(mFrameUpdates.isEmpty());
+        assertTrue(mEndedMotions.isEmpty());
+        assertFalse(mEngine.isRunning());
+    }
+
+    @Test
+    public void motionCancelledAndRestartedInAFrame_stillEnds() {
+        final SpringMotion first = new SpringMotion("first");
+        final SpringMotion restarted = new SpringMotion("restarted");
+        first.startSnapToEdge(300, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        restarted.startSnapToEdge(700, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(first);
+        mEngine.add(restarted);
+        mInFrameListener = new OverlayMotionEngine.Listener() {
+            @Override
+            public void onMotionUpdate(SpringMotion motion, int x, int y) {
+                if (motion == first) {
+                    // Like a user's move of another overlay interrupting the animation, then
+                    // starting it again, before the restarted motion was stepped.
+                    mEngine.cancel(restarted);
+                    restarted.startSnapToEdge(restarted.getX(), 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+                    mEngine.add(restarted);
+                    mInFrameListener = null;
+                }
+            }
+
+            @Override
+            public void onMotionEnd(SpringMotion motion) {}
+        };
+
+        runUntilSettled(2 * MAX_SNAP_FRAMES);
+
+        assertFalse(mEngine.isRunning());
+        assertTrue(mEndedMotions.contains(first));
+        assertTrue(mEndedMotions.contains(restarted));
+    }
+
+    @Test
+    public void motionCancelledAfterItsStepAndRestartedInTheSameFrame_stillEnds() {
+        final SpringMotion early = new SpringMotion("early");
+        final SpringMotion late = new SpringMotion("late");
+        early.startSnapToEdge(300, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        late.startSnapToEdge(700, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(early);
+        mEngine.add(late);
+        mInFrameListener = new OverlayMotionEngine.Listener() {
+            @Override
+            public void onMotionUpdate(SpringMotion motion, int x, int y) {
+                if (motion == late) {
+                    mEngine.cancel(early);
+                    early.startSnapToEdge(early.getX(), 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+                    mEngine.add(early);
+                    mInFrameListener = null;
+                }
+            }
+
+            @Override
+            public void onMotionEnd(SpringMotion motion) {}
+        };
+
+        runUntilSettled(2 * MAX_SNAP_FRAMES);
+
+        assertFalse(mEngine.isRunning());
+        assertEquals(2, mEndedMotions.size());
+        assertTrue(mEndedMotions.contains(early));
+    }
+
+    @Test
+    public void motionRestartedWhenItEnds_runsAgainAndEndsAgain() {
+        final SpringMotion motion = new SpringMotion("chained");
+        motion.startSnapToEdge(300, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(motion);
+        mInFrameListener = new OverlayMotionEngine.Listener() {
+            @Override
+            public void onMotionUpdate(SpringMotion motion, int x, int y) {}
+
+            @Override
+            public void onMotionEnd(SpringMotion ended) {
+                // Like overlap avoidance moving an overlay on once it has settled.
+                mInFrameListener = null;
+                motion.startSnapToEdge(300, 400, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+                mEngine.add(motion);
+            }
+        };
+
+        runUntilSettled(2 * MAX_SNAP_FRAMES);
+
+        assertFalse(mEngine.isRunning());
+        assertEquals(2, mEndedMotions.size());
+        assertEquals(0, motion.getX());
+        assertEquals(400, motion.getY());
+    }
+
+    @Test
+    public void motionDroppedEarlierInAFrame_canBeAddedAgainInIt() {
+        final SpringMotion cancelled = new SpringMotion("cancelled");
+        final SpringMotion other = new SpringMotion("other");
+        cancelled.startSnapToEdge(300, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        other.startSnapToEdge(700, 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+        mEngine.add(cancelled);
+        mEngine.add(other);
+        nextFrame();
+
+        // Cancelled on the motion itself, so its entry is only dropped on the next frame, which
+        // then restarts it from another motion's update.
+        mInFrameListener = new OverlayMotionEngine.Listener() {
+            @Override
+            public void onMotionUpdate(SpringMotion motion, int x, int y) {
+                if (motion == other) {
+                    cancelled.startSnapToEdge(cancelled.getX(), 0, 0, 0, MIN_X, MAX_X, MIN_Y, MAX_Y, mFrameTimeNanos);
+                    mEngine.add(cancelled);
+                    mInFrameListener = null;
+                }
+            }
+
+            @Override
+            public void onMotionEnd(SpringMotion motion) {}
+        };
+        cancelled.cancel();
+
+        runUntilSettled(2 * MAX_SNAP_FRAMES);
+
+        assertFalse(mEngine.isRunning());
+        assertTrue(mEndedMotions.contains(cancelled));
+    }
+
+    /** Run frames until no motion is left, checking that no motion was reported twice in a frame.
+     * @return the number of frames it took, or more than the limit if it didn't settle */
+    private int runUntilSettled(int maxFrames) {
+        int frames = 0;
+        while (mEngine.isRunning() && frames <= maxFrames) {
+            nextFrame();
+            frames++;
+            for (Integer count : mFrameUpdates.values()) {
+                assertEquals("Updates in frame " + frames, 1, (int) count);
+            }
+        }
+        return frames;
+    }
+
+    private void nextFrame() {
+        mFrameUpdates.clear();
+        mFrameTimeNanos += FRAME_NANOS;
+        mEngine.doFrame(mFrameTimeNanos);
+    }
+
+}
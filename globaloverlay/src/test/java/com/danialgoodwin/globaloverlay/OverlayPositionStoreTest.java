@@ -0,0 +1,196 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Writes overlay positions with an {@link OverlayPositionStore} and reads them back with a new
+ * store, the way a restarted service does. Writes run right away on the test thread, so the file
+ * can be checked as soon as the delayed write is due. */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class OverlayPositionStoreTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private Handler mHandler;
+    private int mWriteCount;
+    private final Executor mWriteExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mWriteCount++;
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "positions");
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    @Test
+    public void flushedEntries_areReadBackByANewStore() {
+        OverlayPositionStore store = newStore();
+        store.put("chat", 10, -20, 100, 200);
+        store.put("\u00fcber \u2603", Integer.MIN_VALUE, Integer.MAX_VALUE, -2, -1);
+        store.flush();
+
+        OverlayPositionStore restored = newStore();
+        assertEntry(restored.get("chat"), 10, -20, 100, 200);
+        assertEntry(restored.get("\u00fcber \u2603"), Integer.MIN_VALUE, Integer.MAX_VALUE, -2, -1);
+        assertNull(restored.get("other"));
+    }
+
+    @Test
+    public void latestChange_winsOverEarlierOnes() {
+        OverlayPositionStore store = newStore();
+        store.put("chat", 10, 20, 100, 200);
+        store.put("chat", 30, 40, 100, 200);
+        store.flush();
+
+        assertEntry(newStore().get("chat"), 30, 40, 100, 200);
+    }
+
+    @Test
+    public void missingFile_hasNoEntries() {
+        assertFalse(mFile.exists());
+        assertNull(newStore().get("chat"));
+    }
+
+    @Test
+    public void truncatedFile_isIgnored() throws IOException {
+        OverlayPositionStore store = newStore();
+        store.put("chat", 10, 20, 100, 200);
+        store.put("music", 30, 40, 100, 200);
+        store.flush();
+
+        // Cut into the last entry, so the first one reads fine but the file as a whole doesn't.
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 6);
+        } finally {
+            file.close();
+        }
+
+        OverlayPositionStore restored = newStore();
+        assertNull(restored.get("chat"));
+        assertNull(restored.get("music"));
+    }
+
+    @Test
+    public void fileWithoutTheMagicNumber_isIgnored() throws IOException {
+        writeFile(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+
+        assertNull(newStore().get("chat"));
+    }
+
+    @Test
+    public void emptyFile_isIgnored() throws IOException {
+        writeFile(new byte[0]);
+
+        assertNull(newStore().get("chat"));
+    }
+
+    @Test
+    public void corruptFile_isReplacedOnTheNextWrite() throws IOException {
+        writeFile(new byte[] {0x47, 0x4f, 0x56, 0x50, 0, 0, 0, 1, 0x7f, 0, 0, 0});
+
+        OverlayPositionStore store = newStore();
+        assertNull(store.get("chat"));
+        store.put("chat", 10, 20, 100, 200);
+        store.flush();
+
+        assertEntry(newStore().get("chat"), 10, 20, 100, 200);
+    }
+
+    @Test
+    public void burstOfChanges_isWrittenOnceAfterTheDelay() {
+        OverlayPositionStore store = newStore();
+        for (int i = 0; i < 10; i++) {
+            store.put("chat", i, i, 100, 200);
+            ShadowLooper.idleMainLooper(100);
+        }
+        assertEquals(0, mWriteCount);
+        assertFalse(mFile.exists());
+
+        ShadowLooper.idleMainLooper(1000);
+        assertEquals(1, mWriteCount);
+        assertEntry(newStore().get("chat"), 9, 9, 100, 200);
+    }
+
+    @Test
+    public void unchangedEntry_isNotWrittenAgain() {
+        OverlayPositionStore store = newStore();
+        store.put("chat", 10, 20, 100, 200);
+        store.flush();
+        store.put("chat", 10, 20, 100, 200);
+        store.flush();
+        ShadowLooper.idleMainLooper(1000);
+
+        assertEquals(1, mWriteCount);
+    }
+
+    @Test
+    public void flush_writesOnlyWhenSomethingChanged() {
+        OverlayPositionStore store = newStore();
+        store.flush();
+        assertEquals(0, mWriteCount);
+
+        store.put("chat", 10, 20, 100, 200);
+        store.flush();
+        ShadowLooper.idleMainLooper(1000);
+        assertEquals(1, mWriteCount);
+    }
+
+    @Test
+    public void forFile_sharesOneStorePerFile() {
+        OverlayPositionStore store = OverlayPositionStore.forFile(mFile, mHandler);
+
+        assertSame(store, OverlayPositionStore.forFile(new File(mFolder.getRoot(), "positions"), mHandler));
+        assertTrue(store != OverlayPositionStore.forFile(new File(mFolder.getRoot(), "other"), mHandler));
+    }
+
+    private OverlayPositionStore newStore() {
+        return new OverlayPositionStore(mFile, mHandler, mWriteExecutor);
+    }
+
+    private void writeFile(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertEntry(OverlayPositionStore.Entry entry, int x, int y, int width, int height) {
+        assertEquals(x, entry.x);
+        assertEquals(y, entry.y);
+        assertEquals(width, entry.width);
+        assertEquals(height, entry.height);
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.danialgoodwin.globaloverlay;
+
+import android.view.View;
+import android.view.WindowManager;
+
+/** A {@link WindowSink} that logs every call with its time and the position it set, and then
+ * optionally passes it on. Calls are kept in parallel arrays that only grow when full, so
+ * recording doesn't allocate per call once the capacity is large enough.
+ *
+ * Used to count and replay window manager IPC off-device, e.g. in performance tests. */
+final class RecordingWindowSink implements WindowSink {
+
+    static final int CALL_ADD_VIEW = 0;
+    static final int CALL_UPDATE_VIEW_LAYOUT = 1;
+    static final int CALL_REMOVE_VIEW = 2;
+
+    private final WindowSink mDelegate;
+
+    private int mCallCount;
+    private int[] mCallTypes;
+    private View[] mCallViews;
+    private int[] mCallXs;
+    private int[] mCallYs;
+    private long[] mCallTimesNanos;
+
+    /** @param delegate where to pass the calls on to, or null to only record them
+     * @param initialCapacity number of calls that can be recorded before growing */
+    RecordingWindowSink(WindowSink delegate, int initialCapacity) {
+        mDelegate = delegate;
+        int capacity = Math.max(1, initialCapacity);
+        mCallTypes = new int[capacity];
+        mCallViews = new View[capacity];
+        mCallXs = new int[capacity];
+        mCallYs = new int[capacity];
+        mCallTimesNanos = new long[capacity];
+    }
+
+    @Override
+    public void addView(View view, WindowManager.LayoutParams params) {
+        record(CALL_ADD_VIEW, view, params.x, params.y);
+        if (mDelegate != null) {
+            mDelegate.addView(view, params);
+        }
+    }
+
+    @Override
+    public void updateViewLayout(View view, WindowManager.LayoutParams params) {
+        record(CALL_UPDATE_VIEW_LAYOUT, view, params.x, params.y);
+        if (mDelegate != null) {
+            mDelegate.updateViewLayout(view, params);
+        }
+    }
+
+    @Override
+    public void removeView(View view) {
+        record(CALL_REMOVE_VIEW, view, 0, 0);
+        if (mDelegate != null) {
+            mDelegate.removeView(view);
+        }
+    }
+
+    /** Forget all recorded calls, keeping the capacity. */
+    void clear() {
+        for (int i = 0; i < mCallCount; i++) {
+            mCallViews[i] = null;
+        }
+        mCallCount = 0;
+    }
+
+    int getCallCount() {
+        return mCallCount;
+    }
+
+    /** Return the number of recorded calls of this type, e.g. {@link #CALL_UPDATE_VIEW_LAYOUT}. */
+    int getCallCount(int callType) {
+        int count = 0;
+        for (int i = 0; i < mCallCount; i++) {
+            if (mCallTypes[i] == callType) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Return the number of recorded calls of this type for this view. */
+    int getCallCount(int callType, View view) {
+        int count = 0;
+        for (int i = 0; i < mCallCount; i++) {
+            if (mCallTypes[i] == callType && mCallViews[i] == view) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int getCallType(int index) {
+        return mCallTypes[index];
+    }
+
+    View getCallView(int index) {
+        return mCallViews[index];
+    }
+
+    /** Return the x of the layout params at the time of the call. */
+    int getCallX(int index) {
+        return mCallXs[index];
+    }
+
+    /** Return the y of the layout params at the time of the call. */
+    int getCallY(int index) {
+        return mCallYs[index];
+    }
+
+    /** Return the time of the call, in the `System.nanoTime()` time base. */
+    long getCallTimeNanos(int index) {
+        return mCallTimesNanos[index];
+    }
+
+    private void record(int callType, View view, int x, int y) {
+        if (mCallCount == mCallTypes.length) {
+            grow();
+        }
+        mCallTypes[mCallCount] = callType;
+        mCallViews[mCallCount] = view;
+        mCallXs[mCallCount] = x;
+        mCallYs[mCallCount] = y;
+        mCallTimesNanos[mCallCount] = System.nanoTime();
+        mCallCount++;
+    }
+
+    private void grow() {
+        int capacity = mCallTypes.length * 2;
+        int[] callTypes = new int[capacity];
+        View[] callViews = new View[capacity];
+        int[] callXs = new int[capacity];
+        int[] callYs = new int[capacity];
+        long[] callTimesNanos = new long[capacity];
+        System.arraycopy(mCallTypes, 0, callTypes, 0, mCallCount);
+        System.arraycopy(mCallViews, 0, callViews, 0, mCallCount);
+        System.arraycopy(mCallXs, 0, callXs, 0, mCallCount);
+        System.arraycopy(mCallYs, 0, callYs, 0, mCallCount);
+        System.arraycopy(mCallTimesNanos, 0, callTimesNanos, 0, mCallCount);
+        mCallTypes = callTypes;
+        mCallViews = callViews;
+        mCallXs = callXs;
+        mCallYs = callYs;
+        mCallTimesNanos = callTimesNanos;
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks a {@link TimerWheel} by hand and against a naive model that keeps one deadline per
+ * timer, with random schedules, cancels and advances, including from inside callbacks. Plain JVM,
+ * no Android needed. */
+public class TimerWheelTest {
+
+    private static final long TICK_MILLIS = 500;
+    private static final int SLOT_COUNT = 8;
+    private static final int TIMER_COUNT = 50;
+    private static final long MAX_DELAY_MILLIS = 20000;
+
+    private TimerWheel mWheel;
+    private final ArrayList<TimerWheel.Timer> mExpired = new ArrayList<TimerWheel.Timer>();
+
+    @Before
+    public void setUp() {
+        mWheel = new TimerWheel(SLOT_COUNT, TICK_MILLIS, new TimerWheel.Callback() {
+            @Override
+            public void onTimerExpired(TimerWheel.Timer timer) {
+                mExpired.add(timer);
+            }
+        });
+    }
+
+    @Test
+    public void timer_expiresOnTheTickAfterItsDeadline() {
+        TimerWheel.Timer timer = new TimerWheel.Timer("a");
+        mWheel.schedule(timer, 0, 1200);
+
+        mWheel.advance(1000);
+        assertTrue(mExpired.isEmpty());
+        mWheel.advance(1500);
+
+        assertEquals(1, mExpired.size());
+        assertFalse(timer.isScheduled());
+        assertTrue(mWheel.isEmpty());
+    }
+
+    @Test
+    public void timerBeyondOneTurn_waitsForItsTurn() {
+        TimerWheel.Timer timer = new TimerWheel.Timer("far");
+        long delay = 3 * SLOT_COUNT * TICK_MILLIS + TICK_MILLIS;
+        mWheel.schedule(timer, 0, delay);
+
+        for (long now = 0; now < delay; now += TICK_MILLIS) {
+            mWheel.advance(now);
+        }
+        assertTrue(mExpired.isEmpty());
+        mWheel.advance(delay);
+
+        assertEquals(1, mExpired.size());
+    }
+
+    @Test
+    public void laterDeadline_replacesEarlierOne() {
+        TimerWheel.Timer timer = new TimerWheel.Timer("rearmed");
+        mWheel.schedule(timer, 0, 1000);
+        mWheel.schedule(timer, 500, 1000);
+
+        mWheel.advance(1000);
+        assertTrue(mExpired.isEmpty());
+        mWheel.advance(1500);
+
+        assertEquals(1, mExpired.size());
+    }
+
+    @Test
+    public void earlierDeadline_replacesLaterOne() {
+        TimerWheel.Timer timer = new TimerWheel.Timer("hurried");
+        mWheel.schedule(timer, 0, 5000);
+        mWheel.schedule(timer, 0, 1000);
+
+        mWheel.advance(1000);
+
+        assertEquals(1, mExpired.size());
+    }
+
+    @Test
+    public void cancelledTimer_neverExpires() {
+        TimerWheel.Timer timer = new TimerWheel.Timer("cancelled");
+        mWheel.schedule(timer, 0, 1000);
+        mWheel.cancel(timer);
+
+        mWheel.advance(10000);
+
+        assertTrue(mExpired.isEmpty());
+        assertTrue(mWheel.isEmpty());
+    }
+
+    @Test
+    public void ownerFallingBehind_stillExpiresEverything() {
+        for (int i = 0; i < TIMER_COUNT; i++) {
+            mWheel.schedule(new TimerWheel.Timer(i), 0, i * 300);
+        }
+
+        mWheel.advance(100000);
+
+        assertEquals(TIMER_COUNT, mExpired.size());
+        assertTrue(mWheel.isEmpty());
+    }
+
+    @Test
+    public void randomOperations_matchNaiveModel() {
+        new Model(1).run(100000);
+    }
+
+    @Test
+    public void randomOperationsFromCallbacks_matchNaiveModel() {
+        new Model(2).runWithCallbackOperations(100000);
+    }
+
+    /** Keeps the deadline each timer should have, in milliseconds rounded up to a tick. */
+    private static final class Model implements TimerWheel.Callback {
+        private final Random mRandom;
+        private final TimerWheel mWheel = new TimerWheel(SLOT_COUNT, TICK_MILLIS, this);
+        private final TimerWheel.Timer[] mTimers = new TimerWheel.Timer[TIMER_COUNT];
+        private final long[] mDeadlines = new long[TIMER_COUNT];
+        private final boolean[] mIsScheduled = new boolean[TIMER_COUNT];
+        private long mNowMillis;
+        private long mCurrentTick = -1;
+        private boolean mIsBehind;
+        private boolean mIsOperatingFromCallbacks;
+        private int mExpiryCount;
+
+        Model(long seed) {
+            mRandom = new Random(seed);
+            for (int i = 0; i < TIMER_COUNT; i++) {
+                mTimers[i] = new TimerWheel.Timer(i);
+            }
+        }
+
+        void run(int operationCount) {
+            for (int i = 0; i < operationCount; i++) {
+                switch (mRandom.nextInt(4)) {
+                    case 0:
+                        schedule(mRandom.nextInt(TIMER_COUNT));
+                        break;
+                    case 1:
+                        cancel(mRandom.nextInt(TIMER_COUNT));
+                        break;
+                    default:
+                        advance();
+                        break;
+                }
+            }
+            assertTrue("Only " + mExpiryCount + " expiries", mExpiryCount > operationCount / 20);
+        }
+
+        void runWithCallbackOperations(int operationCount) {
+            mIsOperatingFromCallbacks = true;
+            run(operationCount);
+        }
+
+        @Override
+        public void onTimerExpired(TimerWheel.Timer timer) {
+            int i = (Integer) timer.tag;
+            assertTrue("Unscheduled timer " + i + " expired", mIsScheduled[i]);
+            assertTrue("Timer " + i + " expired early", mDeadlines[i] <= mNowMillis);
+            if (!mIsBehind) {
+                assertTrue("Timer " + i + " expired late", mNowMillis - mDeadlines[i] < TICK_MILLIS);
+            }
+            mIsScheduled[i] = false;
+            mExpiryCount++;
+
+            if (mIsOperatingFromCallbacks) {
+                if (mRandom.nextInt(3) == 0) {
+                    schedule(mRandom.nextInt(TIMER_COUNT));
+                }
+                if (mRandom.nextInt(3) == 0) {
+                    cancel(mRandom.nextInt(TIMER_COUNT));
+                }
+            }
+        }
+
+        private void schedule(int i) {
+            long delay = mRandom.nextInt((int) MAX_DELAY_MILLIS);
+            mWheel.schedule(mTimers[i], mNowMillis, delay);
+            // Never on a tick that was already expired.
+            long deadlineTick = Math.max(mCurrentTick + 1, (mNowMillis + delay + TICK_MILLIS - 1) / TICK_MILLIS);
+            mDeadlines[i] = deadlineTick * TICK_MILLIS;
+            mIsScheduled[i] = true;
+        }
+
+        private void cancel(int i) {
+            mWheel.cancel(mTimers[i]);
+            mIsScheduled[i] = false;
+        }
+
+        private void advance() {
+            // Now and then the owner is held up for more than a turn of the wheel.
+            mIsBehind = mRandom.nextInt(50) == 0;
+            mNowMillis += mIsBehind ? 30000 + mRandom.nextInt(10000) : mRandom.nextInt(2) * TICK_MILLIS;
+            // Timers scheduled from callbacks go after the tick being expired.
+            mCurrentTick = mNowMillis / TICK_MILLIS;
+            mWheel.advance(mNowMillis);
+
+            int scheduledCount = 0;
+            for (int i = 0; i < TIMER_COUNT; i++) {
+                if (mIsScheduled[i]) {
+                    assertTrue("Timer " + i + " missed", mDeadlines[i] > mNowMillis);
+                    assertTrue(mTimers[i].isScheduled());
+                    scheduledCount++;
+                } else {
+                    assertFalse(mTimers[i].isScheduled());
+                }
+            }
+            assertEquals(scheduledCount == 0, mWheel.isEmpty());
+        }
+    }
+
+}
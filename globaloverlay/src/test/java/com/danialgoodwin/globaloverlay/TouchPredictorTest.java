@@ -0,0 +1,175 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Feeds synthetic touch traces to a {@link TouchPredictor} and checks its predictions against
+ * where the finger really was. Plain JVM, no Android needed. */
+public class TouchPredictorTest {
+
+    private static final float MAX_DISTANCE = 100;
+    private static final long SAMPLE_INTERVAL_MILLIS = 4;
+    private static final long FRAME_MILLIS = 16;
+    private static final float TOLERANCE = 0.5f;
+
+    private TouchPredictor mPredictor;
+
+    @Before
+    public void setUp() {
+        mPredictor = new TouchPredictor(MAX_DISTANCE);
+    }
+
+    @Test
+    public void noSamples_predictsOrigin() {
+        mPredictor.predict(100);
+
+        assertEquals(0, mPredictor.getPredictedX(), 0);
+        assertEquals(0, mPredictor.getPredictedY(), 0);
+    }
+
+    @Test
+    public void singleSample_predictsThatSample() {
+        mPredictor.addSample(30, 40, 0);
+        mPredictor.predict(FRAME_MILLIS);
+
+        assertEquals(30, mPredictor.getPredictedX(), 0);
+        assertEquals(40, mPredictor.getPredictedY(), 0);
+    }
+
+    @Test
+    public void restingFinger_predictsNoMovement() {
+        for (long time = 0; time <= 48; time += SAMPLE_INTERVAL_MILLIS) {
+            mPredictor.addSample(200, 300, time);
+        }
+        mPredictor.predict(48 + FRAME_MILLIS);
+
+        assertEquals(200, mPredictor.getPredictedX(), TOLERANCE);
+        assertEquals(300, mPredictor.getPredictedY(), TOLERANCE);
+    }
+
+    @Test
+    public void constantVelocity_predictsAlongTheLine() {
+        // 1.5 pixels per millisecond right, 0.5 up.
+        long time = 0;
+        for (; time <= 48; time += SAMPLE_INTERVAL_MILLIS) {
+            mPredictor.addSample(100 + 1.5f * time, 500 - 0.5f * time, time);
+        }
+        long newestTime = time - SAMPLE_INTERVAL_MILLIS;
+        mPredictor.predict(newestTime + FRAME_MILLIS);
+
+        assertEquals(100 + 1.5f * (newestTime + FRAME_MILLIS), mPredictor.getPredictedX(), TOLERANCE);
+        assertEquals(500 - 0.5f * (newestTime + FRAME_MILLIS), mPredictor.getPredictedY(), TOLERANCE);
+    }
+
+    @Test
+    public void acceleratingFinger_isNotExtrapolatedPastItsCurrentVelocity() {
+        long time = 0;
+        for (; time <= 48; time += SAMPLE_INTERVAL_MILLIS) {
+            mPredictor.addSample(0.02f * time * time, 0, time);
+        }
+        long newestTime = time - SAMPLE_INTERVAL_MILLIS;
+        mPredictor.predict(newestTime + FRAME_MILLIS);
+
+        float newestX = 0.02f * newestTime * newestTime;
+        float velocity = 0.04f * newestTime;
+        assertEquals(newestX + velocity * FRAME_MILLIS, mPredictor.getPredictedX(), TOLERANCE);
+    }
+
+    @Test
+    public void deceleratingFinger_neverOvershootsWhereItStops() {
+        // Slows down evenly from 2 pixels per millisecond to rest at x = 200 after 200 ms, and
+        // stays there.
+        float restX = 200;
+        for (long time = 0; time <= 260; time += SAMPLE_INTERVAL_MILLIS) {
+            float x = time < 200 ? restX - 0.005f * (200 - time) * (200 - time) : restX;
+            mPredictor.addSample(x, 0, time);
+            mPredictor.predict(time + FRAME_MILLIS);
+
+            float predictedX = mPredictor.getPredictedX();
+            assertTrue("Predicted " + predictedX + " at " + time + " ms", predictedX <= restX + TOLERANCE);
+            assertTrue("Predicted " + predictedX + " behind " + x + " at " + time + " ms", predictedX >= x - TOLERANCE);
+        }
+    }
+
+    @Test
+    public void reversingFinger_doesNotKeepGoing() {
+        // Out to x = 100 and straight back, like a shake.
+        float x = 0;
+        long time = 0;
+        for (; time <= 40; time += SAMPLE_INTERVAL_MILLIS) {
+            x = 2.5f * time;
+            mPredictor.addSample(x, 0, time);
+        }
+        for (; time <= 60; time += SAMPLE_INTERVAL_MILLIS) {
+            x = 100 - 2.5f * (time - 40);
+            mPredictor.addSample(x, 0, time);
+        }
+        mPredictor.predict(time - SAMPLE_INTERVAL_MILLIS + FRAME_MILLIS);
+
+        assertTrue("Predicted " + mPredictor.getPredictedX() + " from " + x, mPredictor.getPredictedX() <= x);
+    }
+
+    @Test
+    public void fastFinger_isLimitedToMaxDistance() {
+        long time = 0;
+        for (; time <= 48; time += SAMPLE_INTERVAL_MILLIS) {
+            mPredictor.addSample(20 * time, 0, time);
+        }
+        long newestTime = time - SAMPLE_INTERVAL_MILLIS;
+        mPredictor.predict(newestTime + FRAME_MILLIS);
+
+        assertEquals(20 * newestTime + MAX_DISTANCE, mPredictor.getPredictedX(), TOLERANCE);
+    }
+
+    @Test
+    public void farTarget_isLimitedToMaxPredictionTime() {
+        long time = 0;
+        for (; time <= 48; time += SAMPLE_INTERVAL_MILLIS) {
+            mPredictor.addSample(time, 0, time);
+        }
+        long newestTime = time - SAMPLE_INTERVAL_MILLIS;
+        mPredictor.predict(newestTime + 1000);
+
+        assertEquals(newestTime + TouchPredictor.MAX_PREDICTION_MILLIS, mPredictor.getPredictedX(), TOLERANCE);
+    }
+
+    @Test
+    public void pastTarget_predictsNewestSample() {
+        for (long time = 0; time <= 48; time += SAMPLE_INTERVAL_MILLIS) {
+            mPredictor.addSample(time, time, time);
+        }
+        mPredictor.predict(40);
+
+        assertEquals(48, mPredictor.getPredictedX(), 0);
+        assertEquals(48, mPredictor.getPredictedY(), 0);
+    }
+
+    @Test
+    public void clear_forgetsPreviousGesture() {
+        for (long time = 0; time <= 48; time += SAMPLE_INTERVAL_MILLIS) {
+            mPredictor.addSample(3 * time, 0, time);
+        }
+        mPredictor.clear();
+        mPredictor.addSample(10, 10, 1000);
+        mPredictor.predict(1000 + FRAME_MILLIS);
+
+        assertEquals(10, mPredictor.getPredictedX(), 0);
+        assertEquals(10, mPredictor.getPredictedY(), 0);
+    }
+
+    @Test
+    public void samplesAtTwoTimes_areFitWithALine() {
+        // Touch panels can report several samples with the same timestamp.
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(0, 0, 0);
+        mPredictor.addSample(4, 8, 4);
+        mPredictor.predict(4 + FRAME_MILLIS);
+
+        assertEquals(4 + FRAME_MILLIS, mPredictor.getPredictedX(), TOLERANCE);
+        assertEquals(8 + 2 * FRAME_MILLIS, mPredictor.getPredictedY(), TOLERANCE);
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.danialgoodwin.globaloverlay;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks the velocities a {@link VelocityEstimator} fits to made up touch samples. */
+public class VelocityEstimatorTest {
+
+    private VelocityEstimator mEstimator;
+
+    @Before
+    public void setUp() {
+        mEstimator = new VelocityEstimator();
+    }
+
+    @Test
+    public void constantVelocity_isEstimatedExactly() {
+        for (int i = 0; i < 8; i++) {
+            mEstimator.addSample(100 + 3 * 8 * i, 200 - 8 * i, 1000 + 8 * i);
+        }
+        mEstimator.computeVelocity();
+
+        assertEquals(3000, mEstimator.getVelocityX(), 0.5f);
+        assertEquals(-1000, mEstimator.getVelocityY(), 0.5f);
+    }
+
+    @Test
+    public void moreSamplesThanKept_useTheNewestOnes() {
+        // Slow at first, then fast. Only the fast part fits in the kept samples.
+        for (int i = 0; i < 20; i++) {
+            mEstimator.addSample(i, 0, 1000 + 10 * i);
+        }
+        float x = 19;
+        for (int i = 1; i <= 10; i++) {
+            mEstimator.addSample(x + 20 * i, 0, 1190 + 5 * i);
+        }
+        mEstimator.computeVelocity();
+
+        assertEquals(4000, mEstimator.getVelocityX(), 0.5f);
+    }
+
+    @Test
+    public void samplesOlderThanTheHorizon_areIgnored() {
+        mEstimator.addSample(0, 0, 1000);
+        mEstimator.addSample(500, 0, 1010);
+        mEstimator.addSample(500, 0, 1200);
+        mEstimator.addSample(510, 0, 1210);
+        mEstimator.computeVelocity();
+
+        assertEquals(1000, mEstimator.getVelocityX(), 0.5f);
+    }
+
+    @Test
+    public void singleSample_hasNoVelocity() {
+        mEstimator.addSample(100, 100, 1000);
+        mEstimator.computeVelocity();
+
+        assertEquals(0, mEstimator.getVelocityX(), 0);
+        assertEquals(0, mEstimator.getVelocityY(), 0);
+    }
+
+    @Test
+    public void repeatedTimestamps_haveNoVelocity() {
+        for (int i = 0; i < 5; i++) {
+            mEstimator.addSample(100 + 50 * i, 100, 1000);
+        }
+        mEstimator.computeVelocity();
+
+        assertEquals(0, mEstimator.getVelocityX(), 0);
+        assertEquals(0, mEstimator.getVelocityY(), 0);
+    }
+
+    @Test
+    public void someRepeatedTimestamps_stillGiveAFiniteVelocity() {
+        mEstimator.addSample(0, 0, 1000);
+        mEstimator.addSample(10, 0, 1010);
+        mEstimator.addSample(12, 0, 1010);
+        mEstimator.addSample(20, 0, 1020);
+        mEstimator.computeVelocity();
+
+        assertEquals(1000, mEstimator.getVelocityX(), 0.5f);
+    }
+
+    @Test
+    public void clear_forgetsTheSamples() {
+        mEstimator.addSample(0, 0, 1000);
+        mEstimator.addSample(100, 0, 1010);
+        mEstimator.computeVelocity();
+        mEstimator.clear();
+
+        assertEquals(0, mEstimator.getVelocityX(), 0);
+        mEstimator.addSample(100, 0, 2000);
+        mEstimator.computeVelocity();
+        assertEquals(0, mEstimator.getVelocityX(), 0);
+    }
+
+}